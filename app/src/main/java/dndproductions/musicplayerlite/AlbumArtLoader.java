@@ -0,0 +1,402 @@
+package dndproductions.musicplayerlite;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads album art thumbnails into the rows of the song list.
+ *
+ * Art is decoded off the main thread, subsampled at decode time to about the size it's shown at,
+ * and center-cropped to a square RGB_565 thumbnail. Thumbnails are kept in a memory cache bounded
+ * by the device's memory class, backed by an {@link ArtDiskCache} so that full-size art is only
+ * decoded once. Thumbnails dropped from the memory cache go back to a {@link BitmapPool} - but
+ * only once no row shows them any more - and are decoded into again, so scrolling doesn't churn
+ * the heap.
+ *
+ * Requests are served newest first, as those are for the rows on screen, and a row's request is
+ * cancelled when the row is recycled. Must be used from the main thread.
+ */
+public class AlbumArtLoader {
+
+    // Log tag constant.
+    private static final String LOG_TAG = AlbumArtLoader.class.getSimpleName();
+
+    private static final String ALBUM_ART_URI = "content://media/external/audio/albumart/";
+
+    // Number of decoding threads, and of spare thumbnails kept for reuse.
+    private static final int THREAD_COUNT = 2;
+    private static final int POOL_SIZE = 24;
+
+    private final ContentResolver mResolver;
+    private final int mSize;
+    private final ArtDiskCache mDiskCache;
+    private final BitmapPool mPool;
+    private final LruCache<Long, Bitmap> mMemoryCache;
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Number of rows showing each thumbnail, and the shown thumbnails the cache already dropped:
+    // those are pooled once the last row lets go of them.
+    private final Map<Bitmap, Integer> mDisplayed = new IdentityHashMap<>();
+    private final Set<Bitmap> mEvicted = Collections.newSetFromMap(
+            new IdentityHashMap<Bitmap, Boolean>());
+
+    // Albums known to have no art.
+    private final Set<Long> mMissing = new HashSet<>();
+
+    private boolean mReleased;
+
+    /**
+     * Creates an {@link AlbumArtLoader} object.
+     *
+     * @param context is a Context used for reading the art and sizing the caches.
+     * @param size is the side of the thumbnails, in pixels.
+     */
+    public AlbumArtLoader(Context context, int size) {
+
+        // Last in, first out: the newest requests are for the rows on screen.
+        this(context, size, new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0,
+                TimeUnit.MILLISECONDS, new LinkedBlockingDeque<Runnable>() {
+                    @Override
+                    public boolean offer(Runnable runnable) {
+                        return offerFirst(runnable);
+                    }
+                }, new BackgroundThreadFactory("AlbumArt")));
+    }
+
+    // Creates a loader decoding on a given executor. Package-private so that tests can run the
+    // requests when they choose.
+    AlbumArtLoader(Context context, int size, ExecutorService executor) {
+        mResolver = context.getApplicationContext().getContentResolver();
+        mSize = size;
+        mDiskCache = new ArtDiskCache(new File(context.getCacheDir(), "art"));
+        mPool = new BitmapPool(size, size, Bitmap.Config.RGB_565, POOL_SIZE);
+
+        // An eighth of the app's heap, or a sixteenth on low-memory devices.
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRam = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && activityManager.isLowRamDevice();
+        int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / (lowRam ? 16 : 8);
+
+        mMemoryCache = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long albumId, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long albumId, Bitmap oldValue,
+                                        Bitmap newValue) {
+                if (mDisplayed.containsKey(oldValue)) {
+                    mEvicted.add(oldValue);
+                } else {
+                    mPool.put(oldValue);
+                }
+            }
+        };
+        mExecutor = executor;
+    }
+
+    /**
+     * Shows the art of an album in a view, replacing whatever the view was showing or loading.
+     * The view shows its background until the art is loaded, or if the album has none.
+     *
+     * @param albumId is the MediaStore id of the album.
+     * @param view is the view.
+     */
+    public void load(long albumId, ImageView view) {
+        Target target = getTarget(view);
+        if (target.request != null && target.request.albumId == albumId) return;
+        if (target.bitmap != null && target.albumId == albumId) return;
+
+        cancel(view);
+        if (mReleased || albumId <= 0 || mMissing.contains(albumId)) return;
+
+        Bitmap bitmap = mMemoryCache.get(albumId);
+        if (bitmap != null) {
+            show(target, albumId, bitmap);
+            return;
+        }
+
+        target.request = new Request(albumId, view);
+        mExecutor.execute(target.request);
+    }
+
+    /**
+     * Clears a view and cancels the loading of its art, e.g. once its row is recycled.
+     *
+     * @param view is the view.
+     */
+    public void cancel(ImageView view) {
+        Target target = getTarget(view);
+        if (target.request != null) {
+            target.request.cancelled = true;
+            target.request = null;
+        }
+        if (target.bitmap != null) {
+            view.setImageDrawable(null);
+            unpin(target.bitmap);
+            target.bitmap = null;
+        }
+    }
+
+    /**
+     * Gives memory back when the system runs low.
+     *
+     * @param level is the level passed to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mMemoryCache.evictAll();
+            mPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+            mPool.clear();
+        }
+    }
+
+    /**
+     * Stops loading and drops the caches. The loader can't be used afterwards.
+     */
+    public void release() {
+        mReleased = true;
+        mExecutor.shutdownNow();
+        mMemoryCache.evictAll();
+        mPool.clear();
+    }
+
+    /**
+     * Returns the largest power-of-two subsampling of an image that still leaves its shorter side
+     * at least as long as the thumbnails'.
+     *
+     * @param width is the width of the image.
+     * @param height is the height of the image.
+     * @param size is the side of the thumbnails.
+     */
+    static int sampleSize(int width, int height, int size) {
+        int shorter = Math.min(width, height);
+        int sampleSize = 1;
+        while (shorter / (sampleSize * 2) >= size) sampleSize *= 2;
+        return sampleSize;
+    }
+
+    // Helper method that shows a loaded thumbnail in a target's view.
+    private void show(Target target, long albumId, Bitmap bitmap) {
+        target.albumId = albumId;
+        target.bitmap = bitmap;
+        Integer count = mDisplayed.get(bitmap);
+        mDisplayed.put(bitmap, count == null ? 1 : count + 1);
+        target.view.setImageBitmap(bitmap);
+    }
+
+    // Helper method that lets go of a shown thumbnail, pooling it if the cache dropped it already.
+    private void unpin(Bitmap bitmap) {
+        Integer count = mDisplayed.get(bitmap);
+        if (count == null) return;
+
+        if (count > 1) {
+            mDisplayed.put(bitmap, count - 1);
+        } else {
+            mDisplayed.remove(bitmap);
+            if (mEvicted.remove(bitmap)) mPool.put(bitmap);
+        }
+    }
+
+    // Helper method that hands a decoded thumbnail over, back on the main thread. Art that
+    // couldn't be read (null, but not missing) is tried again the next time it's shown.
+    private void deliver(Request request, Bitmap bitmap, boolean missing) {
+        Target target = getTarget(request.view);
+        if (target.request == request) target.request = null;
+
+        if (bitmap == null) {
+            if (missing) mMissing.add(request.albumId);
+            return;
+        }
+        if (mReleased) return;
+
+        // Another row may have loaded the same album meanwhile.
+        Bitmap cached = mMemoryCache.get(request.albumId);
+        if (cached == null) {
+            mMemoryCache.put(request.albumId, bitmap);
+            cached = bitmap;
+        } else {
+            mPool.put(bitmap);
+        }
+
+        if (!request.cancelled) show(target, request.albumId, cached);
+    }
+
+    // Helper method that reads a thumbnail from the disk cache, or decodes it from the
+    // MediaStore's art and caches it. Runs on a worker thread. Package-private so that tests can
+    // stand in for the art.
+    //
+    // Returns null if the album has no art, and throws if the art can't be read for now - which
+    // isn't cached, as it may be readable later.
+    Bitmap decode(long albumId) throws IOException {
+        File file = mDiskCache.get(albumId);
+        if (file != null) {
+            if (file.length() == 0) return null;
+
+            Bitmap bitmap = decodeCached(file);
+            if (bitmap == null) throw new IOException("Can't decode " + file);
+            return bitmap;
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = decodeArt(albumId);
+        } catch (FileNotFoundException e) {
+
+            // The album has no art.
+            bitmap = null;
+        }
+        mDiskCache.put(albumId, bitmap);
+        return bitmap;
+    }
+
+    // Helper method that decodes a cached thumbnail into a pooled bitmap when there's one.
+    private Bitmap decodeCached(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        options.inBitmap = mPool.get();
+
+        try {
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+
+            // The cached file doesn't fit the pooled bitmap after all.
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+    }
+
+    // Helper method that decodes an album's art subsampled, and crops it into a thumbnail.
+    private Bitmap decodeArt(long albumId) throws IOException {
+        Uri uri = Uri.parse(ALBUM_ART_URI + albumId);
+
+        // Reads the dimensions first, to subsample while decoding.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(uri, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, mSize);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled = decodeStream(uri, options);
+        if (sampled == null) return null;
+
+        // Crops the middle square of the art, scaled to the thumbnail.
+        int side = Math.min(sampled.getWidth(), sampled.getHeight());
+        int left = (sampled.getWidth() - side) / 2;
+        int top = (sampled.getHeight() - side) / 2;
+        Bitmap thumbnail = mPool.getOrCreate();
+        new Canvas(thumbnail).drawBitmap(sampled, new Rect(left, top, left + side, top + side),
+                new Rect(0, 0, mSize, mSize), new Paint(Paint.FILTER_BITMAP_FLAG));
+        sampled.recycle();
+        return thumbnail;
+    }
+
+    // Helper method that decodes the art behind a uri.
+    private Bitmap decodeStream(Uri uri, BitmapFactory.Options options) throws IOException {
+        InputStream in = mResolver.openInputStream(uri);
+        if (in == null) throw new FileNotFoundException(uri.toString());
+
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Helper method that returns the loading state of a view, creating it on first use.
+    private static Target getTarget(ImageView view) {
+        Target target = (Target) view.getTag(R.id.album_art);
+        if (target == null) {
+            target = new Target(view);
+            view.setTag(R.id.album_art, target);
+        }
+        return target;
+    }
+
+    /**
+     * What a view shows, or is waiting for.
+     */
+    private static class Target {
+        final ImageView view;
+        Request request;
+        long albumId;
+        Bitmap bitmap;
+
+        Target(ImageView view) {
+            this.view = view;
+        }
+    }
+
+    /**
+     * Loading of an album's art for a view.
+     */
+    private class Request implements Runnable {
+        final long albumId;
+        final ImageView view;
+        volatile boolean cancelled;
+
+        Request(long albumId, ImageView view) {
+            this.albumId = albumId;
+            this.view = view;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+
+            Bitmap decoded = null;
+            boolean missing = false;
+            try {
+                decoded = decode(albumId);
+                missing = decoded == null;
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Can't read art of album " + albumId, e);
+            }
+
+            final Bitmap bitmap = decoded;
+            final boolean noArt = missing;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(Request.this, bitmap, noArt);
+                }
+            });
+        }
+    }
+}
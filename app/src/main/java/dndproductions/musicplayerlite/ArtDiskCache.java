@@ -0,0 +1,134 @@
+package dndproductions.musicplayerlite;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk cache of album art thumbnails, in the app's cache directory: one small JPEG per album,
+ * named after its MediaStore id, so that art is decoded at full size only once. Albums without
+ * art are remembered with an empty file. The cache is bounded, and trimmed of the files used
+ * least recently.
+ *
+ * Only used from the loader's worker threads.
+ */
+class ArtDiskCache {
+
+    // Log tag constant.
+    private static final String LOG_TAG = ArtDiskCache.class.getSimpleName();
+
+    // Total number of bytes kept on disk.
+    static final long MAX_BYTES = 10 * 1024 * 1024;
+
+    private static final int JPEG_QUALITY = 85;
+
+    private final File mDirectory;
+
+    // Estimate of the bytes used, only worked out from the files when it may exceed the bound.
+    private long mSize = -1;
+
+    /**
+     * Creates an {@link ArtDiskCache} object.
+     *
+     * @param directory is the directory the thumbnails are kept in.
+     */
+    ArtDiskCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Looks up the thumbnail of an album.
+     *
+     * @param albumId is the MediaStore id of the album.
+     * @return the thumbnail's file - empty if the album has no art - or null if it isn't cached.
+     */
+    synchronized File get(long albumId) {
+        File file = getFile(albumId);
+        if (!file.exists()) return null;
+
+        // Marks the file as recently used, for trimming.
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Stores the thumbnail of an album.
+     *
+     * @param albumId is the MediaStore id of the album.
+     * @param bitmap is the thumbnail, or null if the album has no art.
+     */
+    synchronized void put(long albumId, Bitmap bitmap) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) return;
+
+        // Written to a temporary file first, so that a half-written thumbnail is never read.
+        File file = getFile(albumId);
+        File temp = new File(mDirectory, albumId + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            if (bitmap != null) bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Can't write art of album " + albumId, e);
+            temp.delete();
+            return;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        if (mSize >= 0) mSize += file.length();
+        if (mSize < 0 || mSize > MAX_BYTES) trim();
+    }
+
+    // Helper method that deletes the least recently used files until the cache fits its bound.
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+
+        long size = 0;
+        for (File file : files) size += file.length();
+
+        if (size > MAX_BYTES) {
+            final long[] used = new long[files.length];
+            Integer[] order = new Integer[files.length];
+            for (int i = 0; i < files.length; i++) {
+                used[i] = files[i].lastModified();
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return used[a] < used[b] ? -1 : (used[a] == used[b] ? 0 : 1);
+                }
+            });
+
+            // Trims below the bound, so that the next few puts don't trim again.
+            for (int i = 0; i < order.length && size > MAX_BYTES * 3 / 4; i++) {
+                File file = files[order[i]];
+                long length = file.length();
+                if (file.delete()) size -= length;
+            }
+        }
+        mSize = size;
+    }
+
+    private File getFile(long albumId) {
+        return new File(mDirectory, albumId + ".jpg");
+    }
+}
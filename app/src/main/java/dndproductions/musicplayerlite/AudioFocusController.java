@@ -0,0 +1,215 @@
+package dndproductions.musicplayerlite;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * Holds audio focus for {@link MusicService} while it plays, and reacts to other apps taking it:
+ * the volume is ducked with a short ramp while they only need to be heard over us (e.g. a
+ * navigation prompt), and playback is paused while they need the audio to themselves (e.g. a
+ * call). After such a transient loss playback resumes when focus comes back - on the player as
+ * it was left, still prepared, so without another prepareAsync(). The time from focus coming
+ * back to the player being started is measured.
+ *
+ * Focus changes are handled on the playback thread, where the controller must be used from.
+ */
+public class AudioFocusController implements AudioManager.OnAudioFocusChangeListener {
+
+    // Log tag constant.
+    private static final String LOG_TAG = AudioFocusController.class.getSimpleName();
+
+    // Volume while ducked, and how long a ramp across the full range of volume takes.
+    static final float DUCK_VOLUME = 0.2f;
+    private static final int RAMP_MS = 150;
+    private static final int RAMP_STEP_MS = 15;
+
+    /**
+     * Receives the focus changes that affect playback, on the playback thread.
+     */
+    public interface Callback {
+
+        /**
+         * Invoked when playback has to pause for another app.
+         *
+         * @param temporary is whether focus is expected back.
+         * @return whether playback was paused (rather than not playing anyway).
+         */
+        boolean onFocusLost(boolean temporary);
+
+        /**
+         * Invoked when focus came back after a transient loss that paused playback.
+         */
+        void onFocusRegained();
+    }
+
+    private final AudioManager mAudioManager;
+    private final PlaybackEngine mEngine;
+    private final Handler mHandler;
+    private final Callback mCallback;
+
+    // Whether focus is held, whether it's lost transiently (the request still standing, so that
+    // it comes back), and whether playback was paused by that loss.
+    private boolean mHasFocus;
+    private boolean mLostTransiently;
+    private boolean mPausedTransiently;
+
+    // Volume of the players, and the volume being ramped to.
+    private float mVolume = 1f;
+    private float mTargetVolume = 1f;
+
+    // Statistics of the resumes after a transient loss, from focus coming back to the player
+    // being started.
+    private volatile long mLastResumeLatencyNanos = -1;
+    private volatile long mMaxResumeLatencyNanos;
+    private volatile int mResumeCount;
+
+    /**
+     * Creates an {@link AudioFocusController} object.
+     *
+     * @param context is a Context used for reaching the AudioManager.
+     * @param engine is the engine whose volume is ducked.
+     * @param handler is a handler of the playback thread.
+     * @param callback is the receiver of the focus changes that affect playback.
+     */
+    public AudioFocusController(Context context, PlaybackEngine engine, Handler handler,
+                                Callback callback) {
+        mAudioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        mEngine = engine;
+        mHandler = handler;
+        mCallback = callback;
+    }
+
+    /**
+     * Requests focus ahead of playback, should it not be held already - which includes while
+     * another app holds it transiently (e.g. during a call).
+     *
+     * @return whether focus is held; if not (e.g. during a call), playback shouldn't start.
+     */
+    public boolean request() {
+        mPausedTransiently = false;
+        if (mHasFocus) return true;
+
+        mHasFocus = mAudioManager.requestAudioFocus(this, AudioManager.STREAM_MUSIC,
+                AudioManager.AUDIOFOCUS_GAIN) == AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
+        if (mHasFocus) {
+            mLostTransiently = false;
+            rampTo(1f);
+        }
+        return mHasFocus;
+    }
+
+    /**
+     * Gives focus up, once playback was paused or stopped by the user.
+     */
+    public void abandon() {
+        mPausedTransiently = false;
+        if (!mHasFocus && !mLostTransiently) return;
+
+        mAudioManager.abandonAudioFocus(this);
+        mHasFocus = false;
+        mLostTransiently = false;
+    }
+
+    /**
+     * Returns whether playback is paused until focus comes back, in which case the player should
+     * be kept prepared.
+     */
+    public boolean isPausedTransiently() {
+        return mPausedTransiently;
+    }
+
+    // Getter methods for the resume latency statistics.
+    public long getLastResumeLatencyNanos() {
+        return mLastResumeLatencyNanos;
+    }
+
+    public long getMaxResumeLatencyNanos() {
+        return mMaxResumeLatencyNanos;
+    }
+
+    public int getResumeCount() {
+        return mResumeCount;
+    }
+
+    /**
+     * Receives the focus changes on the main thread, and hands them over to the playback thread.
+     */
+    @Override
+    public void onAudioFocusChange(final int focusChange) {
+        final long changedAt = System.nanoTime();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                handleFocusChange(focusChange, changedAt);
+            }
+        });
+    }
+
+    // Helper method that reacts to a focus change, on the playback thread.
+    private void handleFocusChange(int focusChange, long changedAt) {
+        switch (focusChange) {
+            case AudioManager.AUDIOFOCUS_GAIN:
+                mHasFocus = true;
+                mLostTransiently = false;
+                rampTo(1f);
+
+                if (mPausedTransiently) {
+                    mPausedTransiently = false;
+                    mCallback.onFocusRegained();
+                    recordResume(System.nanoTime() - changedAt);
+                }
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
+                rampTo(DUCK_VOLUME);
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
+
+                // Focus isn't held until it comes back, so that playing meanwhile asks for it
+                // again rather than playing over the other app. The player stays prepared.
+                mHasFocus = false;
+                mLostTransiently = true;
+                mPausedTransiently = mCallback.onFocusLost(true);
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS:
+
+                // Another app took over for good; the user resumes when they want to.
+                mCallback.onFocusLost(false);
+                abandon();
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Helper method that ramps the volume to a target, in steps on the playback thread.
+    private void rampTo(float target) {
+        mTargetVolume = target;
+        mHandler.removeCallbacks(mRampStep);
+        if (mVolume != target) mRampStep.run();
+    }
+
+    private final Runnable mRampStep = new Runnable() {
+        @Override
+        public void run() {
+            float step = (float) RAMP_STEP_MS / RAMP_MS;
+            mVolume = mVolume < mTargetVolume ? Math.min(mTargetVolume, mVolume + step)
+                    : Math.max(mTargetVolume, mVolume - step);
+            mEngine.setVolume(mVolume);
+
+            if (mVolume != mTargetVolume) mHandler.postDelayed(this, RAMP_STEP_MS);
+        }
+    };
+
+    // Helper method that records the latency of a resume.
+    private void recordResume(long latencyNanos) {
+        mLastResumeLatencyNanos = latencyNanos;
+        mMaxResumeLatencyNanos = Math.max(mMaxResumeLatencyNanos, latencyNanos);
+        mResumeCount++;
+
+        if (Metrics.LOGGING) {
+            Log.d(LOG_TAG, "Resumed " + latencyNanos / 1000 + "us after regaining focus");
+        }
+    }
+}
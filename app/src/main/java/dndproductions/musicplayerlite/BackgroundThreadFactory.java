@@ -0,0 +1,37 @@
+package dndproductions.musicplayerlite;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ThreadFactory} for the app's worker threads: each thread runs at background priority,
+ * so that it never competes with the UI or audio threads, and is named after its purpose.
+ */
+public class BackgroundThreadFactory implements ThreadFactory {
+
+    private final String mName;
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    /**
+     * Creates a {@link BackgroundThreadFactory} object.
+     *
+     * @param name is the name of the threads; a number is appended from the second one on.
+     */
+    public BackgroundThreadFactory(String name) {
+        mName = name;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        int count = mCount.getAndIncrement();
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }
+        }, count == 0 ? mName : mName + "-" + count);
+    }
+}
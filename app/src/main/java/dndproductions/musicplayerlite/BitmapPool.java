@@ -0,0 +1,73 @@
+package dndproductions.musicplayerlite;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of mutable bitmaps of a single size and config, so that decoding album art reuses the
+ * memory of thumbnails that are no longer shown instead of allocating (and later collecting) a
+ * new bitmap for each one. Thread-safe.
+ */
+class BitmapPool {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Bitmap.Config mConfig;
+    private final int mMaxSize;
+    private final ArrayDeque<Bitmap> mBitmaps = new ArrayDeque<>();
+
+    /**
+     * Creates a {@link BitmapPool} object.
+     *
+     * @param width is the width of the pooled bitmaps.
+     * @param height is the height of the pooled bitmaps.
+     * @param config is the config of the pooled bitmaps.
+     * @param maxSize is the number of bitmaps kept at most.
+     */
+    BitmapPool(int width, int height, Bitmap.Config config, int maxSize) {
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Takes a bitmap out of the pool.
+     *
+     * @return a bitmap with undefined contents, or null if the pool is empty.
+     */
+    synchronized Bitmap get() {
+        return mBitmaps.pollLast();
+    }
+
+    /**
+     * Takes a bitmap out of the pool, or creates one if the pool is empty.
+     */
+    Bitmap getOrCreate() {
+        Bitmap bitmap = get();
+        return bitmap != null ? bitmap : Bitmap.createBitmap(mWidth, mHeight, mConfig);
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller mustn't use it afterwards. Bitmaps that don't fit
+     * the pool, or that it has no room for, are left to the garbage collector.
+     *
+     * @param bitmap is the bitmap.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() != mConfig
+                || bitmap.getWidth() != mWidth || bitmap.getHeight() != mHeight
+                || mBitmaps.size() >= mMaxSize) {
+            return;
+        }
+        mBitmaps.addLast(bitmap);
+    }
+
+    /**
+     * Empties the pool.
+     */
+    synchronized void clear() {
+        mBitmaps.clear();
+    }
+}
@@ -0,0 +1,226 @@
+package dndproductions.musicplayerlite;
+
+import java.util.Arrays;
+
+/**
+ * The songs of a library grouped by artist or by album, for browsing. It's built once per
+ * library, in a couple of passes over one of its precomputed orders, and kept as:
+ *
+ * <ul>
+ * <li>the key of each group, in name order: the store's dictionary id of an artist, or the
+ * MediaStore id of an album (as albums by different artists can share a name),</li>
+ * <li>the rows of every group back to back in a single {@code int[]}, with an offset per
+ * group.</li>
+ * </ul>
+ *
+ * Opening a group is then a copy of its slice of rows - proportional to the size of the group,
+ * with no pass over the rest of the library.
+ */
+public final class GroupIndex {
+
+    // Kinds of groups.
+    public static final int ARTISTS = 0;
+    public static final int ALBUMS = 1;
+
+    private final SongStore mStore;
+    private final int mKind;
+
+    // Key of each group (artist id or album MediaStore id), in name order.
+    private final long[] mKeys;
+
+    // Rows of group i span mRows[mStarts[i]] up to mRows[mStarts[i + 1]].
+    private final int[] mStarts;
+    private final int[] mRows;
+
+    private GroupIndex(SongStore store, int kind, long[] keys, int[] starts, int[] rows) {
+        mStore = store;
+        mKind = kind;
+        mKeys = keys;
+        mStarts = starts;
+        mRows = rows;
+    }
+
+    /**
+     * Groups the songs of a library by artist. Each artist's songs are listed by album and title.
+     *
+     * @param library is the library, which must be sorted.
+     */
+    public static GroupIndex buildArtists(LibraryIndex library) {
+        SongStore store = library.getStore();
+        int[] artistIds = new int[store.size()];
+        for (int row = 0; row < artistIds.length; row++) artistIds[row] = store.getArtistId(row);
+
+        GroupIndex artists = build(store, ARTISTS, library.getOrder(SortOrder.ARTIST), artistIds,
+                store.getArtistCount());
+        for (int group = 0; group < artists.size(); group++) {
+            artists.mKeys[group] = store.getArtistId(artists.mRows[artists.mStarts[group]]);
+        }
+        return artists;
+    }
+
+    /**
+     * Groups the songs of a library by album, telling albums apart by their MediaStore id rather
+     * than their name. Each album's songs are listed by track number (the ones without one last),
+     * and then title.
+     *
+     * @param library is the library, which must be sorted.
+     */
+    public static GroupIndex buildAlbums(LibraryIndex library) {
+        SongStore store = library.getStore();
+
+        // Numbers the albums densely, in the order their ids are first met.
+        LongIntMap numbers = new LongIntMap(store.getAlbumCount());
+        int[] albumNumbers = new int[store.size()];
+        for (int row = 0; row < albumNumbers.length; row++) {
+            long albumMediaId = store.getAlbumMediaId(row);
+            int number = numbers.get(albumMediaId);
+            if (number == LongIntMap.MISSING) {
+                number = numbers.size();
+                numbers.put(albumMediaId, number);
+            }
+            albumNumbers[row] = number;
+        }
+
+        GroupIndex albums = build(store, ALBUMS, library.getOrder(SortOrder.ALBUM), albumNumbers,
+                numbers.size());
+        for (int group = 0; group < albums.size(); group++) {
+            albums.mKeys[group] = store.getAlbumMediaId(albums.mRows[albums.mStarts[group]]);
+            albums.sortByTrack(group);
+        }
+        return albums;
+    }
+
+    // Helper method that distributes the rows of an order into their groups, keeping the order
+    // within each group. Groups are numbered by first appearance, which for an order sorted by
+    // the grouped column is name order. The keys of the groups are left for the caller to fill in.
+    private static GroupIndex build(SongStore store, int kind, int[] order, int[] groupIds,
+                                    int dictionarySize) {
+
+        // Numbers the groups, and counts their songs.
+        int[] groupOf = new int[dictionarySize];
+        Arrays.fill(groupOf, -1);
+        int[] starts = new int[dictionarySize + 1];
+        int count = 0;
+        for (int row : order) {
+            int id = groupIds[row];
+            if (groupOf[id] < 0) {
+                groupOf[id] = count++;
+            }
+            starts[groupOf[id] + 1]++;
+        }
+        for (int group = 0; group < count; group++) starts[group + 1] += starts[group];
+
+        // Places each row after the ones of its group already placed.
+        int[] rows = new int[order.length];
+        int[] next = Arrays.copyOf(starts, count);
+        for (int row : order) rows[next[groupOf[groupIds[row]]]++] = row;
+
+        return new GroupIndex(store, kind, new long[count],
+                Arrays.copyOf(starts, count + 1), rows);
+    }
+
+    // Helper method that stably sorts a group's rows by track number, with the unnumbered last.
+    private void sortByTrack(int group) {
+        int start = mStarts[group];
+        int size = mStarts[group + 1] - start;
+        if (size < 2) return;
+
+        // Packs each row's track number above its place in the group, so that a plain sort of
+        // longs is stable.
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            int track = mStore.getTrackNumber(mRows[start + i]);
+            keys[i] = ((long) (track > 0 ? track : Integer.MAX_VALUE) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) sorted[i] = mRows[start + (int) keys[i]];
+        System.arraycopy(sorted, 0, mRows, start, size);
+    }
+
+    /**
+     * Returns the number of groups.
+     */
+    public int size() {
+        return mKeys.length;
+    }
+
+    // Getter methods.
+    public SongStore getStore() {
+        return mStore;
+    }
+
+    public int getKind() {
+        return mKind;
+    }
+
+    /**
+     * Returns the key of a group: the store's artist id, or the album's MediaStore id.
+     *
+     * @param group is the group.
+     */
+    public long getKey(int group) {
+        return mKeys[group];
+    }
+
+    /**
+     * Returns the name of a group, or an empty string for songs without one.
+     *
+     * @param group is the group.
+     */
+    public String getName(int group) {
+        return mKind == ARTISTS ? mStore.getArtistName((int) mKeys[group])
+                : mStore.getAlbum(mRows[mStarts[group]]);
+    }
+
+    /**
+     * Returns the number of songs in a group.
+     *
+     * @param group is the group.
+     */
+    public int getSize(int group) {
+        return mStarts[group + 1] - mStarts[group];
+    }
+
+    /**
+     * Returns the group of an artist, or -1 if no song has it. Dictionary ids differ from one
+     * store to the next, so an artist is found again in an updated library by name, scanning the
+     * (few) groups.
+     *
+     * @param name is the name of the artist.
+     */
+    public int findArtist(String name) {
+        if (mKind != ARTISTS) return -1;
+
+        for (int group = 0; group < mKeys.length; group++) {
+            if (getName(group).equals(name)) return group;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the group of an album, or -1 if no song has it. MediaStore ids stay the same from
+     * one library to the next, so an album is found again in an updated library by id.
+     *
+     * @param albumMediaId is the MediaStore id of the album.
+     */
+    public int findAlbum(long albumMediaId) {
+        if (mKind != ALBUMS) return -1;
+
+        for (int group = 0; group < mKeys.length; group++) {
+            if (mKeys[group] == albumMediaId) return group;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the songs of a group as a list.
+     *
+     * @param group is the group.
+     */
+    public SongList getSongList(int group) {
+        return new IndexedSongList(mStore,
+                Arrays.copyOfRange(mRows, mStarts[group], mStarts[group + 1]), getSize(group));
+    }
+}
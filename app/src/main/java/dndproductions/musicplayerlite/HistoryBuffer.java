@@ -0,0 +1,86 @@
+package dndproductions.musicplayerlite;
+
+/**
+ * Fixed-size ring buffer of listening events, which the playback thread records into and a
+ * background thread drains in batches. Recording only copies three numbers under a short lock,
+ * never waiting on storage; should the drains fall behind, the oldest events are overwritten and
+ * counted as dropped.
+ */
+public class HistoryBuffer {
+
+    private final long[] mSongIds;
+    private final long[] mTimes;
+    private final int[] mTypes;
+
+    // Index of the oldest event, and number of events held.
+    private int mHead;
+    private int mSize;
+
+    // Number of events overwritten before being drained.
+    private long mDropped;
+
+    /**
+     * Creates a {@link HistoryBuffer} object.
+     *
+     * @param capacity is the number of events held at most.
+     */
+    public HistoryBuffer(int capacity) {
+        mSongIds = new long[capacity];
+        mTimes = new long[capacity];
+        mTypes = new int[capacity];
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param type is the type of the event.
+     * @param songId is the MediaStore id of the song.
+     * @param timeMs is the wall-clock time of the event.
+     * @return the number of events held, including this one.
+     */
+    public synchronized int add(int type, long songId, long timeMs) {
+        int capacity = mSongIds.length;
+        int index = (mHead + mSize) % capacity;
+        if (mSize == capacity) {
+            mHead = (mHead + 1) % capacity;
+            mDropped++;
+        } else {
+            mSize++;
+        }
+
+        mSongIds[index] = songId;
+        mTimes[index] = timeMs;
+        mTypes[index] = type;
+        return mSize;
+    }
+
+    /**
+     * Moves the events held, oldest first, into arrays at least as long as the capacity.
+     *
+     * @param types is filled with the types of the events.
+     * @param songIds is filled with the songs of the events.
+     * @param times is filled with the times of the events.
+     * @return the number of events moved.
+     */
+    public synchronized int drain(int[] types, long[] songIds, long[] times) {
+        int capacity = mSongIds.length;
+        for (int i = 0; i < mSize; i++) {
+            int index = (mHead + i) % capacity;
+            types[i] = mTypes[index];
+            songIds[i] = mSongIds[index];
+            times[i] = mTimes[index];
+        }
+
+        int count = mSize;
+        mHead = 0;
+        mSize = 0;
+        return count;
+    }
+
+    /**
+     * Returns the number of events overwritten before being drained.
+     */
+    public synchronized long getDropped() {
+        return mDropped;
+    }
+}
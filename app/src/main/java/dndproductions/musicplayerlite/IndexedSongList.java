@@ -0,0 +1,41 @@
+package dndproductions.musicplayerlite;
+
+/**
+ * A {@link SongList} presenting a selection of a {@link SongStore}'s rows, in a given order (e.g.
+ * one of the precomputed sort orders).
+ */
+public class IndexedSongList implements SongList {
+
+    private final SongStore mStore;
+    private final int[] mRows;
+    private final int mSize;
+
+    /**
+     * Creates a {@link IndexedSongList} object.
+     *
+     * @param store is the store holding the songs.
+     * @param rows is the store row of each position; only the first {@code size} are used.
+     * @param size is the number of songs in the view.
+     */
+    public IndexedSongList(SongStore store, int[] rows, int size) {
+        mStore = store;
+        mRows = rows;
+        mSize = size;
+    }
+
+    // SongList interface methods.
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public int getRow(int position) {
+        return mRows[position];
+    }
+
+    @Override
+    public SongStore getStore() {
+        return mStore;
+    }
+}
@@ -0,0 +1,83 @@
+package dndproductions.musicplayerlite;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies, recorded from any thread without locking or allocating. Latencies are
+ * counted in power-of-two buckets of microseconds, so percentiles come out as the upper bound of
+ * their bucket - at most twice the real value, which is plenty for telling regressions apart.
+ */
+public class LatencyHistogram {
+
+    // Bucket i counts latencies below 2^i microseconds (the last one, everything above that).
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos is the latency, in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+
+        long micros = nanos / 1000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        mBuckets.incrementAndGet(bucket);
+        mCount.incrementAndGet();
+        mTotalNanos.addAndGet(nanos);
+
+        long max;
+        do {
+            max = mMaxNanos.get();
+        } while (nanos > max && !mMaxNanos.compareAndSet(max, nanos));
+    }
+
+    // Getter methods for the statistics.
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMeanNanos() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mTotalNanos.get() / count;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+
+    /**
+     * Returns an upper bound of a percentile of the latencies, or 0 if none was recorded.
+     *
+     * @param percentile is the percentile, between 0 and 100.
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = mCount.get();
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += mBuckets.get(bucket);
+            if (seen >= rank) return Math.min((1L << bucket) * 1000, getMaxNanos());
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Returns a one-line summary, in milliseconds.
+     */
+    public String summarize() {
+        return String.format(Locale.US, "n=%d mean=%.1fms p50<=%.1fms p90<=%.1fms p99<=%.1fms "
+                        + "max=%.1fms", getCount(), getMeanNanos() / 1e6,
+                getPercentileNanos(50) / 1e6, getPercentileNanos(90) / 1e6,
+                getPercentileNanos(99) / 1e6, getMaxNanos() / 1e6);
+    }
+}
@@ -0,0 +1,367 @@
+package dndproductions.musicplayerlite;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Compact binary snapshot of the music library, kept on disk so that a launch doesn't have to
+ * walk the whole MediaStore cursor again. The file mirrors the columns of a {@link SongStore} and
+ * the precomputed {@link SortOrder}s, so reading it back is one memory mapping plus a bulk copy
+ * per column:
+ *
+ * <pre>
+ * header:  magic, format version, generation, MediaStore version, collation locale, song count
+ * columns: ids, album MediaStore ids, dates modified, dates added, durations, track numbers,
+ *          title offsets and characters, title key offsets and bytes, artist ids and dictionary,
+ *          album ids and dictionary, genre ids and names
+ * orders:  one row array per sort order
+ * </pre>
+ *
+ * When the index is still being built (i.e. a scan is streaming in), there are no orders yet and
+ * songs are presented in storage order.
+ *
+ * The {@link SearchIndex}, the {@link SectionIndex} of each order and the {@link GroupIndex}es of
+ * artists and albums are attached in memory once built, and aren't part of the file.
+ */
+public class LibraryIndex {
+
+    // Log tag constant.
+    private static final String LOG_TAG = LibraryIndex.class.getSimpleName();
+
+    // Name of the index file within the app's private files directory.
+    static final String FILE_NAME = "library.idx";
+
+    // Constants used for recognising the file format.
+    private static final int MAGIC = 0x4d504c49; // "MPLI"
+    private static final int FORMAT_VERSION = 5;
+
+    private final SongStore mStore;
+
+    // Rows of the store in each sort order, indexed by SortOrder.ordinal(), or null if not sorted.
+    private final int[][] mOrders;
+
+    // Incremented on every write, so that consumers can tell two snapshots apart.
+    private final int mGeneration;
+
+    // MediaStore's own database version when the snapshot was taken - should it change, the
+    // provider's ids are no longer comparable and a full rescan is needed.
+    private final String mMediaStoreVersion;
+
+    // Locale the collation keys were computed for - should it change, so would the orders.
+    private final String mLocale;
+
+    // Search index of the store, and sections of each order, or null if not built.
+    private final SearchIndex mSearchIndex;
+    private final SectionIndex[] mSections;
+
+    // Groups of each kind, indexed by GroupIndex.ARTISTS and ALBUMS, or null if not built.
+    private final GroupIndex[] mGroups;
+
+    /**
+     * Creates a {@link LibraryIndex} object.
+     *
+     * @param store is the store of songs.
+     * @param orders is the rows in each sort order, or null if not sorted yet.
+     * @param generation is the generation marker of the snapshot.
+     * @param mediaStoreVersion is the MediaStore version the songs were read from.
+     * @param locale is the locale the collation keys were computed for.
+     */
+    public LibraryIndex(SongStore store, int[][] orders, int generation,
+                        String mediaStoreVersion, String locale) {
+        this(store, orders, generation, mediaStoreVersion, locale, null, null, null);
+    }
+
+    private LibraryIndex(SongStore store, int[][] orders, int generation,
+                         String mediaStoreVersion, String locale, SearchIndex searchIndex,
+                         SectionIndex[] sections, GroupIndex[] groups) {
+        mStore = store;
+        mOrders = orders;
+        mGeneration = generation;
+        mMediaStoreVersion = mediaStoreVersion;
+        mLocale = locale;
+        mSearchIndex = searchIndex;
+        mSections = sections;
+        mGroups = groups;
+    }
+
+    /**
+     * Returns a copy of this index with the lookup structures derived from it attached.
+     *
+     * @param searchIndex is the search index, built over {@link #getStore()}.
+     * @param sections is the sections of each order, indexed by {@link SortOrder#ordinal()}.
+     * @param groups is the groups of each kind, indexed by {@link GroupIndex#ARTISTS} and
+     *               {@link GroupIndex#ALBUMS}.
+     */
+    public LibraryIndex withLookups(SearchIndex searchIndex, SectionIndex[] sections,
+                                    GroupIndex[] groups) {
+        return new LibraryIndex(mStore, mOrders, mGeneration, mMediaStoreVersion, mLocale,
+                searchIndex, sections, groups);
+    }
+
+    // Getter methods.
+    public SongStore getStore() {
+        return mStore;
+    }
+
+    public int[] getOrder(SortOrder order) {
+        return mOrders == null ? null : mOrders[order.ordinal()];
+    }
+
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    public String getMediaStoreVersion() {
+        return mMediaStoreVersion;
+    }
+
+    public String getLocale() {
+        return mLocale;
+    }
+
+    public SearchIndex getSearchIndex() {
+        return mSearchIndex;
+    }
+
+    public SectionIndex getSections(SortOrder order) {
+        return mSections == null ? null : mSections[order.ordinal()];
+    }
+
+    /**
+     * Returns the groups of a kind, or null if not built yet.
+     *
+     * @param kind is {@link GroupIndex#ARTISTS} or {@link GroupIndex#ALBUMS}.
+     */
+    public GroupIndex getGroups(int kind) {
+        return mGroups == null ? null : mGroups[kind];
+    }
+
+    /**
+     * Returns a view of the songs in the given order. No sorting happens here; the order was
+     * computed when the library was loaded.
+     *
+     * @param order is the sort order.
+     */
+    public SongList getSongList(SortOrder order) {
+        if (mOrders == null) return mStore;
+
+        return new IndexedSongList(mStore, mOrders[order.ordinal()], mStore.size());
+    }
+
+    /**
+     * Memory-maps and decodes an index file.
+     *
+     * @param file is the index file.
+     * @return the decoded index, or null if the file is missing or unreadable.
+     */
+    public static LibraryIndex read(File file) {
+        if (!file.exists()) return null;
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                Log.w(LOG_TAG, "read(): Unrecognised index format, ignoring");
+                return null;
+            }
+
+            int generation = buffer.getInt();
+            String mediaStoreVersion = readString(buffer);
+            String locale = readString(buffer);
+            int count = buffer.getInt();
+
+            // Bulk-copies each column out of the mapping.
+            SongStore.Columns c = new SongStore.Columns();
+            c.size = count;
+            c.ids = readLongs(buffer, count);
+            c.albumMediaIds = readLongs(buffer, count);
+            c.dateModified = readLongs(buffer, count);
+            c.dateAdded = readLongs(buffer, count);
+            c.durations = readInts(buffer, count);
+            c.trackNumbers = readInts(buffer, count);
+            c.titleOffsets = readInts(buffer, count + 1);
+            c.titleChars = readChars(buffer, c.titleOffsets[count]);
+            c.titleKeyOffsets = readInts(buffer, count + 1);
+            c.titleKeys = readBytes(buffer, c.titleKeyOffsets[count]);
+            c.artistIds = readInts(buffer, count);
+            c.artistCount = buffer.getInt();
+            c.artists = new String[c.artistCount];
+            c.artistKeys = new byte[c.artistCount][];
+            readDictionary(buffer, c.artists, c.artistKeys);
+            c.albumIds = readInts(buffer, count);
+            c.albumCount = buffer.getInt();
+            c.albums = new String[c.albumCount];
+            c.albumKeys = new byte[c.albumCount][];
+            readDictionary(buffer, c.albums, c.albumKeys);
+            c.genreIds = readInts(buffer, count);
+            c.genreCount = buffer.getInt();
+            c.genres = new String[c.genreCount];
+            for (int i = 0; i < c.genreCount; i++) c.genres[i] = readString(buffer);
+
+            int[][] orders = new int[SortOrder.values().length][];
+            for (int i = 0; i < orders.length; i++) {
+                orders[i] = readInts(buffer, count);
+            }
+
+            return new LibraryIndex(new SongStore(c), orders, generation, mediaStoreVersion,
+                    locale);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException
+                | NegativeArraySizeException e) {
+            Log.e(LOG_TAG, "Error reading library index.", e);
+            return null;
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Writes the index to a file. The data is written to a temporary file first and then renamed
+     * over the old one, so a crash midway never leaves a half-written index behind. Only sorted
+     * indexes can be written.
+     *
+     * @param file is the index file.
+     * @return whether the index was written.
+     */
+    public boolean write(File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+            SongStore.Columns c = mStore.getColumns();
+            int count = c.size;
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(mGeneration);
+            writeString(out, mMediaStoreVersion);
+            writeString(out, mLocale);
+            out.writeInt(count);
+
+            writeLongs(out, c.ids, count);
+            writeLongs(out, c.albumMediaIds, count);
+            writeLongs(out, c.dateModified, count);
+            writeLongs(out, c.dateAdded, count);
+            writeInts(out, c.durations, count);
+            writeInts(out, c.trackNumbers, count);
+            writeInts(out, c.titleOffsets, count + 1);
+            for (int i = 0; i < c.titleOffsets[count]; i++) out.writeChar(c.titleChars[i]);
+            writeInts(out, c.titleKeyOffsets, count + 1);
+            out.write(c.titleKeys, 0, c.titleKeyOffsets[count]);
+            writeInts(out, c.artistIds, count);
+            writeDictionary(out, c.artists, c.artistKeys, c.artistCount);
+            writeInts(out, c.albumIds, count);
+            writeDictionary(out, c.albums, c.albumKeys, c.albumCount);
+            writeInts(out, c.genreIds, count);
+            out.writeInt(c.genreCount);
+            for (int i = 0; i < c.genreCount; i++) writeString(out, c.genres[i]);
+
+            for (int[] order : mOrders) {
+                writeInts(out, order, count);
+            }
+
+            out.close();
+            out = null;
+
+            return temp.renameTo(file);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing library index.", e);
+            temp.delete();
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    // Helper methods that bulk-read a column, advancing the buffer past it.
+    private static long[] readLongs(ByteBuffer buffer, int count) {
+        long[] values = new long[count];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + count * 8);
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static char[] readChars(ByteBuffer buffer, int count) {
+        char[] values = new char[count];
+        buffer.asCharBuffer().get(values);
+        buffer.position(buffer.position() + count * 2);
+        return values;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int count) {
+        byte[] values = new byte[count];
+        buffer.get(values);
+        return values;
+    }
+
+    private static void readDictionary(ByteBuffer buffer, String[] names, byte[][] keys) {
+        for (int i = 0; i < names.length; i++) {
+            names[i] = readString(buffer);
+            keys[i] = readBytes(buffer, buffer.getInt());
+        }
+    }
+
+    // Helper methods that write a column.
+    private static void writeLongs(DataOutputStream out, long[] values, int count)
+            throws IOException {
+        for (int i = 0; i < count; i++) out.writeLong(values[i]);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int count)
+            throws IOException {
+        for (int i = 0; i < count; i++) out.writeInt(values[i]);
+    }
+
+    private static void writeDictionary(DataOutputStream out, String[] names, byte[][] keys,
+                                        int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            writeString(out, names[i]);
+            out.writeInt(keys[i].length);
+            out.write(keys[i]);
+        }
+    }
+
+    // Helper methods for length-prefixed strings.
+    private static String readString(ByteBuffer buffer) {
+        return new String(readChars(buffer, buffer.getInt()));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        String value = s == null ? "" : s;
+        out.writeInt(value.length());
+        out.writeChars(value);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error closing index file.", e);
+        }
+    }
+}
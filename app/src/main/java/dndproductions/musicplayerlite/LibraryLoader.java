@@ -0,0 +1,376 @@
+package dndproductions.musicplayerlite;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A subclass of {@link AsyncTask} that loads the user's music library off the main thread.
+ *
+ * When a {@link LibraryIndex} from a previous launch exists, its songs are shown straight away and
+ * only the rows that were added, removed or modified since are read from MediaStore and sorted
+ * into the existing orders. Otherwise the library is scanned in full and streamed back to the UI
+ * page by page, so the first screen shows up without waiting for the whole library to be read.
+ * The songs read go through a {@link MetadataEnricher} before being sorted, so genres and
+ * metadata MediaStore lacks are looked up once per new or changed file. Either way the index is
+ * rewritten whenever it changed, and the final delivery comes with its {@link SearchIndex},
+ * {@link SectionIndex}es and {@link GroupIndex}es built.
+ */
+public class LibraryLoader extends AsyncTask<Void, LibraryIndex, Void> {
+
+    // Log tag constant.
+    private static final String LOG_TAG = LibraryLoader.class.getSimpleName();
+
+    // Number of songs delivered to the UI per page.
+    static final int PAGE_SIZE = 100;
+
+    // Maximum number of ids bound into a single "IN (...)" selection - SQLite caps the number of
+    // arguments at 999.
+    static final int QUERY_CHUNK_SIZE = 500;
+
+    // Only the columns that are actually read - querying with a null projection copies every
+    // MediaStore column of every row across the process boundary.
+    static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.ALBUM_ID,
+            MediaStore.Audio.Media.DATE_MODIFIED,
+            MediaStore.Audio.Media.DATE_ADDED,
+            MediaStore.Audio.Media.DURATION,
+            MediaStore.Audio.Media.TRACK
+    };
+
+    // Projection of the cheap pass that detects what changed since the index was written.
+    static final String[] DIFF_PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.DATE_MODIFIED
+    };
+
+    // Lets the provider return the rows in (roughly) title order so pages can be shown as they
+    // arrive, before the library is sorted properly.
+    static final String SORT_ORDER = MediaStore.Audio.Media.TITLE;
+
+    /**
+     * Receives the results of a load on the main thread.
+     */
+    public interface Callbacks {
+
+        /**
+         * Invoked whenever more songs have been read, or the library turned out to differ from
+         * the songs already delivered.
+         *
+         * @param library is every song loaded so far - replaces the previous delivery. It is
+         *                sorted once the whole library has been read, and has its search index and
+         *                sections once it's up to date.
+         */
+        void onSongsLoaded(LibraryIndex library);
+
+        /**
+         * Invoked once the library has been fully loaded.
+         */
+        void onLoadFinished();
+    }
+
+    private final Context mContext;
+    private final ContentResolver mResolver;
+    private final MetadataEnricher mEnricher;
+    private Callbacks mCallbacks;
+
+    /**
+     * Creates a {@link LibraryLoader} object.
+     *
+     * @param context is a Context used for MediaStore queries and the index file.
+     * @param callbacks is the receiver of the loaded songs.
+     */
+    public LibraryLoader(Context context, Callbacks callbacks) {
+        mContext = context.getApplicationContext();
+        mResolver = mContext.getContentResolver();
+        mEnricher = new MetadataEnricher(mContext);
+        mCallbacks = callbacks;
+    }
+
+    /**
+     * Stops the load and drops the reference to the callbacks (e.g. when the Activity is
+     * destroyed).
+     */
+    public void detach() {
+        mCallbacks = null;
+        cancel(false);
+    }
+
+    @Override
+    protected Void doInBackground(Void... params) {
+        long start = System.nanoTime();
+        Metrics.beginSection("LibraryLoader.load");
+        try {
+            load();
+        } finally {
+            Metrics.endSection();
+        }
+        Metrics.recordSince(Metrics.LIBRARY_LOAD, start);
+        Metrics.increment(Metrics.LIBRARY_LOADS);
+
+        return null;
+    }
+
+    // Helper method that loads the library, publishing it as it becomes available.
+    private void load() {
+        File indexFile = new File(mContext.getFilesDir(), LibraryIndex.FILE_NAME);
+        String mediaStoreVersion = MediaStore.getVersion(mContext);
+        if (mediaStoreVersion == null) mediaStoreVersion = "";
+        String locale = Locale.getDefault().toString();
+
+        LibraryIndex index = LibraryIndex.read(indexFile);
+
+        // Falls back to a full scan when there is no usable index.
+        if (index == null || !mediaStoreVersion.equals(index.getMediaStoreVersion())
+                || !locale.equals(index.getLocale())) {
+            int generation = index == null ? 0 : index.getGeneration() + 1;
+            LibraryIndex scanned = scan(generation, mediaStoreVersion, locale);
+            if (scanned != null && !isCancelled()) scanned.write(indexFile);
+
+            return;
+        }
+
+        // Shows the indexed songs first, and then brings them up to date.
+        publishProgress(index);
+
+        LibraryIndex updated = update(index);
+        if (isCancelled()) return;
+        if (updated == null) {
+            publishProgress(withLookups(index));
+            return;
+        }
+
+        if (Metrics.LOGGING) {
+            Log.d(LOG_TAG, "load(): Index updated to generation " + updated.getGeneration());
+        }
+
+        publishProgress(withLookups(updated));
+        updated.write(indexFile);
+    }
+
+    @Override
+    protected void onProgressUpdate(LibraryIndex... libraries) {
+        if (mCallbacks == null || isCancelled()) return;
+
+        // Only the latest delivery matters, as each one supersedes the previous.
+        mCallbacks.onSongsLoaded(libraries[libraries.length - 1]);
+    }
+
+    @Override
+    protected void onPostExecute(Void result) {
+        if (mCallbacks != null) mCallbacks.onLoadFinished();
+    }
+
+    /**
+     * Reads the whole library, publishing an unsorted snapshot after each page and the sorted
+     * library at the end.
+     *
+     * @return the new index, or null if MediaStore couldn't be queried.
+     */
+    private LibraryIndex scan(int generation, String mediaStoreVersion, String locale) {
+        Uri musicUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+        Cursor musicCursor = mResolver.query(musicUri, PROJECTION, null, null, SORT_ORDER);
+        if (musicCursor == null) return null;
+
+        SongStore.Builder builder = new SongStore.Builder(musicCursor.getCount());
+        try {
+            RowReader reader = new RowReader(musicCursor);
+
+            // Iterates and adds the songs, publishing a page at a time.
+            while (musicCursor.moveToNext() && !isCancelled()) {
+                reader.addTo(builder);
+
+                if (builder.size() % PAGE_SIZE == 0) {
+                    publishProgress(new LibraryIndex(builder.snapshot(), null, generation,
+                            mediaStoreVersion, locale));
+                }
+            }
+        } finally {
+            musicCursor.close();
+        }
+
+        if (isCancelled()) return null;
+
+        SongStore store = enrich(builder.build(), 0);
+        long sortStart = System.nanoTime();
+        Metrics.beginSection("SongSorter.sortAll");
+        int[][] orders = SongSorter.sortAll(store);
+        Metrics.endSection();
+        Metrics.recordSince(Metrics.SORT, sortStart);
+
+        LibraryIndex scanned = new LibraryIndex(store, orders, generation, mediaStoreVersion,
+                locale);
+        publishProgress(withLookups(scanned));
+
+        if (Metrics.LOGGING) Log.d(LOG_TAG, "scan(): Full library scan complete");
+
+        return scanned;
+    }
+
+    /**
+     * Compares the index against MediaStore, and re-reads only the rows that were added or
+     * modified since it was written. The new store keeps the unchanged rows first, in their
+     * existing order, followed by the changed ones, so that only the latter need sorting.
+     *
+     * @return the updated index, or null if nothing changed.
+     */
+    private LibraryIndex update(LibraryIndex index) {
+        Uri musicUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+        Cursor diffCursor = mResolver.query(musicUri, DIFF_PROJECTION, null, null, null);
+        if (diffCursor == null) return null;
+
+        SongStore indexed = index.getStore();
+
+        // Flags the indexed rows that are still present and unchanged.
+        boolean[] current = new boolean[indexed.size()];
+        int currentCount = 0;
+        List<Long> changedIds = new ArrayList<>();
+        try {
+            while (diffCursor.moveToNext()) {
+                long id = diffCursor.getLong(0);
+                int row = indexed.getRowOf(id);
+
+                if (row >= 0 && indexed.getDateModified(row) == diffCursor.getLong(1)) {
+                    current[row] = true;
+                    currentCount++;
+                } else {
+                    changedIds.add(id);
+                }
+            }
+        } finally {
+            diffCursor.close();
+        }
+
+        if (changedIds.isEmpty() && currentCount == indexed.size()) return null;
+
+        if (Metrics.LOGGING) {
+            Log.d(LOG_TAG, "update(): " + changedIds.size() + " added or modified, "
+                    + currentCount + " unchanged");
+        }
+
+        // Copies the unchanged rows over, recording where each one went.
+        SongStore.Builder builder = new SongStore.Builder(currentCount + changedIds.size());
+        int[] rowMap = new int[indexed.size()];
+        for (int row = 0; row < indexed.size(); row++) {
+            if (current[row]) {
+                rowMap[row] = builder.size();
+                builder.add(indexed, row);
+            } else {
+                rowMap[row] = -1;
+            }
+        }
+
+        // Reads the changed rows in full, appending them after.
+        for (int start = 0; start < changedIds.size(); start += QUERY_CHUNK_SIZE) {
+            List<Long> chunk = changedIds.subList(start,
+                    Math.min(start + QUERY_CHUNK_SIZE, changedIds.size()));
+            Cursor cursor = mResolver.query(musicUri, PROJECTION, selectIds(chunk), null, null);
+            if (cursor == null) return null;
+
+            try {
+                RowReader reader = new RowReader(cursor);
+                while (cursor.moveToNext()) {
+                    reader.addTo(builder);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        SongStore store = enrich(builder.build(), currentCount);
+
+        // Sorts just the changed rows into each existing order.
+        long sortStart = System.nanoTime();
+        Metrics.beginSection("SongSorter.update");
+        int[][] orders = new int[SortOrder.values().length][];
+        for (SortOrder order : SortOrder.values()) {
+            orders[order.ordinal()] = SongSorter.update(index.getOrder(order), rowMap, store,
+                    currentCount, order);
+        }
+        Metrics.endSection();
+        Metrics.recordSince(Metrics.SORT, sortStart);
+
+        return new LibraryIndex(store, orders, index.getGeneration() + 1,
+                index.getMediaStoreVersion(), index.getLocale());
+    }
+
+    // Helper method that enriches the rows of a store from a given row on.
+    private SongStore enrich(SongStore store, int fromRow) {
+        Metrics.beginSection("MetadataEnricher.enrich");
+        try {
+            return mEnricher.enrich(store, fromRow);
+        } finally {
+            Metrics.endSection();
+        }
+    }
+
+    // Helper method that attaches the search index, sections and groups of a library.
+    private static LibraryIndex withLookups(LibraryIndex library) {
+        GroupIndex[] groups = {GroupIndex.buildArtists(library), GroupIndex.buildAlbums(library)};
+        return library.withLookups(SearchIndex.build(library.getStore()),
+                SectionIndex.buildAll(library), groups);
+    }
+
+    // Helper method that builds an "_id IN (...)" selection. The ids are numbers read back from
+    // MediaStore, so they are inlined rather than bound.
+    static String selectIds(List<Long> ids) {
+        StringBuilder selection = new StringBuilder(MediaStore.Audio.Media._ID).append(" IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) selection.append(',');
+            selection.append(ids.get(i));
+        }
+        return selection.append(')').toString();
+    }
+
+    /**
+     * Reads {@link #PROJECTION} rows into a {@link SongStore.Builder}. Package-private so that the
+     * benchmarks can drive it with a synthetic cursor.
+     */
+    static class RowReader {
+        private final Cursor mCursor;
+        private final int mIdColumn;
+        private final int mTitleColumn;
+        private final int mArtistColumn;
+        private final int mAlbumColumn;
+        private final int mAlbumIdColumn;
+        private final int mDateModifiedColumn;
+        private final int mDateAddedColumn;
+        private final int mDurationColumn;
+        private final int mTrackColumn;
+
+        RowReader(Cursor cursor) {
+            mCursor = cursor;
+
+            // Column indexes used for retrieval purposes.
+            mIdColumn = cursor.getColumnIndex(MediaStore.Audio.Media._ID);
+            mTitleColumn = cursor.getColumnIndex(MediaStore.Audio.Media.TITLE);
+            mArtistColumn = cursor.getColumnIndex(MediaStore.Audio.Media.ARTIST);
+            mAlbumColumn = cursor.getColumnIndex(MediaStore.Audio.Media.ALBUM);
+            mAlbumIdColumn = cursor.getColumnIndex(MediaStore.Audio.Media.ALBUM_ID);
+            mDateModifiedColumn = cursor.getColumnIndex(MediaStore.Audio.Media.DATE_MODIFIED);
+            mDateAddedColumn = cursor.getColumnIndex(MediaStore.Audio.Media.DATE_ADDED);
+            mDurationColumn = cursor.getColumnIndex(MediaStore.Audio.Media.DURATION);
+            mTrackColumn = cursor.getColumnIndex(MediaStore.Audio.Media.TRACK);
+        }
+
+        void addTo(SongStore.Builder builder) {
+            builder.add(mCursor.getLong(mIdColumn), mCursor.getString(mTitleColumn),
+                    mCursor.getString(mArtistColumn), mCursor.getString(mAlbumColumn),
+                    mCursor.getLong(mAlbumIdColumn), mCursor.getLong(mDateModifiedColumn),
+                    mCursor.getLong(mDateAddedColumn), mCursor.getInt(mDurationColumn),
+                    mCursor.getInt(mTrackColumn), null);
+        }
+    }
+}
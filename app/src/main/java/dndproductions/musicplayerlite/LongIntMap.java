@@ -0,0 +1,110 @@
+package dndproductions.musicplayerlite;
+
+import java.util.Arrays;
+
+/**
+ * Map of {@code long} keys to {@code int} values, for looking songs up by their MediaStore id
+ * without boxing. Keys are kept in a single open-addressed table probed linearly, which stays
+ * under half full.
+ */
+public class LongIntMap {
+
+    // Value returned for keys that aren't in the map.
+    public static final int MISSING = -1;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private boolean[] mUsed;
+    private int mSize;
+
+    /**
+     * Creates a {@link LongIntMap} object.
+     *
+     * @param capacity is the expected number of keys.
+     */
+    public LongIntMap(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) << 1;
+        mKeys = new long[tableSize];
+        mValues = new int[tableSize];
+        mUsed = new boolean[tableSize];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Maps a key to a value, replacing any value it had.
+     *
+     * @param key is the key.
+     * @param value is the value.
+     */
+    public void put(long key, int value) {
+        int slot = find(key);
+        if (!mUsed[slot]) {
+            if ((mSize + 1) * 2 > mKeys.length) {
+                grow();
+                slot = find(key);
+            }
+            mUsed[slot] = true;
+            mKeys[slot] = key;
+            mSize++;
+        }
+        mValues[slot] = value;
+    }
+
+    /**
+     * Returns the value of a key, or {@link #MISSING} if it isn't in the map.
+     *
+     * @param key is the key.
+     */
+    public int get(long key) {
+        int slot = find(key);
+        return mUsed[slot] ? mValues[slot] : MISSING;
+    }
+
+    public boolean containsKey(long key) {
+        return mUsed[find(key)];
+    }
+
+    /**
+     * Removes every key, keeping the table.
+     */
+    public void clear() {
+        Arrays.fill(mUsed, false);
+        mSize = 0;
+    }
+
+    // Helper method that returns the slot holding a key, or the empty slot it would go in.
+    private int find(long key) {
+        int mask = mKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (mUsed[slot] && mKeys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    // Helper method that doubles the table, reinserting the keys.
+    private void grow() {
+        long[] keys = mKeys;
+        int[] values = mValues;
+        boolean[] used = mUsed;
+
+        mKeys = new long[keys.length * 2];
+        mValues = new int[keys.length * 2];
+        mUsed = new boolean[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (!used[i]) continue;
+
+            int slot = find(keys[i]);
+            mUsed[slot] = true;
+            mKeys[slot] = keys[i];
+            mValues[slot] = values[i];
+        }
+    }
+
+    // Spreads the bits of a key, as ids tend to be sequential.
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
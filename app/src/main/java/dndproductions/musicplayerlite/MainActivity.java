@@ -1,33 +1,29 @@
 package dndproductions.musicplayerlite;
 
 import android.Manifest;
-import android.content.ContentResolver;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
+import android.support.v4.view.MenuItemCompat;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.Menu;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.view.View;
 import android.widget.Toast;
 import android.os.IBinder;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.MediaController.MediaPlayerControl;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-
 import dndproductions.musicplayerlite.MusicService.MusicBinder;
 
 /**
@@ -43,8 +39,32 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
     private final int PERMISSION_CODE = 1;
 
     // Fields used to assist with a song list UI.
-    private List<Song> mSongList;
-    private ListView mSongView;
+    private SongList mSongList = SongStore.EMPTY;
+
+    // List last handed to the service, as the queue playback goes through. The displayed list
+    // (searched, browsed or sorted) only replaces it once a song is picked from it.
+    private SongList mQueuedList;
+    private RecyclerView mSongView;
+    private SongAdapter mSongAdapter;
+    private AlbumArtLoader mArtLoader;
+
+    // Background task used for scanning the music library, and the latest library it delivered.
+    private LibraryLoader mLibraryLoader;
+    private LibraryIndex mLibrary;
+
+    // Order the songs are currently displayed in.
+    private SortOrder mSortOrder = SortOrder.TITLE;
+
+    // Group the songs are narrowed down to while browsing, by kind and then by the artist's name
+    // or the album's MediaStore id; the kind is -1 while showing every song.
+    private int mBrowseKind = -1;
+    private String mBrowseArtist;
+    private long mBrowseAlbumId;
+
+    // Filter of the displayed songs (null until the library is searchable), and the query typed
+    // into the search field.
+    private SearchIndex.Filter mSearchFilter;
+    private String mQuery = "";
 
     // Fields used for binding the interaction between the Activity and the Service class - the
     // music will be played in the Service class, but be controlled from the Activity.
@@ -53,14 +73,15 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
     private boolean mMusicBound = false;
 
     // Field used for setting the controller up.
-    private static MusicController mController;
+    private MusicController mController;
 
-    // Boolean flag that's used to address when the user interacts with the controls while playback
-    // is paused since the MediaPlayer object may behave strangely.
-    private boolean mPlaybackPaused = false;
+    // Time the Activity was created at, until the first songs are shown (for the cold start
+    // metric).
+    private long mCreatedAt;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mCreatedAt = System.nanoTime();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
@@ -72,30 +93,23 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
                 requestPermissions(new String[]{Manifest.permission.READ_EXTERNAL_STORAGE},
                         PERMISSION_CODE);
 
+                // Waiting on the user isn't part of the start.
+                mCreatedAt = 0;
                 return;
             }
         }
 
         // The following code either executes for versions older than M, or until the user accepts
         // the in-app permission for the next sessions.
+        Metrics.beginSection("MainActivity.init");
         init();
 
-        // Invokes the iteration for adding songs.
-        getSongList();
-
-        // Sorts the data so that the song titles are presented alphabetically.
-        Collections.sort(mSongList, new Comparator<Song>(){
-            public int compare(Song a, Song b){
-                return a.getTitle().compareTo(b.getTitle());
-            }
-        });
-
-        // Custom adapter instantiation that displays the songs via the ListView.
-        SongAdapter songAdapter = new SongAdapter(this, mSongList);
-        mSongView.setAdapter(songAdapter);
+        // Starts streaming the songs into the list.
+        loadLibrary();
 
         // Invokes the controller setup.
         setController();
+        Metrics.endSection();
     }
 
     @Override
@@ -104,26 +118,56 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
 
         // Instantiates the Intent if it doesn't exist yet, binds to it, and then starts it.
         if (mPlayIntent == null) {
-            Log.d(LOG_TAG, "onStart(): Binding and starting service");
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "onStart(): Binding and starting service");
 
             mPlayIntent = new Intent(this, MusicService.class);
             bindService(mPlayIntent, mMusicConnection, Context.BIND_AUTO_CREATE);
             startService(mPlayIntent);
+        } else if (mMusicService != null) {
+
+            // Catches up with what happened while the Activity wasn't visible.
+            subscribe();
         }
     }
 
     @Override
     protected void onStop() {
-        Log.d(LOG_TAG, "onStop(): Hide controller");
+        if (Metrics.LOGGING) Log.d(LOG_TAG, "onStop(): Hide controller");
 
-        mController.hide(); // Hides the controller prior to the app being minimized
+        // Nothing is shown while the Activity isn't visible.
+        if (mMusicService != null) mMusicService.removePlaybackListener(mPlaybackListener);
+        if (mController != null) mController.hide();
 
         super.onStop();
     }
 
+    @Override
+    protected void onDestroy() {
+
+        // Stops an ongoing scan so that it doesn't outlive the Activity.
+        if (mLibraryLoader != null) mLibraryLoader.detach();
+        if (mArtLoader != null) mArtLoader.release();
+
+        super.onDestroy();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        if (mArtLoader != null) mArtLoader.trimMemory(level);
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.song_options, menu);
+
+        // Filters the songs as the user types.
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(
+                menu.findItem(R.id.option_search));
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(mQueryListener);
+
         return super.onCreateOptionsMenu(menu);
     }
 
@@ -135,6 +179,30 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
             case R.id.option_shuffle:
                 mMusicService.setShuffle();
                 break;
+            case R.id.option_jump:
+                showJumpDialog();
+                break;
+            case R.id.option_browse_artists:
+                showBrowseDialog(GroupIndex.ARTISTS);
+                break;
+            case R.id.option_browse_albums:
+                showBrowseDialog(GroupIndex.ALBUMS);
+                break;
+            case R.id.option_browse_all:
+                browse(null, -1);
+                break;
+            case R.id.option_sort_title:
+                setSortOrder(SortOrder.TITLE, item);
+                break;
+            case R.id.option_sort_artist:
+                setSortOrder(SortOrder.ARTIST, item);
+                break;
+            case R.id.option_sort_album:
+                setSortOrder(SortOrder.ALBUM, item);
+                break;
+            case R.id.option_sort_date_added:
+                setSortOrder(SortOrder.DATE_ADDED, item);
+                break;
             case R.id.option_end:
                 stopService(mPlayIntent);
                 mMusicService = null;
@@ -145,6 +213,182 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Switches the song list to another order. The orders are precomputed, so this only swaps
+     * the list's view.
+     *
+     * @param order is the new sort order.
+     * @param item is the respective menu item.
+     */
+    private void setSortOrder(SortOrder order, MenuItem item) {
+        item.setChecked(true);
+        mSortOrder = order;
+
+        refreshSongList(false);
+    }
+
+    @Override
+    public void onBackPressed() {
+
+        // Goes back from a group to every song.
+        if (mBrowseKind >= 0) {
+            browse(null, -1);
+            return;
+        }
+
+        super.onBackPressed();
+    }
+
+    /**
+     * Displays the library in the current order (or the group being browsed, in its own order),
+     * narrowed down to the songs matching the search query once the library is searchable.
+     *
+     * @param update is whether the library was updated, so that only the changed rows need
+     *               refreshing.
+     */
+    private void refreshSongList(boolean update) {
+        if (mLibrary == null) return;
+
+        SongList songList = getBrowsedList();
+        if (songList == null) songList = mLibrary.getSongList(mSortOrder);
+        SearchIndex searchIndex = mLibrary.getSearchIndex();
+        if (searchIndex == null) {
+            mSearchFilter = null;
+        } else {
+            mSearchFilter = searchIndex.newFilter(songList);
+            songList = mSearchFilter.setQuery(mQuery);
+        }
+
+        if (update) {
+            mSongAdapter.updateSongList(songList);
+        } else {
+            mSongAdapter.setSongList(songList);
+        }
+    }
+
+    /**
+     * Returns the songs of the group being browsed, or null when showing every song. Should the
+     * group be gone from an updated library, browsing stops.
+     */
+    private SongList getBrowsedList() {
+        if (mBrowseKind < 0) return null;
+
+        // The groups are built along with the rest of the lookups.
+        GroupIndex groups = mLibrary.getGroups(mBrowseKind);
+        if (groups == null) return null;
+
+        int group = mBrowseKind == GroupIndex.ARTISTS ? groups.findArtist(mBrowseArtist)
+                : groups.findAlbum(mBrowseAlbumId);
+        if (group < 0) {
+            mBrowseKind = -1;
+            mBrowseArtist = null;
+            setTitle(R.string.app_name);
+            return null;
+        }
+        return groups.getSongList(group);
+    }
+
+    /**
+     * Lists the artists or albums of the library, with their numbers of songs, and narrows the
+     * song list down to the one picked.
+     *
+     * @param kind is {@link GroupIndex#ARTISTS} or {@link GroupIndex#ALBUMS}.
+     */
+    private void showBrowseDialog(final int kind) {
+        if (mLibrary == null) return;
+
+        final GroupIndex groups = mLibrary.getGroups(kind);
+        if (groups == null || groups.size() == 0) return;
+
+        final String[] labels = new String[groups.size()];
+        String unknown = getString(kind == GroupIndex.ARTISTS ? R.string.unknown_artist
+                : R.string.unknown_album);
+        for (int group = 0; group < labels.length; group++) {
+            String name = groups.getName(group);
+            labels[group] = getString(R.string.group_label, name.isEmpty() ? unknown : name,
+                    groups.getSize(group));
+        }
+
+        DialogInterface.OnClickListener open = new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int group) {
+                browse(groups, group);
+                setTitle(labels[group]);
+            }
+        };
+
+        new AlertDialog.Builder(this)
+                .setTitle(kind == GroupIndex.ARTISTS ? R.string.option_browse_artists
+                        : R.string.option_browse_albums)
+                .setItems(labels, open)
+                .show();
+    }
+
+    /**
+     * Narrows the song list down to a group, or shows every song again.
+     *
+     * @param groups is the artists or albums of the library, or null for every song.
+     * @param group is the group.
+     */
+    private void browse(GroupIndex groups, int group) {
+        mBrowseKind = groups != null ? groups.getKind() : -1;
+        mBrowseArtist = mBrowseKind == GroupIndex.ARTISTS ? groups.getName(group) : null;
+        mBrowseAlbumId = mBrowseKind == GroupIndex.ALBUMS ? groups.getKey(group) : 0;
+        if (groups == null) setTitle(R.string.app_name);
+
+        refreshSongList(false);
+        if (mSongView != null) mSongView.scrollToPosition(0);
+    }
+
+    /**
+     * Lists the sections of the displayed songs (initials, or years when sorted by date added),
+     * and scrolls straight to the one picked.
+     */
+    private void showJumpDialog() {
+
+        // A group isn't in the sort order, and is short enough to scroll through.
+        if (mLibrary == null || mSongList.size() == 0 || mBrowseKind >= 0) return;
+
+        // The full list's sections were computed with the library; a filtered list's are
+        // computed here, in one pass over its (fewer) songs.
+        SectionIndex sections = mLibrary.getSections(mSortOrder);
+        if (sections == null || !sections.covers(mSongList)) {
+            sections = SectionIndex.build(mSongList, mSortOrder);
+        }
+
+        final SectionIndex jumpTable = sections;
+        DialogInterface.OnClickListener jump = new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int section) {
+
+                // Scrolls without laying out (or binding) any of the rows in between.
+                LinearLayoutManager layout = (LinearLayoutManager) mSongView.getLayoutManager();
+                layout.scrollToPositionWithOffset(jumpTable.getPositionForSection(section), 0);
+            }
+        };
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.option_jump)
+                .setItems((String[]) jumpTable.getSections(), jump)
+                .show();
+    }
+
+    // Filters the songs on every keystroke in the search field.
+    private SearchView.OnQueryTextListener mQueryListener = new SearchView.OnQueryTextListener() {
+
+        @Override
+        public boolean onQueryTextChange(String query) {
+            mQuery = query;
+            if (mSearchFilter != null) mSongAdapter.setSongList(mSearchFilter.setQuery(query));
+            return true;
+        }
+
+        @Override
+        public boolean onQueryTextSubmit(String query) {
+            return true; // The list is already filtered
+        }
+    };
+
     // Displays a permission dialog when requested for devices M and above.
     @Override
     public void onRequestPermissionsResult(int requestCode, String[] permissions,
@@ -155,23 +399,8 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
                 init();
 
-                // Invokes the iteration for adding songs.
-                getSongList();
-
-                // Sorts the data so that the song titles are presented alphabetically.
-                Collections.sort(mSongList, new Comparator<Song>(){
-                    public int compare(Song a, Song b){
-                        return a.getTitle().compareTo(b.getTitle());
-                    }
-                });
-
-                // Custom adapter instantiation that displays the songs via the ListView.
-                SongAdapter songAdapter = new SongAdapter(this, mSongList);
-                mSongView.setAdapter(songAdapter);
-
-                // Manually passes the song list since the ServiceConnection instance was binded
-                // before the song list was formed.
-                mMusicService.setList(mSongList);
+                // Starts streaming the songs into the list.
+                loadLibrary();
 
                 // Invokes the controller setup.
                 setController();
@@ -201,32 +430,78 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
      * Initializing/instantiating method.
      */
     private void init() {
-        mSongList = new ArrayList<>();
-        mSongView = (ListView) findViewById(R.id.song_list);
+        mSongView = (RecyclerView) findViewById(R.id.song_list);
+        mSongView.setLayoutManager(new LinearLayoutManager(this));
+        mSongView.setHasFixedSize(true);
+
+        // Custom adapter instantiation that displays the songs via the RecyclerView. It lives as
+        // long as the Activity; library updates are diffed into it.
+        mArtLoader = new AlbumArtLoader(this,
+                getResources().getDimensionPixelSize(R.dimen.album_art_size));
+        mSongAdapter = new SongAdapter(this, mSongList, mAdapterCallbacks, mArtLoader);
+        mSongView.setAdapter(mSongAdapter);
+    }
 
-        // Sets each song with a functionality.
-        mSongView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                Log.d(LOG_TAG, "Song item clicked");
+    // Receives the song list's events.
+    private SongAdapter.Callbacks mAdapterCallbacks = new SongAdapter.Callbacks() {
 
-                // Sets the respective song in the Service, and then plays it.
-                mMusicService.setSong(position);
-                mMusicService.playSong();
+        @Override
+        public void onSongClick(int position) {
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "Song item clicked");
+            Metrics.increment(Metrics.SONGS_PICKED);
 
-                // Sets the flag to false for the controller's duration and position purposes.
-                if (mPlaybackPaused) mPlaybackPaused = false;
+            // Plays the respective song in the Service, from the list it was picked from.
+            if (mQueuedList != mSongList) {
+                mMusicService.setList(mSongList);
+                mQueuedList = mSongList;
             }
-        });
-    }
+            mMusicService.playSong(position);
+        }
 
-    /**
-     * Shows the controller accordingly.
-     */
-    public static void showController() {
-        Log.d(LOG_TAG, "showController()");
+        @Override
+        public void onSongLongClick(int position) {
+            if (mMusicService == null) return;
+
+            // Queues the song to play after the current one.
+            long songId = mSongList.getStore().getId(mSongList.getRow(position));
+            mMusicService.addToQueue(new long[] {songId}, true);
+            Toast.makeText(MainActivity.this, R.string.queued_next, Toast.LENGTH_SHORT).show();
+        }
 
-        mController.show(0);
+        @Override
+        public void onSongListChanged(SongList songList, boolean updated) {
+
+            // A library update of the list the service plays through is passed on. Other lists
+            // (searched, browsed or sorted) are only displayed until a song is picked from them.
+            boolean queued = mQueuedList == mSongList;
+            mSongList = songList;
+            if (updated && queued && mMusicService != null) {
+                mMusicService.setList(songList);
+                mQueuedList = songList;
+            }
+        }
+    };
+
+    // Shows the controller as songs start and playback changes state, on the main thread.
+    private final PlaybackEvents.Listener mPlaybackListener = new PlaybackEvents.Listener() {
+
+        @Override
+        public void onPlaybackEvents(int events) {
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "onPlaybackEvents(" + events + ")");
+
+            if (mController != null && mMusicService != null
+                    && mMusicService.getState().hasTrack()) {
+                mController.show(0);
+            }
+        }
+    };
+
+    // Helper method that subscribes to the service's playback events, and shows its current
+    // state straight away.
+    private void subscribe() {
+        mMusicService.addPlaybackListener(mPlaybackListener,
+                PlaybackEvents.STATE | PlaybackEvents.TRACK);
+        mPlaybackListener.onPlaybackEvents(PlaybackEvents.STATE | PlaybackEvents.TRACK);
     }
 
     // Connects to the service to bind the interaction between the Service class and the Activity.
@@ -234,23 +509,24 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
 
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
-            Log.d(LOG_TAG, "onServiceConnected()");
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "onServiceConnected()");
 
             MusicBinder binder = (MusicBinder) service;
 
             // Gets service.
             mMusicService = binder.getService();
 
-            // Passes the song list.
-            mMusicService.setList(mSongList);
+            // The service keeps the queue it's playing (or restored) until a song is picked.
+            mQueuedList = null;
 
             // Sets the boolean flag accordingly.
             mMusicBound = true;
+            subscribe();
         }
 
         @Override
         public void onServiceDisconnected(ComponentName name) {
-            Log.d(LOG_TAG, "onServiceDisconnected()");
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "onServiceDisconnected()");
 
             mMusicBound = false;
         }
@@ -260,7 +536,7 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
      * Sets the controller up.
      */
     private void setController() {
-        Log.d(LOG_TAG, "setController()");
+        if (Metrics.LOGGING) Log.d(LOG_TAG, "setController()");
 
         mController = new MusicController(this);
 
@@ -289,9 +565,6 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
      */
     private void playNext(){
         mMusicService.playNext();
-
-        // Sets the flag to false for the controller's duration and position purposes.
-        if (mPlaybackPaused) mPlaybackPaused = false;
     }
 
     /**
@@ -299,93 +572,75 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
      */
     private void playPrevious(){
         mMusicService.playPrevious();
-
-        // Sets the flag to false for the controller's duration and position purposes.
-        if (mPlaybackPaused) mPlaybackPaused = false;
     }
 
-    // Helper method used for retrieving audio file information.
-    public void getSongList() {
-        ContentResolver musicResolver = getContentResolver();
-
-        // Retrieves the URI for external music files.
-        Uri musicUri = android.provider.MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-
-        // Queries the music files.
-        Cursor musicCursor = musicResolver.query(musicUri, null, null, null, null);
+    /**
+     * Sets the (initially empty) song list up and starts loading the music library in the
+     * background. The list is replaced with a larger snapshot as each page is read.
+     */
+    private void loadLibrary() {
+        mLibraryLoader = new LibraryLoader(this, mLibraryCallbacks);
+        mLibraryLoader.execute();
+    }
 
-        // Initially checks to see if the data is valid.
-        if (musicCursor != null && musicCursor.moveToFirst()) {
+    // Receives the songs from the background scan on the main thread.
+    private LibraryLoader.Callbacks mLibraryCallbacks = new LibraryLoader.Callbacks() {
 
-            // Column indexes used for retrieval purposes.
-            int idColumn = musicCursor.getColumnIndex
-                    (android.provider.MediaStore.Audio.Media._ID);
-            int titleColumn = musicCursor.getColumnIndex
-                    (android.provider.MediaStore.Audio.Media.TITLE);
-            int artistColumn = musicCursor.getColumnIndex
-                    (android.provider.MediaStore.Audio.Media.ARTIST);
+        @Override
+        public void onSongsLoaded(LibraryIndex library) {
+            mLibrary = library;
+            refreshSongList(true);
 
-            // Iterates and adds new Song objects to the list, accordingly..
-            do {
-                long thisId = musicCursor.getLong(idColumn);
-                String thisTitle = musicCursor.getString(titleColumn);
-                String thisArtist = musicCursor.getString(artistColumn);
-                mSongList.add(new Song(thisId, thisTitle, thisArtist));
+            if (mCreatedAt != 0 && library.getStore().size() > 0) {
+                Metrics.recordSince(Metrics.COLD_START, mCreatedAt);
+                mCreatedAt = 0;
             }
-            while (musicCursor.moveToNext());
         }
-    }
+
+        @Override
+        public void onLoadFinished() {
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "onLoadFinished(): " + mSongList.size() + " songs");
+        }
+    };
 
     // The following are MediaPlayerControl interface methods.
     @Override
     public void start() {
-        Log.d(LOG_TAG, "start()");
+        if (Metrics.LOGGING) Log.d(LOG_TAG, "start()");
 
         mMusicService.go(); // Executes when the user resumes the paused song
     }
 
     @Override
     public void pause() {
-        Log.d(LOG_TAG, "pause()");
+        if (Metrics.LOGGING) Log.d(LOG_TAG, "pause()");
 
-        mPlaybackPaused = true;
         mMusicService.pausePlayer(); // Executes when the user pauses the current song
     }
 
     /**
-     * Getter interface method for the song's total length.
+     * Getter interface method for the song's total length. The controller polls this many times
+     * a second, so it only reads the Service's cached snapshot.
      */
     @Override
     public int getDuration() {
-        Log.d(LOG_TAG, "getDuration()");
-
-        // Returns the song's current duration as it is currently playing. Otherwise, returns 0
-        // with the exception of it being paused (so return its duration).
-        if (mMusicService != null && mMusicBound && mMusicService.isPlaying()) {
-            return mMusicService.getDuration();
-        } else {
-            if (mPlaybackPaused) return mMusicService.getDuration();
+        // Returns the song's duration while it is playing or paused. Otherwise, returns 0.
+        if (hasTrack()) return mMusicService.getDuration();
 
-            return 0;
-        }
+        return 0;
     }
 
     /**
-     * Getter interface method for the song's current position at the minute-mark.
+     * Getter interface method for the song's current position at the minute-mark. Like
+     * {@link #getDuration()}, it only reads the Service's cached snapshot.
      */
     @Override
     public int getCurrentPosition() {
-        Log.d(LOG_TAG, "getCurrentPosition()");
-
-        // Returns the song's current position as it is currently playing. Otherwise, returns 0
-        // with the exception of it being paused (so return its position).
-        if (mMusicService != null && mMusicBound && mMusicService.isPlaying()) {
-            return mMusicService.getPosition();
-        } else {
-            if (mPlaybackPaused) return mMusicService.getPosition();
+        // Returns the song's current position while it is playing or paused. Otherwise,
+        // returns 0.
+        if (hasTrack()) return mMusicService.getPosition();
 
-            return 0;
-        }
+        return 0;
     }
 
     @Override
@@ -400,6 +655,11 @@ public class MainActivity extends AppCompatActivity implements MediaPlayerContro
         return false;
     }
 
+    // Helper method that checks whether the Service has a song playing or paused.
+    private boolean hasTrack() {
+        return mMusicService != null && mMusicBound && mMusicService.getState().hasTrack();
+    }
+
     @Override
     public int getBufferPercentage() {
         return 0;
@@ -0,0 +1,250 @@
+package dndproductions.musicplayerlite;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.media.MediaMetadataRetriever;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Batched enrichment stage of the library load, filling in the metadata that the scan's
+ * projection can't provide. Durations and track numbers come with the scan itself; what's left
+ * is:
+ *
+ * <ul>
+ * <li>genres, which MediaStore keeps in a table of their own - they're read in bulk, one query
+ * per genre rather than one per song;</li>
+ * <li>songs MediaStore hasn't read the tags of (it reports no duration for them) - only those
+ * are opened with {@link MediaMetadataRetriever}, a few at a time on a small worker pool.</li>
+ * </ul>
+ *
+ * The results go into the {@link LibraryIndex}, so that each file is only enriched again once it
+ * changes.
+ */
+public class MetadataEnricher {
+
+    // Log tag constant.
+    private static final String LOG_TAG = MetadataEnricher.class.getSimpleName();
+
+    // Number of files read with MediaMetadataRetriever at once.
+    private static final int RETRIEVER_THREADS = 2;
+
+    // Number of tracks per disc in MediaStore's track numbers.
+    private static final int TRACKS_PER_DISC = 1000;
+
+    // Genre of each song, as read from MediaStore's genre tables.
+    private static final class Genres {
+        final LongIntMap songGenres = new LongIntMap(256);
+        final List<String> names = new ArrayList<>();
+
+        // Returns the genre of a song, or null if it has none.
+        String get(long songId) {
+            int genre = songGenres.get(songId);
+            return genre == LongIntMap.MISSING ? null : names.get(genre);
+        }
+    }
+
+    private final Context mContext;
+    private final ContentResolver mResolver;
+
+    /**
+     * Creates a {@link MetadataEnricher} object.
+     *
+     * @param context is a Context used for MediaStore queries and reading the files.
+     */
+    public MetadataEnricher(Context context) {
+        mContext = context.getApplicationContext();
+        mResolver = mContext.getContentResolver();
+    }
+
+    /**
+     * Enriches the songs of a store from a given row on. Should be called off the main thread;
+     * blocks until done.
+     *
+     * @param store is the store of songs.
+     * @param fromRow is the first row to enrich - rows before it are already enriched.
+     * @return a store with the metadata filled in.
+     */
+    public SongStore enrich(SongStore store, int fromRow) {
+        int count = store.size() - fromRow;
+        if (count <= 0) return store;
+
+        Genres genres = readGenres();
+        int[] rows = new int[count];
+        int[] durations = new int[count];
+        int[] trackNumbers = new int[count];
+        String[] genreNames = new String[count];
+        List<Callable<Metadata>> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int row = fromRow + i;
+            rows[i] = row;
+            durations[i] = store.getDuration(row);
+            trackNumbers[i] = store.getTrackNumber(row);
+            genreNames[i] = genres.get(store.getId(row));
+            if (durations[i] <= 0) tasks.add(new RetrieveTask(store, i, row, genreNames[i]));
+        }
+
+        for (Metadata metadata : retrieve(tasks)) {
+            durations[metadata.index] = metadata.duration;
+            trackNumbers[metadata.index] = metadata.trackNumber;
+            genreNames[metadata.index] = metadata.genre;
+        }
+
+        return store.withMetadata(rows, count, durations, trackNumbers, genreNames);
+    }
+
+    // Helper method that reads the genre of every song.
+    private Genres readGenres() {
+        Genres genres = new Genres();
+        Cursor genreCursor = mResolver.query(MediaStore.Audio.Genres.EXTERNAL_CONTENT_URI,
+                new String[] {MediaStore.Audio.Genres._ID, MediaStore.Audio.Genres.NAME}, null,
+                null, null);
+        if (genreCursor == null) return genres;
+
+        try {
+            while (genreCursor.moveToNext()) {
+                String name = genreCursor.getString(1);
+                if (name == null || name.isEmpty()) continue;
+
+                Cursor members = mResolver.query(MediaStore.Audio.Genres.Members.getContentUri(
+                        "external", genreCursor.getLong(0)),
+                        new String[] {MediaStore.Audio.Genres.Members.AUDIO_ID}, null, null, null);
+                if (members == null) continue;
+
+                int genre = genres.names.size();
+                genres.names.add(name);
+                try {
+                    while (members.moveToNext()) genres.songGenres.put(members.getLong(0), genre);
+                } finally {
+                    members.close();
+                }
+            }
+        } finally {
+            genreCursor.close();
+        }
+        return genres;
+    }
+
+    // Helper method that runs the file reads on a worker pool, returning the ones that succeeded.
+    private List<Metadata> retrieve(List<Callable<Metadata>> tasks) {
+        List<Metadata> results = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) return results;
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(RETRIEVER_THREADS, tasks.size()), new BackgroundThreadFactory("Metadata"));
+        try {
+            for (Future<Metadata> future : executor.invokeAll(tasks)) {
+                Metadata metadata = future.get();
+                if (metadata != null) results.add(metadata);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Error reading song metadata.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (Metrics.LOGGING) {
+            Log.d(LOG_TAG, "retrieve(): Read " + results.size() + " of " + tasks.size()
+                    + " files");
+        }
+        return results;
+    }
+
+    // Metadata read from a file, for the song at an index of the batch.
+    private static final class Metadata {
+        int index;
+        int duration;
+        int trackNumber;
+        String genre;
+    }
+
+    // Reads a song's file, keeping whatever is already known.
+    private final class RetrieveTask implements Callable<Metadata> {
+        private final SongStore mStore;
+        private final int mIndex;
+        private final int mRow;
+        private final String mGenre;
+
+        RetrieveTask(SongStore store, int index, int row, String genre) {
+            mStore = store;
+            mIndex = index;
+            mRow = row;
+            mGenre = genre;
+        }
+
+        @Override
+        public Metadata call() {
+            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+            try {
+                retriever.setDataSource(mContext, ContentUris.withAppendedId(
+                        MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, mStore.getId(mRow)));
+
+                Metadata metadata = new Metadata();
+                metadata.index = mIndex;
+                metadata.duration = parseNumber(retriever.extractMetadata(
+                        MediaMetadataRetriever.METADATA_KEY_DURATION));
+                metadata.trackNumber = mStore.getTrackNumber(mRow);
+                if (metadata.trackNumber == 0) {
+                    metadata.trackNumber = parseTrackNumber(
+                            retriever.extractMetadata(
+                                    MediaMetadataRetriever.METADATA_KEY_DISC_NUMBER),
+                            retriever.extractMetadata(
+                                    MediaMetadataRetriever.METADATA_KEY_CD_TRACK_NUMBER));
+                }
+                metadata.genre = mGenre;
+                if (metadata.genre == null) {
+                    metadata.genre = retriever.extractMetadata(
+                            MediaMetadataRetriever.METADATA_KEY_GENRE);
+                }
+                return metadata;
+            } catch (RuntimeException e) {
+                // Unreadable or gone - the song keeps what MediaStore had.
+                Log.w(LOG_TAG, "Error reading metadata of song " + mStore.getId(mRow), e);
+                return null;
+            } finally {
+                retriever.release();
+            }
+        }
+    }
+
+    /**
+     * Encodes a disc and track number the way MediaStore does, from tags such as "2/12".
+     *
+     * @param disc is the disc number tag, or null.
+     * @param track is the track number tag, or null.
+     * @return the disc number times 1000 plus the track, or 0 if there's no track number.
+     */
+    static int parseTrackNumber(String disc, String track) {
+        int trackNumber = parseNumber(track);
+        if (trackNumber <= 0 || trackNumber >= TRACKS_PER_DISC) return 0;
+
+        int discNumber = parseNumber(disc);
+        return discNumber > 0 ? discNumber * TRACKS_PER_DISC + trackNumber : trackNumber;
+    }
+
+    // Helper method that parses the number a tag starts with, e.g. 2 from "2/12", or 0 if none.
+    static int parseNumber(String tag) {
+        if (tag == null) return 0;
+
+        String trimmed = tag.trim();
+        int number = 0;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c < '0' || c > '9' || number > (Integer.MAX_VALUE - 9) / 10) break;
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+}
@@ -0,0 +1,141 @@
+package dndproductions.musicplayerlite;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters and latency histograms of the app's hot paths, along with the trace
+ * sections they show up as in systrace. Everything is preallocated, and recording is a few atomic
+ * increments, so the metrics are always on; they're dumped with
+ * {@code adb shell dumpsys activity service dndproductions.musicplayerlite/.MusicService}.
+ *
+ * Debug logging on hot paths goes behind {@link #LOGGING}, so that release builds skip building
+ * the messages too.
+ */
+public final class Metrics {
+
+    // Whether debug messages are logged.
+    public static final boolean LOGGING = BuildConfig.DEBUG;
+
+    // Latencies measured.
+    public static final int COLD_START = 0; // Activity created to the first songs shown
+    public static final int LIBRARY_LOAD = 1; // Library load start to the library being current
+    public static final int SORT = 2; // Sorting the library in every order
+    public static final int TAP_TO_AUDIO = 3; // Song picked to the song being audible
+    public static final int TRACK_TRANSITION = 4; // Track ended to the next one being audible
+    private static final String[] HISTOGRAM_NAMES = {"cold_start", "library_load", "sort",
+            "tap_to_audio", "track_transition"};
+
+    // Events counted.
+    public static final int LIBRARY_LOADS = 0;
+    public static final int SONGS_PICKED = 1;
+    public static final int TRACKS_STARTED = 2;
+    public static final int PLAYBACK_ERRORS = 3;
+    public static final int EVENT_DELIVERIES = 4;
+    private static final String[] COUNTER_NAMES = {"library_loads", "songs_picked",
+            "tracks_started", "playback_errors", "event_deliveries"};
+
+    private static final LatencyHistogram[] sHistograms =
+            new LatencyHistogram[HISTOGRAM_NAMES.length];
+    private static final AtomicLongArray sCounters = new AtomicLongArray(COUNTER_NAMES.length);
+
+    static {
+        for (int i = 0; i < sHistograms.length; i++) sHistograms[i] = new LatencyHistogram();
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param histogram is the latency measured, e.g. {@link #SORT}.
+     * @param nanos is the latency, in nanoseconds.
+     */
+    public static void record(int histogram, long nanos) {
+        sHistograms[histogram].record(nanos);
+    }
+
+    /**
+     * Records the latency from a start time until now.
+     *
+     * @param histogram is the latency measured, e.g. {@link #SORT}.
+     * @param startNanos is the System.nanoTime() it started at.
+     */
+    public static void recordSince(int histogram, long startNanos) {
+        record(histogram, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Counts an event.
+     *
+     * @param counter is the event, e.g. {@link #TRACKS_STARTED}.
+     */
+    public static void increment(int counter) {
+        sCounters.incrementAndGet(counter);
+    }
+
+    /**
+     * Returns a histogram, for reading its statistics.
+     *
+     * @param histogram is the latency measured, e.g. {@link #SORT}.
+     */
+    public static LatencyHistogram getHistogram(int histogram) {
+        return sHistograms[histogram];
+    }
+
+    /**
+     * Returns the count of an event.
+     *
+     * @param counter is the event, e.g. {@link #TRACKS_STARTED}.
+     */
+    public static long getCount(int counter) {
+        return sCounters.get(counter);
+    }
+
+    /**
+     * Begins a named trace section, shown in systrace on Jelly Bean MR2 and above. Sections nest,
+     * and must be ended on the thread they began on.
+     *
+     * @param name is the name of the section.
+     */
+    public static void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) traceBegin(name);
+    }
+
+    /**
+     * Ends the innermost trace section begun on the current thread.
+     */
+    public static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) traceEnd();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void traceBegin(String name) {
+        Trace.beginSection(name);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void traceEnd() {
+        Trace.endSection();
+    }
+
+    /**
+     * Prints the counters and histograms.
+     *
+     * @param writer is the writer printed to.
+     */
+    public static void dump(PrintWriter writer) {
+        writer.println("Metrics:");
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            writer.println("  " + COUNTER_NAMES[i] + ": " + sCounters.get(i));
+        }
+        for (int i = 0; i < HISTOGRAM_NAMES.length; i++) {
+            writer.println("  " + HISTOGRAM_NAMES[i] + ": " + sHistograms[i].summarize());
+        }
+    }
+}
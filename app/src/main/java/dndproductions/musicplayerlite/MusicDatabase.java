@@ -0,0 +1,144 @@
+package dndproductions.musicplayerlite;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * The app's own SQLite database, holding what the MediaStore doesn't: playlists, the up-next
+ * queue and the listening history. Songs are referenced by their MediaStore ids.
+ *
+ * <pre>
+ * playlists:      _id, name, date_added
+ * playlist_songs: playlist_id, position, song_id
+ * queue:          position (the rowid), song_id
+ * history:        _id, song_id, type, time - the log of play events, oldest first
+ * play_counts:    song_id, plays, completions, skips, last_played - totals of the log
+ * </pre>
+ *
+ * Entries of a playlist and of the queue keep contiguous positions, so that a window of them is
+ * a range scan of the primary key.
+ */
+public class MusicDatabase extends SQLiteOpenHelper {
+
+    // Name of the database file, and the version of its schema.
+    private static final String DATABASE_NAME = "music.db";
+    private static final int DATABASE_VERSION = 1;
+
+    // Table and column names.
+    static final String TABLE_PLAYLISTS = "playlists";
+    static final String TABLE_PLAYLIST_SONGS = "playlist_songs";
+    static final String TABLE_QUEUE = "queue";
+    static final String TABLE_HISTORY = "history";
+    static final String TABLE_PLAY_COUNTS = "play_counts";
+    static final String COLUMN_ID = "_id";
+    static final String COLUMN_NAME = "name";
+    static final String COLUMN_DATE_ADDED = "date_added";
+    static final String COLUMN_PLAYLIST_ID = "playlist_id";
+    static final String COLUMN_POSITION = "position";
+    static final String COLUMN_SONG_ID = "song_id";
+    static final String COLUMN_TYPE = "type";
+    static final String COLUMN_TIME = "time";
+    static final String COLUMN_PLAYS = "plays";
+    static final String COLUMN_COMPLETIONS = "completions";
+    static final String COLUMN_SKIPS = "skips";
+    static final String COLUMN_LAST_PLAYED = "last_played";
+
+    private static MusicDatabase sInstance;
+
+    /**
+     * Returns the database of the app, shared by the Activity and the Service.
+     *
+     * @param context is a Context of the app.
+     */
+    public static synchronized MusicDatabase getInstance(Context context) {
+        if (sInstance == null) sInstance = new MusicDatabase(context.getApplicationContext());
+        return sInstance;
+    }
+
+    // Creates the database in a given file. Package-private so that tests can use an in-memory
+    // database, by passing a null name.
+    MusicDatabase(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    private MusicDatabase(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PLAYLISTS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_NAME + " TEXT NOT NULL UNIQUE COLLATE NOCASE, "
+                + COLUMN_DATE_ADDED + " INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_PLAYLIST_SONGS + " ("
+                + COLUMN_PLAYLIST_ID + " INTEGER NOT NULL REFERENCES " + TABLE_PLAYLISTS
+                + "(" + COLUMN_ID + ") ON DELETE CASCADE, "
+                + COLUMN_POSITION + " INTEGER NOT NULL, "
+                + COLUMN_SONG_ID + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_PLAYLIST_ID + ", " + COLUMN_POSITION + "))");
+        db.execSQL("CREATE TABLE " + TABLE_QUEUE + " ("
+                + COLUMN_POSITION + " INTEGER PRIMARY KEY, "
+                + COLUMN_SONG_ID + " INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_HISTORY + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_SONG_ID + " INTEGER NOT NULL, "
+                + COLUMN_TYPE + " INTEGER NOT NULL, "
+                + COLUMN_TIME + " INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_PLAY_COUNTS + " ("
+                + COLUMN_SONG_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_PLAYS + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_COMPLETIONS + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_SKIPS + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_LAST_PLAYED + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // There's only the first version so far.
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        // Deleting a playlist deletes its entries along with it.
+        if (!db.isReadOnly()) db.execSQL("PRAGMA foreign_keys = ON");
+    }
+
+    /**
+     * Moves a contiguous range of positions by an offset, within a transaction. Positions are
+     * keys, so they're first moved out of the way to negative values (which no entry otherwise
+     * has) and only then to their new values - moving them in place could collide midway.
+     *
+     * @param db is the database, within a transaction.
+     * @param table is the table of the entries.
+     * @param scope is an extra condition picking the entries out (e.g. of a playlist), or null.
+     * @param from is the first position of the range.
+     * @param to is the last position of the range.
+     * @param offset is the offset to move the range by.
+     */
+    static void shiftPositions(SQLiteDatabase db, String table, String scope, long from,
+                               long to, long offset) {
+        if (from > to || offset == 0) return;
+
+        String where = COLUMN_POSITION + " BETWEEN ? AND ?"
+                + (scope != null ? " AND " + scope : "");
+        SQLiteStatement park = db.compileStatement("UPDATE " + table + " SET "
+                + COLUMN_POSITION + " = -1 - " + COLUMN_POSITION + " WHERE " + where);
+        park.bindLong(1, from);
+        park.bindLong(2, to);
+        park.executeUpdateDelete();
+        park.close();
+
+        SQLiteStatement move = db.compileStatement("UPDATE " + table + " SET "
+                + COLUMN_POSITION + " = -1 - " + COLUMN_POSITION + " + ? WHERE " + where);
+        move.bindLong(1, offset);
+        move.bindLong(2, -1 - to);
+        move.bindLong(3, -1 - from);
+        move.executeUpdateDelete();
+        move.close();
+    }
+}
@@ -1,36 +1,130 @@
 package dndproductions.musicplayerlite;
 
+import android.Manifest;
+import android.app.Notification;
 import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
-import android.media.MediaPlayer;
-import android.os.IBinder;
-import android.content.ContentUris;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
 import android.os.Binder;
+import android.os.Build;
+import android.os.Looper;
+import android.os.Message;
 import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.support.v4.app.NotificationManagerCompat;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaButtonReceiver;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A subclass of {@link Service} that assists with executing music playback continuously even when
- * the app is minimized.
+ * the app is minimized. Playback itself runs on a {@link PlaybackEngine}, which has the next song
+ * prepared ahead of time so that track changes are gapless.
+ *
+ * The engine is owned by a dedicated playback thread. The public playback methods only post a
+ * command to it and return immediately; bursts of the same command are coalesced there (e.g. ten
+ * taps on next become a single prepare of the song ten places on), and the outcome is tracked by
+ * a {@link PlaybackStateMachine} whose changes can be listened to.
+ *
+ * The session (queue, shuffle order, current song and position) is saved as a
+ * {@link PlaybackSession} a moment after it changes - and periodically while playing - rather
+ * than on every change. When the service is created, the saved session is restored and its song
+ * prepared paused, so that resuming is instant.
+ *
+ * Playback is published to a {@link MediaSessionCompat}, which receives the transport controls
+ * of the notification, the lock screen and headsets, and the service runs in the foreground with
+ * a {@link PlaybackNotification} while playing, so that it isn't killed under memory pressure.
+ * None of that involves the Activity, and playback carries on once it's closed.
+ *
+ * A partial wake lock keeps the CPU up only while a song plays (or the next one is being
+ * prepared), and is let go as soon as playback pauses, stops or fails; how long it's held is
+ * tracked by a {@link WakeLockTimer}. While the screen is off, tracks are read in larger chunks
+ * and the session is saved less often.
+ *
+ * Audio focus is held while playing, through an {@link AudioFocusController}, and playback
+ * pauses when headphones are unplugged.
  */
-public class MusicService extends Service implements MediaPlayer.OnPreparedListener,
-        MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener {
+public class MusicService extends Service {
 
     // Log tag constant.
     private static final String LOG_TAG = MusicService.class.getSimpleName();
 
-    // MediaPlayer field.
-    private MediaPlayer mPlayer;
+    // Commands handled on the playback thread.
+    private static final int MSG_SET_LIST = 1;
+    private static final int MSG_PLAY = 2;
+    private static final int MSG_SKIP = 3;
+    private static final int MSG_PAUSE = 4;
+    private static final int MSG_RESUME = 5;
+    private static final int MSG_SEEK = 6;
+    private static final int MSG_TOGGLE_SHUFFLE = 7;
+    private static final int MSG_RELEASE = 8;
+    private static final int MSG_SAVE = 9;
+    private static final int MSG_STOP = 10;
+    private static final int MSG_ENQUEUE = 11;
+
+    // Delay after a change before the session is saved, so that bursts of changes are written
+    // once, and the interval it's saved at while playing, to keep the position fresh.
+    private static final int SAVE_DELAY_MS = 2000;
+    private static final int PLAYING_SAVE_INTERVAL_MS = 30000;
+    private static final int SCREEN_OFF_SAVE_INTERVAL_MS = 120000;
+
+    // Thread the engine runs on, the handler commands are posted to, and the main thread's
+    // handler for getting back to the UI.
+    private HandlerThread mPlaybackThread;
+    private Handler mPlaybackHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Engine that owns the MediaPlayer objects, and the cache it opens tracks from.
+    private PlaybackEngine mEngine;
+    private TrackCache mTrackCache;
+
+    // State of playback, and the position within the current song, changed on the playback
+    // thread only.
+    private final PlaybackStateMachine mStateMachine = new PlaybackStateMachine();
+    private final PlaybackClock mClock = new PlaybackClock();
+
+    // Net number of next (positive) or previous (negative) taps the playback thread hasn't caught
+    // up with yet.
+    private final AtomicInteger mPendingSkips = new AtomicInteger();
+
+    // Time the user last picked or skipped to a song at, until it's audible (or 0 if it is).
+    private volatile long mPickedAt;
+
+    // The following fields are only accessed on the playback thread.
 
     // Song list field.
-    private List<Song> mSongList;
+    private SongList mSongList = SongStore.EMPTY;
+
+    // Position in the song list of each row of its store (or -1), built on first lookup.
+    private int[] mPositionsByRow;
+
+    // MediaStore ids of the song list, as saved with the session; copied again only once the
+    // list changes.
+    private long[] mSongIds;
 
     // Int field used for keeping track with the current position.
     private int mSongPosition;
@@ -40,7 +134,53 @@ public class MusicService extends Service implements MediaPlayer.OnPreparedListe
 
     // Fields used for implementing shuffle functionality.
     private boolean mShuffle;
-    private Random mRandom;
+    private ShuffleQueue mShuffleQueue;
+
+    // Offset the current song starts at when it's next opened (e.g. after a release).
+    private int mResumeAtMs;
+
+    // File the session is saved to, the thread writing it, the last session written, and the
+    // restored session until a list matching its queue arrives from the Activity.
+    private File mSessionFile;
+    private ExecutorService mSessionExecutor;
+    private PlaybackSession mSavedSession;
+    private PlaybackSession mRestoredSession;
+
+    // Transport controls offered to the media session's controllers.
+    private static final long SESSION_ACTIONS = PlaybackStateCompat.ACTION_PLAY
+            | PlaybackStateCompat.ACTION_PAUSE | PlaybackStateCompat.ACTION_PLAY_PAUSE
+            | PlaybackStateCompat.ACTION_SKIP_TO_NEXT
+            | PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS | PlaybackStateCompat.ACTION_SEEK_TO
+            | PlaybackStateCompat.ACTION_STOP;
+
+    // Media session playback is published to, and the song it was last told about along with
+    // its details.
+    private MediaSessionCompat mMediaSession;
+    private long mPublishedSongId = -1;
+    private String mPublishedTitle;
+    private String mPublishedArtist;
+
+    // Partial wake lock held while playing, the accounting of its holds, and whether the screen
+    // is off.
+    private PowerManager.WakeLock mWakeLock;
+    private WakeLockTimer mWakeLockTimer;
+    private volatile boolean mScreenOff;
+
+    // Holder of audio focus, and whether the becoming-noisy receiver is registered (while
+    // playing).
+    private AudioFocusController mAudioFocus;
+    private boolean mNoisyReceiverRegistered;
+
+    // Songs picked to play next, ahead of the list; opened on the playback thread.
+    private PlayQueue mPlayQueue;
+
+    // Listening history, and the song whose play it's told about last (or -1 if that play
+    // ended already).
+    private PlayHistory mHistory;
+    private long mHistorySongId = -1;
+
+    // Events the UI subscribes to, rather than the service knowing about the UI.
+    private final PlaybackEvents mEvents = new PlaybackEvents();
 
     @Override
     public void onCreate(){
@@ -48,54 +188,110 @@ public class MusicService extends Service implements MediaPlayer.OnPreparedListe
 
         // Initializations.
         mSongPosition = 0;
-        initMusicPlayer();
-        mRandom = new Random();
-    }
+        mTrackCache = new TrackCache(this);
+        mEngine = new PlaybackEngine(this, mTrackCache, mEngineCallback);
+        mShuffleQueue = new ShuffleQueue(System.nanoTime());
+        mHistory = new PlayHistory(MusicDatabase.getInstance(this));
 
-    /**
-     * Initializing method for the MediaPlayer.
-     */
-    public void initMusicPlayer(){
-        mPlayer = new MediaPlayer();
+        // The players are created on the playback thread, so their events arrive there too.
+        mPlaybackThread = new HandlerThread("Playback", Process.THREAD_PRIORITY_AUDIO);
+        mPlaybackThread.start();
+        mPlaybackHandler = new Handler(mPlaybackThread.getLooper(), mCommandHandler);
+        mAudioFocus = new AudioFocusController(this, mEngine, mPlaybackHandler, mFocusCallback);
+
+        // The media session's callbacks run on the main thread, and post commands like the
+        // Activity does.
+        mMediaSession = new MediaSessionCompat(this, LOG_TAG);
+        mMediaSession.setFlags(MediaSessionCompat.FLAG_HANDLES_MEDIA_BUTTONS
+                | MediaSessionCompat.FLAG_HANDLES_TRANSPORT_CONTROLS);
+        mMediaSession.setCallback(mSessionCallback);
+        mMediaSession.setActive(true);
+        mStateMachine.addListener(mSessionPublisher);
 
-        // Sets the stream type to music.
-        mPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        // Only the CPU is kept up, and only while playing; no full wake lock is ever needed for
+        // local files.
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOG_TAG);
+        mWakeLock.setReferenceCounted(false);
+        mWakeLockTimer = new WakeLockTimer(SystemClock.elapsedRealtime());
+        mStateMachine.addListener(mWakeLockHolder);
+        mStateMachine.addListener(mNoisyWatcher);
+        mStateMachine.addListener(mEventPublisher);
 
-        // Sets the following to their respective listener.
-        mPlayer.setOnPreparedListener(this); // When the MediaPlayer instance is prepared.
-        mPlayer.setOnCompletionListener(this); // When a song has completed playback.
-        mPlayer.setOnErrorListener(this); // When an error is thrown.
+        IntentFilter screenFilter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
+        screenFilter.addAction(Intent.ACTION_SCREEN_ON);
+        registerReceiver(mScreenReceiver, screenFilter);
+        setScreenOff(!isInteractive(powerManager));
+
+        // Restores the last session ahead of any command.
+        mSessionFile = new File(getFilesDir(), PlaybackSession.FILE_NAME);
+        mSessionExecutor = Executors.newSingleThreadExecutor(
+                new BackgroundThreadFactory("Session"));
+        mPlaybackHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPlayQueue = new PlayQueue(MusicDatabase.getInstance(MusicService.this));
+                restore();
+            }
+        });
     }
 
     /**
-     * Setter method for retrieving the song list from the Activity.
+     * Setter method for retrieving the song list from the Activity, as the queue playback goes
+     * through. The current song keeps playing, and its position is looked up in the new list;
+     * should it not be in it, playback stops. Should several lists arrive before the playback
+     * thread gets to them, only the latest one is applied.
      *
      * @param songs is the list of songs.
      */
-    public void setList(List<Song> songs){
-        mSongList = songs;
+    public void setList(SongList songs){
+        mPlaybackHandler.removeMessages(MSG_SET_LIST);
+        mPlaybackHandler.obtainMessage(MSG_SET_LIST, songs).sendToTarget();
     }
 
     /**
-     * Setter method for retrieving the respective song's position/index from the Activity.
+     * Plays a song from the song list, replacing any song picked before that hasn't started
+     * preparing yet. A picked song starts a new shuffle.
      *
      * @param position is the position/index of the song being played.
      */
-    public void setSong(int position){
-        mSongPosition = position;
+    public void playSong(int position){
+
+        // Taps on next/previous before the pick no longer apply.
+        mPendingSkips.set(0);
+        mPickedAt = System.nanoTime();
+
+        mPlaybackHandler.removeMessages(MSG_PLAY);
+        mPlaybackHandler.obtainMessage(MSG_PLAY, position, 0).sendToTarget();
+    }
+
+    /**
+     * Adds songs to the up-next queue, which is played through ahead of the rest of the list.
+     *
+     * @param songIds is the MediaStore ids of the songs.
+     * @param next is whether they're played next, rather than after the songs queued already.
+     */
+    public void addToQueue(long[] songIds, boolean next) {
+        mPlaybackHandler.obtainMessage(MSG_ENQUEUE, next ? 1 : 0, 0, songIds).sendToTarget();
     }
 
     /**
      * Setter/toggler method for the shuffle functionality.
      */
     public void setShuffle(){
-        if (mShuffle) {
-            Toast.makeText(this, "Shuffle OFF", Toast.LENGTH_SHORT).show();
-            mShuffle = false;
-        } else {
-            Toast.makeText(this, "Shuffle ON", Toast.LENGTH_SHORT).show();
-            mShuffle = true;
+        mPlaybackHandler.sendEmptyMessage(MSG_TOGGLE_SHUFFLE);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+
+        // Media buttons from the notification, or forwarded by the MediaButtonReceiver.
+        if (intent != null && Intent.ACTION_MEDIA_BUTTON.equals(intent.getAction())) {
+            MediaButtonReceiver.handleIntent(mMediaSession, intent);
         }
+
+        // Restarted after being killed, the service restores its session.
+        return START_STICKY;
     }
 
     /**
@@ -107,6 +303,58 @@ public class MusicService extends Service implements MediaPlayer.OnPreparedListe
         }
     }
 
+    @Override
+    public void onDestroy() {
+
+        unregisterReceiver(mScreenReceiver);
+
+        // Pending commands are dropped; the engine is released on its own thread, which then
+        // quits.
+        mPlaybackHandler.removeCallbacksAndMessages(null);
+        mPlaybackHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                save();
+                release();
+                mStateMachine.removeListener(mSessionPublisher);
+                mStateMachine.removeListener(mWakeLockHolder);
+                mStateMachine.removeListener(mNoisyWatcher);
+                mStateMachine.removeListener(mEventPublisher);
+                setNoisyReceiverRegistered(false);
+                Log.i(LOG_TAG, mWakeLockTimer.summarize(SystemClock.elapsedRealtime()));
+                mMediaSession.release();
+                stopForeground(true);
+                mTrackCache.release();
+                mSessionExecutor.shutdown();
+                mHistory.close();
+                mPlaybackThread.quit();
+            }
+        });
+
+        super.onDestroy();
+    }
+
+    /**
+     * Prints the metrics and playback statistics, for
+     * {@code adb shell dumpsys activity service dndproductions.musicplayerlite/.MusicService}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        Metrics.dump(writer);
+
+        TransitionTimer transitions = getTransitionTimer();
+        writer.println("Playback:");
+        writer.println("  state: " + mStateMachine.getState());
+        writer.println("  transitions: " + transitions.getCount() + ", average "
+                + transitions.getAverageLatencyNanos() / 1000 + "us, max "
+                + transitions.getMaxLatencyNanos() / 1000 + "us");
+        writer.println("  track cache: " + mTrackCache.getHitCount() + " hits, "
+                + mTrackCache.getMissCount() + " misses");
+        writer.println("  focus resumes: " + mAudioFocus.getResumeCount() + ", max "
+                + mAudioFocus.getMaxResumeLatencyNanos() / 1000 + "us");
+        writer.println("  " + mWakeLockTimer.summarize(SystemClock.elapsedRealtime()));
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return mMusicBinder;
@@ -114,119 +362,960 @@ public class MusicService extends Service implements MediaPlayer.OnPreparedListe
 
     @Override
     public boolean onUnbind(Intent intent){
-        Log.d(LOG_TAG, "onUnbind()");
+        if (Metrics.LOGGING) Log.d(LOG_TAG, "onUnbind()");
 
-        // Releases MediaPlayer resources when the Service is unbound (e.g. user closing app).
-        mPlayer.stop();
-        mPlayer.release();
+        // Releases MediaPlayer resources when the Service is unbound (e.g. user closing app),
+        // once the session is saved - unless a song is playing, which carries on in the
+        // foreground.
+        mPlaybackHandler.sendEmptyMessage(MSG_RELEASE);
         return false;
     }
 
     /**
-     * Plays a song from the song list.
+     * Returns the current state of playback.
      */
-    public void playSong(){
-        mPlayer.reset(); // Used also when the user plays songs progressively.
-
-        // Retrieves the respective song.
-        Song song = mSongList.get(mSongPosition);
-
-        // Retrieves the song's ID.
-        long currentSong = song.getID();
-
-        // Sets up the URI.
-        Uri trackUri = ContentUris.withAppendedId(
-                android.provider.MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                currentSong);
-
-        // Tries setting up the URI as the data source for the MediaPlayer.
-        try {
-            mPlayer.setDataSource(getApplicationContext(), trackUri);
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Error setting data source.", e);
-        }
+    public PlaybackState getState() {
+        return mStateMachine.getState();
+    }
 
-        mPlayer.prepareAsync(); // Prepares its asynchronous task.
+    /**
+     * Registers a listener for the state of playback. It's invoked on the playback thread.
+     *
+     * @param listener is the listener.
+     */
+    public void addStateListener(PlaybackStateMachine.Listener listener) {
+        mStateMachine.addListener(listener);
     }
 
-    @Override
-    public void onPrepared(MediaPlayer mediaPlayer) {
-        Log.d(LOG_TAG, "onPrepared()");
+    /**
+     * Unregisters a listener registered with {@link #addStateListener}.
+     *
+     * @param listener is the listener.
+     */
+    public void removeStateListener(PlaybackStateMachine.Listener listener) {
+        mStateMachine.removeListener(listener);
+    }
 
-        mediaPlayer.start(); // Begins playback
+    /**
+     * Subscribes a listener to playback events, e.g. a screen showing them while it's visible.
+     * It's invoked on the main thread, at most once per frame.
+     *
+     * @param listener is the listener.
+     * @param mask is the {@link PlaybackEvents} flags it's interested in.
+     */
+    public void addPlaybackListener(PlaybackEvents.Listener listener, int mask) {
+        mEvents.subscribe(listener, mask);
+    }
 
-        MainActivity.showController(); // Updates the controller accordingly
+    /**
+     * Unsubscribes a listener subscribed with {@link #addPlaybackListener}.
+     *
+     * @param listener is the listener.
+     */
+    public void removePlaybackListener(PlaybackEvents.Listener listener) {
+        mEvents.unsubscribe(listener);
     }
 
-    @Override
-    public boolean onError(MediaPlayer mediaPlayer, int i, int i1) {
-        Log.d(LOG_TAG, "onError()");
+    /**
+     * Returns the cache tracks are opened from, for its hit/miss counters.
+     */
+    public TrackCache getTrackCache() {
+        return mTrackCache;
+    }
 
-        mediaPlayer.reset();
+    /**
+     * Returns the accounting of how long the wake lock was held.
+     */
+    public WakeLockTimer getWakeLockTimer() {
+        return mWakeLockTimer;
+    }
 
-        return false;
+    /**
+     * Returns the holder of audio focus, for its resume latency statistics.
+     */
+    public AudioFocusController getAudioFocus() {
+        return mAudioFocus;
     }
 
-    // Invoked when a song is complete.
-    @Override
-    public void onCompletion(MediaPlayer mediaPlayer) {
-        if (mPlayer.getCurrentPosition() > 0){
-            mediaPlayer.reset();
-            playNext();
-        }
+    /**
+     * Returns the timer measuring the latency of track changes.
+     */
+    public TransitionTimer getTransitionTimer() {
+        return mEngine.getTransitionTimer();
     }
 
     // The following methods all apply to standard playback control functions that the user will
-    // expect.
+    // expect. The getters can be called from any thread, and only read fields (the position is
+    // extrapolated by the clock rather than asked of the player); the commands are posted to the
+    // playback thread, where a later pause/resume or seek replaces one still waiting.
     public int getPosition(){
-        return mPlayer.getCurrentPosition();
+        return mClock.getPosition(System.nanoTime());
     }
 
     public int getDuration(){
-        return mPlayer.getDuration();
+        return mClock.getDuration();
     }
 
     public boolean isPlaying(){
-        return mPlayer.isPlaying();
+        return mStateMachine.getState() == PlaybackState.PLAYING;
     }
 
     public void pausePlayer(){
-        mPlayer.pause();
+        mPlaybackHandler.removeMessages(MSG_RESUME);
+        mPlaybackHandler.removeMessages(MSG_PAUSE);
+        mPlaybackHandler.sendEmptyMessage(MSG_PAUSE);
     }
 
     public void seek(int position){
-        mPlayer.seekTo(position);
+        mPlaybackHandler.removeMessages(MSG_SEEK);
+        mPlaybackHandler.obtainMessage(MSG_SEEK, position, 0).sendToTarget();
     }
 
     public void go(){
-        mPlayer.start();
+        mPlaybackHandler.removeMessages(MSG_PAUSE);
+        mPlaybackHandler.removeMessages(MSG_RESUME);
+        mPlaybackHandler.sendEmptyMessage(MSG_RESUME);
     }
 
     /**
-     * Runs the following code for when the previous song is played.
+     * Runs the following code for when the previous song is played. Taps that arrive before the
+     * playback thread catches up are added up, so only the song they end on gets prepared.
      */
     public void playPrevious(){
-        mSongPosition--;
-        if (mSongPosition < 0) mSongPosition = mSongList.size() - 1;
-        playSong();
+        mPickedAt = System.nanoTime();
+        if (mPendingSkips.getAndDecrement() == 0) mPlaybackHandler.sendEmptyMessage(MSG_SKIP);
     }
 
     /**
-     * Runs the following code for when the next song is played. Shuffles by retrieving a random
-     * song from the list should the boolean flag be true.
+     * Runs the following code for when the next song is played. Taps that arrive before the
+     * playback thread catches up are added up, so only the song they end on gets prepared.
      */
     public void playNext(){
-        if (mShuffle){
-            int newSong = mSongPosition;
-            while (newSong == mSongPosition){ // Loops until false so guaranteed random
-                newSong = mRandom.nextInt(mSongList.size());
+        mPickedAt = System.nanoTime();
+        if (mPendingSkips.getAndIncrement() == 0) mPlaybackHandler.sendEmptyMessage(MSG_SKIP);
+    }
+
+    // Runs the commands on the playback thread.
+    private final Handler.Callback mCommandHandler = new Handler.Callback() {
+
+        @Override
+        public boolean handleMessage(Message message) {
+            switch (message.what) {
+                case MSG_SET_LIST:
+                    applyList((SongList) message.obj);
+                    break;
+                case MSG_PLAY:
+                    if (message.arg1 >= mSongList.size()) break;
+
+                    mRestoredSession = null;
+                    recordHistory(PlayHistory.SKIP);
+                    mSongPosition = message.arg1;
+                    if (mShuffle) mShuffleQueue.reset(mSongList.size(), mSongPosition);
+                    playCurrent(0);
+                    break;
+                case MSG_SKIP:
+                    mRestoredSession = null;
+                    int steps = mPendingSkips.getAndSet(0);
+                    if (steps != 0) recordHistory(PlayHistory.SKIP);
+                    skip(steps);
+                    break;
+                case MSG_PAUSE:
+                    pause();
+                    mAudioFocus.abandon();
+                    break;
+                case MSG_RESUME:
+                    resume();
+                    break;
+                case MSG_SEEK:
+                    seekTo(message.arg1);
+                    break;
+                case MSG_TOGGLE_SHUFFLE:
+                    mRestoredSession = null;
+                    toggleShuffle();
+                    break;
+                case MSG_RELEASE:
+                    save();
+                    // Players paused for a call are kept prepared for when it ends.
+                    PlaybackState state = mStateMachine.getState();
+                    if (state != PlaybackState.PLAYING && state != PlaybackState.PREPARING
+                            && !mAudioFocus.isPausedTransiently()) {
+                        release();
+                    }
+                    return true;
+                case MSG_STOP:
+                    pause();
+                    mAudioFocus.abandon();
+                    save();
+                    stopForeground(true);
+                    NotificationManagerCompat.from(MusicService.this).cancel(
+                            PlaybackNotification.ID);
+                    return true;
+                case MSG_ENQUEUE:
+                    if (message.arg1 != 0) {
+                        mPlayQueue.addNext((long[]) message.obj);
+                    } else {
+                        mPlayQueue.addAll((long[]) message.obj);
+                    }
+
+                    // The song prepared to follow may no longer be the next one.
+                    if (mStateMachine.getState().hasTrack()) queueNext();
+                    return true;
+                case MSG_SAVE:
+                    save();
+                    mHistory.flush();
+
+                    // Keeps the saved position fresh should the process be killed.
+                    if (mStateMachine.getState() == PlaybackState.PLAYING) {
+                        mPlaybackHandler.sendEmptyMessageDelayed(MSG_SAVE, mScreenOff
+                                ? SCREEN_OFF_SAVE_INTERVAL_MS : PLAYING_SAVE_INTERVAL_MS);
+                    }
+                    return true;
+                default:
+                    return false;
+            }
+            scheduleSave();
+            return true;
+        }
+    };
+
+    // Receives the engine's playback events, on the playback thread.
+    private final PlaybackEngine.Callback mEngineCallback = new PlaybackEngine.Callback() {
+
+        @Override
+        public void onTrackStarted(int position) {
+            mResumeAtMs = 0;
+            mClock.start(mEngine.getDuration(), mEngine.getPosition(), System.nanoTime());
+            mStateMachine.moveTo(PlaybackState.PLAYING);
+            mEvents.post(PlaybackEvents.TRACK);
+            recordHistory(PlayHistory.START);
+            recordTrackStarted();
+
+            queueNext();
+            scheduleSave();
+        }
+
+        @Override
+        public void onTrackPrepared(int position) {
+
+            // The seek to the start offset may not have completed yet, so the clock is anchored
+            // at the offset itself.
+            int duration = mEngine.getDuration();
+            int start = mResumeAtMs < duration ? mResumeAtMs : 0;
+            long now = System.nanoTime();
+            mClock.start(duration, start, now);
+            mClock.sync(start, false, now);
+            mStateMachine.moveTo(PlaybackState.PAUSED);
+            mResumeAtMs = 0;
+
+            queueNext();
+        }
+
+        @Override
+        public void onTrackChanged(int position) {
+
+            // Unless skipped, the previous song ran to its end.
+            recordHistory(PlayHistory.COMPLETE);
+            mSongPosition = position;
+
+            // Takes a queued song off the queue, leaving the shuffle where it was; otherwise
+            // keeps the shuffle in step with the song that started.
+            if (position == upNextPosition(false)) {
+                upNextPosition(true);
+            } else if (mShuffle) {
+                if (mShuffleQueue.peekNext() == position) {
+                    mShuffleQueue.next();
+                } else {
+                    mShuffleQueue.reset(mSongList.size(), position);
+                }
+            }
+            mClock.start(mEngine.getDuration(), mEngine.getPosition(), System.nanoTime());
+            mStateMachine.moveTo(PlaybackState.PLAYING);
+            mEvents.post(PlaybackEvents.TRACK);
+            recordHistory(PlayHistory.START);
+            recordTrackStarted();
+
+            // The state stays the same, so the session is told about the new song directly.
+            publishSession();
+            queueNext();
+            scheduleSave();
+        }
+
+        @Override
+        public void onPlaybackCompleted() {
+            recordHistory(PlayHistory.COMPLETE);
+            skip(1);
+        }
+
+        @Override
+        public void onPlaybackError() {
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "onPlaybackError()");
+
+            Metrics.increment(Metrics.PLAYBACK_ERRORS);
+            mClock.reset();
+            mHistorySongId = -1;
+            mStateMachine.moveTo(PlaybackState.ERROR);
+        }
+    };
+
+    // Receives the transport controls of the notification, lock screen and headsets, on the main
+    // thread.
+    private final MediaSessionCompat.Callback mSessionCallback = new MediaSessionCompat.Callback() {
+
+        @Override
+        public void onPlay() {
+            go();
+        }
+
+        @Override
+        public void onPause() {
+            pausePlayer();
+        }
+
+        @Override
+        public void onSkipToNext() {
+            playNext();
+        }
+
+        @Override
+        public void onSkipToPrevious() {
+            playPrevious();
+        }
+
+        @Override
+        public void onSeekTo(long position) {
+            seek((int) position);
+        }
+
+        @Override
+        public void onStop() {
+
+            // Dismissed from the notification: the service goes once nothing is bound to it.
+            mPlaybackHandler.removeMessages(MSG_RESUME);
+            mPlaybackHandler.sendEmptyMessage(MSG_STOP);
+            stopSelf();
+        }
+    };
+
+    // Publishes the state of playback as it changes, on the playback thread.
+    private final PlaybackStateMachine.Listener mSessionPublisher =
+            new PlaybackStateMachine.Listener() {
+
+        @Override
+        public void onStateChanged(PlaybackState previous, PlaybackState state) {
+            publishSession();
+        }
+    };
+
+    // Holds the wake lock while a song plays or is being prepared, on the playback thread.
+    private final PlaybackStateMachine.Listener mWakeLockHolder =
+            new PlaybackStateMachine.Listener() {
+
+        @Override
+        public void onStateChanged(PlaybackState previous, PlaybackState state) {
+            long now = SystemClock.elapsedRealtime();
+            if (state == PlaybackState.PLAYING || state == PlaybackState.PREPARING) {
+                if (!mWakeLock.isHeld()) {
+                    mWakeLock.acquire();
+                    mWakeLockTimer.markAcquired(now);
+                }
+            } else if (mWakeLock.isHeld()) {
+                mWakeLock.release();
+                mWakeLockTimer.markReleased(now);
+                if (Metrics.LOGGING) Log.d(LOG_TAG, mWakeLockTimer.summarize(now));
+            }
+        }
+    };
+
+    // Pauses and resumes playback as other apps take audio focus and give it back, on the
+    // playback thread.
+    private final AudioFocusController.Callback mFocusCallback =
+            new AudioFocusController.Callback() {
+
+        @Override
+        public boolean onFocusLost(boolean temporary) {
+            PlaybackState state = mStateMachine.getState();
+            pause();
+            return state == PlaybackState.PLAYING || state == PlaybackState.PREPARING;
+        }
+
+        @Override
+        public void onFocusRegained() {
+            resume();
+        }
+    };
+
+    // Listens for headphones being unplugged while playing, so that playback doesn't carry on
+    // out loud.
+    private final PlaybackStateMachine.Listener mNoisyWatcher =
+            new PlaybackStateMachine.Listener() {
+
+        @Override
+        public void onStateChanged(PlaybackState previous, PlaybackState state) {
+            setNoisyReceiverRegistered(state == PlaybackState.PLAYING);
+        }
+    };
+
+    private final BroadcastReceiver mNoisyReceiver = new BroadcastReceiver() {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (AudioManager.ACTION_AUDIO_BECOMING_NOISY.equals(intent.getAction())) {
+                pausePlayer();
             }
-            mSongPosition = newSong;
+        }
+    };
+
+    // Tracks the screen going off and on, on the main thread.
+    private final BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            setScreenOff(Intent.ACTION_SCREEN_OFF.equals(intent.getAction()));
+        }
+    };
+
+    // Tells the subscribers about state changes, and ticks the position while playing.
+    private final PlaybackStateMachine.Listener mEventPublisher =
+            new PlaybackStateMachine.Listener() {
+
+        @Override
+        public void onStateChanged(PlaybackState previous, PlaybackState state) {
+            mEvents.setPlaying(state == PlaybackState.PLAYING);
+            mEvents.post(PlaybackEvents.STATE);
+        }
+    };
+
+    // Helper method that applies a new song list, on the playback thread.
+    private void applyList(SongList songs) {
+
+        boolean hadSong = mSongPosition < mSongList.size();
+        long currentId = hadSong ? getSongId(mSongPosition) : 0;
+        boolean appended = SongListDiff.isAppended(mSongList, songs);
+        setSongList(songs);
+
+        // Keeps pointing at the same song should the list have been reordered or updated.
+        if (hadSong) {
+            int position = findPosition(currentId);
+            if (position < 0) {
+
+                // No position means the current song any more, so rather than playing on at one
+                // that means another song (whose id would then be saved and recorded), playback
+                // stops and starts over from the top of the list.
+                recordHistory(PlayHistory.SKIP);
+                release();
+                mResumeAtMs = 0;
+                mSongPosition = 0;
+                mShuffleQueue.reset(songs.size(), mSongPosition);
+                mRestoredSession = null;
+                return;
+            }
+            mSongPosition = position;
+        } else if (mSongPosition >= songs.size()) {
+            mSongPosition = 0;
+        }
+
+        // Songs appended to the list join the shuffle; otherwise (a new sort, filter or library
+        // update) positions have moved, so the shuffle starts over from the current song.
+        if (appended) {
+            mShuffleQueue.grow(songs.size());
+        } else {
+            mShuffleQueue.reset(songs.size(), mSongPosition);
+        }
+
+        // Once the library's list of the restored queue arrives, the restored shuffle order
+        // applies to it again (the lists before it being partial).
+        if (mRestoredSession != null && mRestoredSession.matches(songs)) {
+            restoreShuffle(mRestoredSession);
+            mRestoredSession = null;
+        }
+
+        // The upcoming song may have changed along with the list.
+        if (mStateMachine.getState().hasTrack()) queueNext();
+    }
+
+    // Helper method that toggles shuffle, on the playback thread.
+    private void toggleShuffle() {
+        mShuffle = !mShuffle;
+        if (mShuffle) mShuffleQueue.reset(mSongList.size(), mSongPosition);
+
+        final String message = mShuffle ? "Shuffle ON" : "Shuffle OFF";
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(MusicService.this, message, Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        // Prepares the song that now comes next instead.
+        if (mStateMachine.getState().hasTrack()) queueNext();
+    }
+
+    // Helper method that plays the current song from the song list, from an offset.
+    private void playCurrent(int startAtMs) {
+        if (!mAudioFocus.request()) {
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "playCurrent(): Audio focus denied");
+            return;
+        }
+
+        mResumeAtMs = 0;
+        mClock.reset();
+        mStateMachine.moveTo(PlaybackState.PREPARING);
+        mEngine.play(getSongId(mSongPosition), mSongPosition, startAtMs);
+    }
+
+    // Helper method that adapts reading and saving to the screen being off or on.
+    private void setScreenOff(boolean screenOff) {
+        mScreenOff = screenOff;
+        mTrackCache.setScreenOff(screenOff);
+    }
+
+    // Helper method that returns whether the screen is on.
+    @SuppressWarnings("deprecation")
+    private static boolean isInteractive(PowerManager powerManager) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH) {
+            return powerManager.isInteractive();
+        }
+        return powerManager.isScreenOn();
+    }
+
+    // Helper method that registers or unregisters the becoming-noisy receiver.
+    private void setNoisyReceiverRegistered(boolean registered) {
+        if (registered == mNoisyReceiverRegistered) return;
+
+        if (registered) {
+            registerReceiver(mNoisyReceiver,
+                    new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY));
         } else {
-            mSongPosition++;
-            if (mSongPosition >= mSongList.size()) mSongPosition = 0;
+            unregisterReceiver(mNoisyReceiver);
+        }
+        mNoisyReceiverRegistered = registered;
+    }
+
+    // Helper method that pauses the current song, should it be playing - or has it left paused
+    // once prepared, should it be preparing.
+    private void pause() {
+        switch (mStateMachine.getState()) {
+            case PLAYING:
+                mEngine.pause();
+                mClock.sync(mEngine.getPosition(), false, System.nanoTime());
+                mStateMachine.moveTo(PlaybackState.PAUSED);
+                break;
+            case PREPARING:
+                mEngine.pause();
+                break;
+            default:
+                break;
         }
+    }
+
+    // Helper method that resumes the current song, or retries it should it have failed.
+    private void resume() {
+        if (!mAudioFocus.request()) {
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "resume(): Audio focus denied");
+            return;
+        }
+
+        switch (mStateMachine.getState()) {
+            case PAUSED:
+                mEngine.start();
+                mClock.sync(mEngine.getPosition(), true, System.nanoTime());
+                mStateMachine.moveTo(PlaybackState.PLAYING);
+                break;
+            case PREPARING:
+
+                // A restored song starts as soon as it's ready.
+                mEngine.start();
+                break;
+            case IDLE:
+            case ERROR:
+                if (mSongPosition < mSongList.size()) playCurrent(mResumeAtMs);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Helper method that seeks within the current song, re-anchoring the clock.
+    private void seekTo(int position) {
+        PlaybackState state = mStateMachine.getState();
+        if (!state.hasTrack()) return;
+
+        mEngine.seekTo(position);
+        mClock.sync(position, state == PlaybackState.PLAYING, System.nanoTime());
+        publishSession();
+        mEvents.post(PlaybackEvents.POSITION);
+    }
+
+    // Helper method that moves a number of songs forward (or backward, if negative), and plays
+    // the song it ends on. A single step forward switches to the already prepared upcoming song
+    // when there is one.
+    private void skip(int steps) {
+        if (steps == 0 || mSongList.size() == 0) return;
+
+        // The engine advances the queue or the shuffle through onTrackChanged() when it
+        // switches.
+        if (steps == 1 && mEngine.getNextPosition() == peekNextPosition()
+                && mEngine.skipToNext()) {
+            return;
+        }
+
+        for (; steps > 0; steps--) {
+            int next = upNextPosition(true);
+            if (next < 0) next = mShuffle ? mShuffleQueue.next() : nextPosition();
+            mSongPosition = next;
+        }
+        for (; steps < 0; steps++) {
+            mSongPosition = previousPosition();
+        }
+        playCurrent(0);
+    }
+
+    // Helper method that releases the players, on the playback thread. The current song resumes
+    // from where it was when it's played again.
+    private void release() {
+        if (mStateMachine.getState().hasTrack()) {
+            mResumeAtMs = mClock.getPosition(System.nanoTime());
+        }
+        mAudioFocus.abandon();
+        mEngine.release();
+        mClock.reset();
+        mStateMachine.moveTo(PlaybackState.IDLE);
+    }
+
+    // Helper method that restores the saved session, and opens its song paused, on the playback
+    // thread. Until a song is picked from the Activity's list, the queue is made of the saved
+    // songs.
+    private void restore() {
+        PlaybackSession session;
+        try {
+            session = PlaybackSession.read(mSessionFile);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "restore(): Unreadable session, ignoring", e);
+            return;
+        }
+        if (session == null || session.getSongIds().length == 0) return;
+
+        // Songs deleted since the session was saved are dropped, so that a missing current song
+        // isn't opened on every start.
+        long[] ids = session.getSongIds();
+        SongStore found = lookUpSongs(ids);
+        SongStore.Builder builder = new SongStore.Builder(ids.length);
+        int index = 0;
+        for (int i = 0; i < ids.length; i++) {
+            int row = found.getRowOf(ids[i]);
+            if (row < 0) continue;
+
+            builder.add(found, row);
+            if (i < session.getIndex()) index++;
+        }
+        SongStore store = builder.build();
+        if (store.size() == 0) return;
+
+        setSongList(store);
+        if (store.size() == ids.length) {
+            mSongPosition = session.getIndex();
+            restoreShuffle(session);
+            mRestoredSession = session;
+            mSavedSession = session;
+            mResumeAtMs = session.getPositionMs();
+        } else {
+
+            // Positions have moved, so the shuffle starts over; a deleted current song gives way
+            // to the one after it, from its start.
+            if (Metrics.LOGGING) {
+                Log.d(LOG_TAG, "restore(): Dropped " + (ids.length - store.size()) + " songs");
+            }
+            mSongPosition = index < store.size() ? index : 0;
+            mShuffle = session.isShuffle();
+            if (mShuffle) mShuffleQueue.reset(store.size(), mSongPosition);
+            mResumeAtMs = found.getRowOf(session.getSongId()) >= 0
+                    ? session.getPositionMs() : 0;
+        }
+
+        mStateMachine.moveTo(PlaybackState.PREPARING);
+        mEngine.prepare(getSongId(mSongPosition), mSongPosition, mResumeAtMs);
+    }
+
+    // Helper method that looks up the saved songs still in the MediaStore, along with their
+    // titles and artists for the notification, a chunk of ids per query. Run once, before
+    // anything plays. Without permission to read the MediaStore (e.g. revoked since the session
+    // was saved), every song is kept, without details.
+    private SongStore lookUpSongs(long[] ids) {
+        SongStore.Builder builder = new SongStore.Builder(ids.length);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && checkSelfPermission(Manifest.permission.READ_EXTERNAL_STORAGE)
+                != PackageManager.PERMISSION_GRANTED) {
+            for (long id : ids) builder.add(id, "", "", "", 0, 0, 0);
+            return builder.build();
+        }
+
+        List<Long> chunk = new ArrayList<>(LibraryLoader.QUERY_CHUNK_SIZE);
+        for (int start = 0; start < ids.length; start += LibraryLoader.QUERY_CHUNK_SIZE) {
+            chunk.clear();
+            int end = Math.min(start + LibraryLoader.QUERY_CHUNK_SIZE, ids.length);
+            for (int i = start; i < end; i++) chunk.add(ids[i]);
+
+            Cursor cursor;
+            try {
+                cursor = getContentResolver().query(
+                        MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                        new String[] {MediaStore.Audio.Media._ID, MediaStore.Audio.Media.TITLE,
+                                MediaStore.Audio.Media.ARTIST},
+                        LibraryLoader.selectIds(chunk), null, null);
+            } catch (SecurityException e) {
+                Log.w(LOG_TAG, "Couldn't look up the saved songs", e);
+                cursor = null;
+            }
+
+            // Should the MediaStore be unavailable, the songs are kept, without details.
+            if (cursor == null) {
+                for (long id : chunk) builder.add(id, "", "", "", 0, 0, 0);
+                continue;
+            }
+
+            try {
+                while (cursor.moveToNext()) {
+                    builder.add(cursor.getLong(0), cursor.getString(1), cursor.getString(2), "",
+                            0, 0, 0);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return builder.build();
+    }
+
+    // Helper method that applies the shuffle state of a session.
+    private void restoreShuffle(PlaybackSession session) {
+        mShuffle = session.isShuffle();
+        if (mShuffle) {
+            mShuffleQueue.restore(session.getShuffleOrder(), session.getShuffleGenerated(),
+                    session.getShuffleCursor());
+        }
+    }
+
+    // Helper method that publishes the state of playback and the current song to the media
+    // session, and runs the service in the foreground with the notification while playing. A
+    // paused song keeps its notification, which can then be dismissed.
+    private void publishSession() {
+        PlaybackState state = mStateMachine.getState();
+        mMediaSession.setPlaybackState(new PlaybackStateCompat.Builder()
+                .setActions(SESSION_ACTIONS)
+                .setState(sessionState(state), mClock.getPosition(System.nanoTime()),
+                        state == PlaybackState.PLAYING ? 1f : 0f, SystemClock.elapsedRealtime())
+                .build());
+
+        if (state == PlaybackState.IDLE || state == PlaybackState.ERROR) {
+            stopForeground(true);
+            return;
+        }
+        if (!state.hasTrack() || mSongPosition >= mSongList.size()) return;
+
+        long songId = getSongId(mSongPosition);
+        if (songId != mPublishedSongId) {
+            describeSong(songId);
+            mMediaSession.setMetadata(new MediaMetadataCompat.Builder()
+                    .putString(MediaMetadataCompat.METADATA_KEY_TITLE, mPublishedTitle)
+                    .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, mPublishedArtist)
+                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, mClock.getDuration())
+                    .build());
+        }
+
+        boolean playing = state == PlaybackState.PLAYING;
+        Notification notification = PlaybackNotification.build(this, mMediaSession,
+                mPublishedTitle, mPublishedArtist, playing);
+        if (playing) {
+            startForeground(PlaybackNotification.ID, notification);
+        } else {
+            stopForeground(false);
+            NotificationManagerCompat.from(this).notify(PlaybackNotification.ID, notification);
+        }
+    }
+
+    // Helper method that looks up the title and artist of a song from the list. A restored queue
+    // has them too (see lookUpSongs()), so publishing never queries the MediaStore.
+    private void describeSong(long songId) {
+        mPublishedSongId = songId;
+        SongStore store = mSongList.getStore();
+        int row = mSongList.getRow(mSongPosition);
+        mPublishedTitle = store.getTitle(row);
+        mPublishedArtist = store.getArtist(row);
+        if (mPublishedArtist.isEmpty()) mPublishedArtist = getString(R.string.unknown_artist);
+    }
+
+    // Helper method that maps a state of playback to the media session's.
+    private static int sessionState(PlaybackState state) {
+        switch (state) {
+            case PREPARING:
+                return PlaybackStateCompat.STATE_BUFFERING;
+            case PLAYING:
+                return PlaybackStateCompat.STATE_PLAYING;
+            case PAUSED:
+                return PlaybackStateCompat.STATE_PAUSED;
+            case ERROR:
+                return PlaybackStateCompat.STATE_ERROR;
+            default:
+                return PlaybackStateCompat.STATE_NONE;
+        }
+    }
+
+    // Helper method that has the session saved a moment from now, unless it changes again.
+    private void scheduleSave() {
+        mPlaybackHandler.removeMessages(MSG_SAVE);
+        mPlaybackHandler.sendEmptyMessageDelayed(MSG_SAVE, SAVE_DELAY_MS);
+    }
+
+    // Helper method that snapshots the session, and has it written in the background unless
+    // it's the one written last.
+    private void save() {
+        mPlaybackHandler.removeMessages(MSG_SAVE);
+        if (mSongList.size() == 0) return;
+
+        // Saves made while playing mostly differ in the position alone, so the ids are shared
+        // with the previous session until the list changes.
+        if (mSongIds == null) {
+            mSongIds = new long[mSongList.size()];
+            SongStore store = mSongList.getStore();
+            for (int i = 0; i < mSongIds.length; i++) {
+                mSongIds[i] = store.getId(mSongList.getRow(i));
+            }
+        }
+        long[] ids = mSongIds;
+
+        int positionMs = mStateMachine.getState().hasTrack()
+                ? mClock.getPosition(System.nanoTime()) : mResumeAtMs;
+        final PlaybackSession session = new PlaybackSession(ids,
+                Math.min(mSongPosition, ids.length - 1), positionMs, mShuffle,
+                mShuffle ? mShuffleQueue.getOrder() : new int[0],
+                mShuffleQueue.getGenerated(), mShuffleQueue.getCursor());
+        if (session.equals(mSavedSession)) return;
+        mSavedSession = session;
+
+        mSessionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    session.write(mSessionFile);
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Error saving the session.", e);
+                }
+            }
+        });
+    }
+
+    // Helper method that has the engine prepare the song after the current one.
+    private void queueNext() {
+        if (mSongList.size() == 0) return;
+
+        int next = peekNextPosition();
+        mEngine.setNext(getSongId(next), next);
+
+        // Reads ahead the songs that are likely to be played cold next: the current one (should
+        // it be replayed), and its neighbours in the list (for the previous button, and for when
+        // shuffle is toggled).
+        int size = mSongList.size();
+        mTrackCache.prefetch(getSongId(mSongPosition));
+        mTrackCache.prefetch(getSongId((mSongPosition + size - 1) % size));
+        mTrackCache.prefetch(getSongId((mSongPosition + 1) % size));
+    }
+
+    // Helper method that returns the position following the current one, without moving to it -
+    // the shuffle's upcoming song should the boolean flag be true.
+    private int nextPosition() {
+        if (mShuffle) return mShuffleQueue.peekNext();
+
+        int next = mSongPosition + 1;
+        return next >= mSongList.size() ? 0 : next;
+    }
+
+    // Helper method that returns the position of the song played after the current one: the
+    // next song of the up-next queue, or else the next one of the list.
+    private int peekNextPosition() {
+        int next = upNextPosition(false);
+        return next >= 0 ? next : nextPosition();
+    }
+
+    // Helper method that returns the position of the up-next queue's next song in the list, or
+    // -1 if there's none, taking it off the queue should the boolean flag be true. Queued songs
+    // that aren't in the list (e.g. deleted) are passed over, and taken off along with it.
+    private int upNextPosition(boolean take) {
+        if (mPlayQueue == null) return -1;
+
+        int count = Math.min(mPlayQueue.size(), PlayQueue.WINDOW_SIZE);
+        for (int i = 0; i < count; i++) {
+            int position = findPosition(mPlayQueue.getSongId(i));
+            if (position < 0) continue;
+
+            if (take) {
+                for (; i >= 0; i--) mPlayQueue.poll();
+            }
+            return position;
+        }
+        return -1;
+    }
+
+    // Helper method that replaces the song list, dropping the lookup built for the previous one.
+    private void setSongList(SongList songs) {
+        mSongList = songs;
+        mPositionsByRow = null;
+        mSongIds = null;
+    }
+
+    // Helper method that returns the position of a song in the list, or -1 if it isn't in it.
+    // The store finds the row by id; a list presenting a selection or order of the rows maps
+    // rows back to positions through an array built on the first lookup.
+    private int findPosition(long songId) {
+        SongStore store = mSongList.getStore();
+        int row = store.getRowOf(songId);
+        if (row < 0 || mSongList == store) return row;
+
+        if (mPositionsByRow == null) {
+            mPositionsByRow = new int[store.size()];
+            Arrays.fill(mPositionsByRow, -1);
+            for (int i = 0; i < mSongList.size(); i++) mPositionsByRow[mSongList.getRow(i)] = i;
+        }
+        return mPositionsByRow[row];
+    }
+
+    // Helper method that moves back to the song before the current one, going back through the
+    // shuffle's history should the boolean flag be true.
+    private int previousPosition() {
+        int previous = mShuffle ? mShuffleQueue.previous() : -1;
+        if (previous >= 0) return previous;
+
+        previous = mSongPosition - 1;
+        if (previous < 0) previous = mSongList.size() - 1;
+        if (mShuffle) mShuffleQueue.reset(mSongList.size(), previous);
+        return previous;
+    }
+
+    // Helper method that counts a track starting, and records how long after being picked it
+    // became audible, should it have been.
+    private void recordTrackStarted() {
+        Metrics.increment(Metrics.TRACKS_STARTED);
+
+        long pickedAt = mPickedAt;
+        if (pickedAt != 0) {
+            Metrics.recordSince(Metrics.TAP_TO_AUDIO, pickedAt);
+            mPickedAt = 0;
+        }
+    }
+
+    // Helper method that records an event in the listening history, on the playback thread: the
+    // start of the current song, or the end (completed or skipped) of the song that started last.
+    private void recordHistory(int type) {
+        if (type == PlayHistory.START) {
+            mHistorySongId = getSongId(mSongPosition);
+        } else if (mHistorySongId < 0) {
+            return;
+        }
+
+        mHistory.record(type, mHistorySongId);
+        if (type != PlayHistory.START) mHistorySongId = -1;
+    }
 
-        playSong();
+    // Helper method that returns the MediaStore id of the song at a position.
+    private long getSongId(int position) {
+        return mSongList.getStore().getId(mSongList.getRow(position));
     }
 }
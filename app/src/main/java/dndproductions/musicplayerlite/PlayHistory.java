@@ -0,0 +1,191 @@
+package dndproductions.musicplayerlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_COMPLETIONS;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_ID;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_LAST_PLAYED;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_PLAYS;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_SKIPS;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_SONG_ID;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_TIME;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_TYPE;
+import static dndproductions.musicplayerlite.MusicDatabase.TABLE_HISTORY;
+import static dndproductions.musicplayerlite.MusicDatabase.TABLE_PLAY_COUNTS;
+
+/**
+ * The listening history: a log of songs starting, completing and being skipped, and the totals
+ * per song (plays, completions, skips and the last time it started).
+ *
+ * Events are recorded into a {@link HistoryBuffer} and written behind, in batches, by a
+ * background thread - a batch is one transaction that appends the events to the log and adds
+ * them up into the totals once per song. Recording never touches storage, so playback never
+ * waits on it.
+ */
+public class PlayHistory {
+
+    // Log tag constant.
+    private static final String LOG_TAG = PlayHistory.class.getSimpleName();
+
+    // Types of events.
+    public static final int START = 0;
+    public static final int COMPLETE = 1;
+    public static final int SKIP = 2;
+
+    // Number of events held in memory, and the number that has a batch written straight away.
+    private static final int BUFFER_CAPACITY = 512;
+    private static final int FLUSH_THRESHOLD = 64;
+
+    // Number of events the log keeps; the totals keep counting past it.
+    static final int MAX_LOG_SIZE = 10000;
+
+    // Number of totals kept per song.
+    private static final int TOTALS = 4;
+
+    private final MusicDatabase mDatabase;
+    private final HistoryBuffer mBuffer = new HistoryBuffer(BUFFER_CAPACITY);
+    private final ExecutorService mExecutor;
+
+    // Whether a flush is waiting to run, so that a burst of events schedules a single one.
+    private final AtomicBoolean mFlushPending = new AtomicBoolean();
+
+    // Batch arrays, only used on the background thread.
+    private final int[] mTypes = new int[BUFFER_CAPACITY];
+    private final long[] mSongIds = new long[BUFFER_CAPACITY];
+    private final long[] mTimes = new long[BUFFER_CAPACITY];
+
+    // Totals per song of a batch, only used on the background thread: song i of the batch is
+    // mTotalIds[i], with plays, completions, skips and last start at mTotals[i * 4] onwards.
+    private final LongIntMap mTotalIndexes = new LongIntMap(BUFFER_CAPACITY);
+    private final long[] mTotalIds = new long[BUFFER_CAPACITY];
+    private final long[] mTotals = new long[BUFFER_CAPACITY * TOTALS];
+
+    /**
+     * Creates a {@link PlayHistory} object. The database is only opened on the background thread.
+     *
+     * @param database is the database the history is kept in.
+     */
+    public PlayHistory(MusicDatabase database) {
+        this(database, Executors.newSingleThreadExecutor(new BackgroundThreadFactory("History")));
+    }
+
+    // Creates a history writing on a given executor. Package-private so that tests can write
+    // batches on their own thread.
+    PlayHistory(MusicDatabase database, ExecutorService executor) {
+        mDatabase = database;
+        mExecutor = executor;
+    }
+
+    /**
+     * Records an event, from any thread, without blocking on storage.
+     *
+     * @param type is the type of the event.
+     * @param songId is the MediaStore id of the song.
+     */
+    public void record(int type, long songId) {
+        record(type, songId, System.currentTimeMillis());
+    }
+
+    // Records an event at a given time. Package-private so that tests can pick the times.
+    void record(int type, long songId, long time) {
+        if (mBuffer.add(type, songId, time) >= FLUSH_THRESHOLD) flush();
+    }
+
+    /**
+     * Has the events recorded so far written in the background.
+     */
+    public void flush() {
+        if (!mFlushPending.compareAndSet(false, true)) return;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mFlushPending.set(false);
+                write();
+            }
+        });
+    }
+
+    /**
+     * Writes the remaining events, and stops the background thread once done.
+     */
+    public void close() {
+        flush();
+        mExecutor.shutdown();
+    }
+
+    // Helper method that writes a batch of events, on the background thread.
+    private void write() {
+        int count = mBuffer.drain(mTypes, mSongIds, mTimes);
+        if (count == 0) return;
+
+        // Adds the events up per song: plays, completions, skips and the last start.
+        mTotalIndexes.clear();
+        Arrays.fill(mTotals, 0);
+        int songCount = 0;
+        for (int i = 0; i < count; i++) {
+            int index = mTotalIndexes.get(mSongIds[i]);
+            if (index == LongIntMap.MISSING) {
+                index = songCount++;
+                mTotalIndexes.put(mSongIds[i], index);
+                mTotalIds[index] = mSongIds[i];
+            }
+            int start = index * TOTALS;
+            mTotals[start + mTypes[i]]++;
+            if (mTypes[i] == START) mTotals[start + 3] = Math.max(mTotals[start + 3], mTimes[i]);
+        }
+
+        SQLiteDatabase db = mDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement log = db.compileStatement("INSERT INTO " + TABLE_HISTORY + " ("
+                    + COLUMN_SONG_ID + ", " + COLUMN_TYPE + ", " + COLUMN_TIME
+                    + ") VALUES (?, ?, ?)");
+            for (int i = 0; i < count; i++) {
+                log.bindLong(1, mSongIds[i]);
+                log.bindLong(2, mTypes[i]);
+                log.bindLong(3, mTimes[i]);
+                log.executeInsert();
+            }
+            log.close();
+
+            SQLiteStatement create = db.compileStatement("INSERT OR IGNORE INTO "
+                    + TABLE_PLAY_COUNTS + " (" + COLUMN_SONG_ID + ") VALUES (?)");
+            SQLiteStatement add = db.compileStatement("UPDATE " + TABLE_PLAY_COUNTS + " SET "
+                    + COLUMN_PLAYS + " = " + COLUMN_PLAYS + " + ?, "
+                    + COLUMN_COMPLETIONS + " = " + COLUMN_COMPLETIONS + " + ?, "
+                    + COLUMN_SKIPS + " = " + COLUMN_SKIPS + " + ?, "
+                    + COLUMN_LAST_PLAYED + " = MAX(" + COLUMN_LAST_PLAYED + ", ?) WHERE "
+                    + COLUMN_SONG_ID + " = ?");
+            for (int index = 0; index < songCount; index++) {
+                create.bindLong(1, mTotalIds[index]);
+                create.executeInsert();
+                for (int i = 0; i < TOTALS; i++) add.bindLong(i + 1, mTotals[index * TOTALS + i]);
+                add.bindLong(TOTALS + 1, mTotalIds[index]);
+                add.executeUpdateDelete();
+            }
+            create.close();
+            add.close();
+
+            // Keeps the log to its most recent events.
+            db.delete(TABLE_HISTORY, COLUMN_ID + " <= (SELECT MAX(" + COLUMN_ID + ") FROM "
+                    + TABLE_HISTORY + ") - " + MAX_LOG_SIZE, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (Metrics.LOGGING) {
+            long dropped = mBuffer.getDropped();
+            Log.d(LOG_TAG, "Wrote " + count + " events" + (dropped > 0 ? ", " + dropped
+                    + " dropped so far" : ""));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package dndproductions.musicplayerlite;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_POSITION;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_SONG_ID;
+import static dndproductions.musicplayerlite.MusicDatabase.TABLE_QUEUE;
+
+/**
+ * The up-next queue: songs the user picked to be played after the current one, ahead of the rest
+ * of the list. It's kept in the {@link MusicDatabase}, so it survives restarts, and never loaded
+ * whole - entries are read a window at a time, so even a queue of the whole library costs one
+ * window of ids in memory.
+ *
+ * Entries occupy the contiguous positions [first, first + size) of the table. Taking the head off
+ * only advances the first position, so playing through the queue doesn't renumber it.
+ *
+ * Every edit is a single transaction. The methods can be called from any thread.
+ */
+public class PlayQueue {
+
+    // Number of entries read per window.
+    static final int WINDOW_SIZE = 256;
+
+    private final SQLiteDatabase mDb;
+
+    // First position of the table, and number of entries.
+    private long mFirst;
+    private int mSize;
+
+    // Window of song ids read last, and the index of its first entry (or -1 if there's none).
+    private final long[] mWindow = new long[WINDOW_SIZE];
+    private int mWindowStart = -1;
+    private int mWindowLength;
+
+    /**
+     * Creates a {@link PlayQueue} object, reading the extent of the stored queue. Should be
+     * created off the main thread, as it opens the database.
+     *
+     * @param database is the database the queue is kept in.
+     */
+    public PlayQueue(MusicDatabase database) {
+        mDb = database.getWritableDatabase();
+
+        Cursor cursor = mDb.rawQuery("SELECT MIN(" + COLUMN_POSITION + "), COUNT(*) FROM "
+                + TABLE_QUEUE, null);
+        try {
+            if (cursor.moveToFirst()) {
+                mFirst = cursor.getLong(0);
+                mSize = cursor.getInt(1);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the number of songs in the queue.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the MediaStore id of a song in the queue, reading the window around it should it
+     * not be the current one.
+     *
+     * @param index is the index of the song in the queue, 0 being the next one up.
+     */
+    public synchronized long getSongId(int index) {
+        if (index < 0 || index >= mSize) throw new IndexOutOfBoundsException("index " + index);
+
+        if (mWindowStart < 0 || index < mWindowStart || index >= mWindowStart + mWindowLength) {
+            readWindow(index - index % WINDOW_SIZE);
+        }
+        return mWindow[index - mWindowStart];
+    }
+
+    /**
+     * Adds songs to the end of the queue.
+     *
+     * @param songIds is the MediaStore ids of the songs.
+     */
+    public synchronized void addAll(long[] songIds) {
+        insert(mFirst + mSize, songIds);
+    }
+
+    /**
+     * Adds songs to the front of the queue, so that they're played next, in order.
+     *
+     * @param songIds is the MediaStore ids of the songs.
+     */
+    public synchronized void addNext(long[] songIds) {
+        if (songIds.length == 0) return;
+
+        // Uses the room left by songs already played when there's enough of it.
+        if (mFirst >= songIds.length) {
+            mFirst -= songIds.length;
+            insert(mFirst, songIds);
+            return;
+        }
+
+        mDb.beginTransaction();
+        try {
+            MusicDatabase.shiftPositions(mDb, TABLE_QUEUE, null, mFirst, mFirst + mSize - 1,
+                    songIds.length);
+            insertRows(mFirst, songIds);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        mSize += songIds.length;
+        invalidate();
+    }
+
+    /**
+     * Moves a song within the queue.
+     *
+     * @param from is the index of the song.
+     * @param to is the index it moves to.
+     */
+    public synchronized void move(int from, int to) {
+        if (from == to) return;
+        checkIndex(from);
+        checkIndex(to);
+
+        long fromPosition = mFirst + from;
+        long toPosition = mFirst + to;
+        mDb.beginTransaction();
+        try {
+            // The song is parked aside (below where the shift parks positions), and the songs in
+            // between close up behind it.
+            SQLiteStatement park = mDb.compileStatement("UPDATE " + TABLE_QUEUE + " SET "
+                    + COLUMN_POSITION + " = ? WHERE " + COLUMN_POSITION + " = ?");
+            park.bindLong(1, Long.MIN_VALUE);
+            park.bindLong(2, fromPosition);
+            park.executeUpdateDelete();
+
+            if (from < to) {
+                MusicDatabase.shiftPositions(mDb, TABLE_QUEUE, null, fromPosition + 1,
+                        toPosition, -1);
+            } else {
+                MusicDatabase.shiftPositions(mDb, TABLE_QUEUE, null, toPosition,
+                        fromPosition - 1, 1);
+            }
+
+            park.bindLong(1, toPosition);
+            park.bindLong(2, Long.MIN_VALUE);
+            park.executeUpdateDelete();
+            park.close();
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        invalidate();
+    }
+
+    /**
+     * Removes a song from the queue.
+     *
+     * @param index is the index of the song.
+     */
+    public synchronized void remove(int index) {
+        checkIndex(index);
+        if (index == 0) {
+            poll();
+            return;
+        }
+
+        long position = mFirst + index;
+        mDb.beginTransaction();
+        try {
+            mDb.delete(TABLE_QUEUE, COLUMN_POSITION + " = ?",
+                    new String[] {Long.toString(position)});
+            MusicDatabase.shiftPositions(mDb, TABLE_QUEUE, null, position + 1,
+                    mFirst + mSize - 1, -1);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        mSize--;
+        invalidate();
+    }
+
+    /**
+     * Takes the next song up off the queue.
+     *
+     * @return the MediaStore id of the song, or -1 if the queue is empty.
+     */
+    public synchronized long poll() {
+        if (mSize == 0) return -1;
+
+        long songId = getSongId(0);
+        mDb.delete(TABLE_QUEUE, COLUMN_POSITION + " = ?", new String[] {Long.toString(mFirst)});
+        mSize--;
+
+        // Starts numbering from scratch once empty, so the positions don't grow unbounded.
+        mFirst = mSize == 0 ? 0 : mFirst + 1;
+        if (mWindowStart == 0 && mWindowLength > 1) {
+            System.arraycopy(mWindow, 1, mWindow, 0, --mWindowLength);
+        } else {
+            invalidate();
+        }
+        return songId;
+    }
+
+    /**
+     * Empties the queue.
+     */
+    public synchronized void clear() {
+        mDb.delete(TABLE_QUEUE, null, null);
+        mFirst = 0;
+        mSize = 0;
+        invalidate();
+    }
+
+    // Helper method that inserts songs at free positions of the table, in one transaction.
+    private void insert(long position, long[] songIds) {
+        if (songIds.length == 0) return;
+
+        mDb.beginTransaction();
+        try {
+            insertRows(position, songIds);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        mSize += songIds.length;
+        invalidate();
+    }
+
+    // Helper method that inserts songs from a position on, with a single prepared statement.
+    private void insertRows(long position, long[] songIds) {
+        SQLiteStatement insert = mDb.compileStatement("INSERT INTO " + TABLE_QUEUE + " ("
+                + COLUMN_POSITION + ", " + COLUMN_SONG_ID + ") VALUES (?, ?)");
+        try {
+            for (long songId : songIds) {
+                insert.bindLong(1, position++);
+                insert.bindLong(2, songId);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    // Helper method that reads the window starting at an index, as a range of the primary key.
+    private void readWindow(int start) {
+        Cursor cursor = mDb.rawQuery("SELECT " + COLUMN_SONG_ID + " FROM " + TABLE_QUEUE
+                + " WHERE " + COLUMN_POSITION + " >= ? ORDER BY " + COLUMN_POSITION
+                + " LIMIT " + WINDOW_SIZE, new String[] {Long.toString(mFirst + start)});
+        try {
+            mWindowLength = 0;
+            while (cursor.moveToNext()) mWindow[mWindowLength++] = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+        mWindowStart = start;
+    }
+
+    // Helper method that drops the window after an edit.
+    private void invalidate() {
+        mWindowStart = -1;
+        mWindowLength = 0;
+    }
+
+    // Helper method that checks an index is within the queue.
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) throw new IndexOutOfBoundsException("index " + index);
+    }
+}
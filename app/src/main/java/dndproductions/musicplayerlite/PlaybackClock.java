@@ -0,0 +1,85 @@
+package dndproductions.musicplayerlite;
+
+/**
+ * Snapshot of the current song's position and duration, for the controller to poll without
+ * calling into the player. The playback thread anchors the position to a monotonic clock whenever
+ * playback starts, pauses or seeks; in between, the position is extrapolated from the anchor.
+ *
+ * Each anchor is an immutable object published through a volatile field, so reads are lock-free
+ * and allocation-free, and always see a consistent anchor.
+ */
+public class PlaybackClock {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * Position of the song at a point in time.
+     */
+    private static final class Anchor {
+        final int positionMs;
+        final long atNanos;
+        final boolean running;
+        final int durationMs;
+
+        Anchor(int positionMs, long atNanos, boolean running, int durationMs) {
+            this.positionMs = positionMs;
+            this.atNanos = atNanos;
+            this.running = running;
+            this.durationMs = durationMs;
+        }
+    }
+
+    private static final Anchor NONE = new Anchor(0, 0, false, 0);
+
+    private volatile Anchor mAnchor = NONE;
+
+    /**
+     * Anchors a newly started song.
+     *
+     * @param durationMs is the duration of the song, as read when it was prepared.
+     * @param positionMs is its current position.
+     * @param nowNanos is the current System.nanoTime().
+     */
+    public void start(int durationMs, int positionMs, long nowNanos) {
+        mAnchor = new Anchor(positionMs, nowNanos, true, durationMs);
+    }
+
+    /**
+     * Re-anchors the current song (e.g. after a pause, resume or seek).
+     *
+     * @param positionMs is its current position.
+     * @param running is whether it's playing from now on.
+     * @param nowNanos is the current System.nanoTime().
+     */
+    public void sync(int positionMs, boolean running, long nowNanos) {
+        mAnchor = new Anchor(positionMs, nowNanos, running, mAnchor.durationMs);
+    }
+
+    /**
+     * Forgets the current song (e.g. while the next one is being prepared).
+     */
+    public void reset() {
+        mAnchor = NONE;
+    }
+
+    /**
+     * Returns the position of the current song in milliseconds, capped at its duration if known.
+     *
+     * @param nowNanos is the current System.nanoTime().
+     */
+    public int getPosition(long nowNanos) {
+        Anchor anchor = mAnchor;
+        if (!anchor.running) return anchor.positionMs;
+
+        long position = anchor.positionMs + (nowNanos - anchor.atNanos) / NANOS_PER_MILLI;
+        if (anchor.durationMs > 0) position = Math.min(position, anchor.durationMs);
+        return (int) position;
+    }
+
+    /**
+     * Returns the duration of the current song in milliseconds, or 0 if there is none.
+     */
+    public int getDuration() {
+        return mAnchor.durationMs;
+    }
+}
@@ -0,0 +1,448 @@
+package dndproductions.musicplayerlite;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Dual-{@link MediaPlayer} engine for gapless playback. While one player is playing the current
+ * track, the other one prepares the upcoming track in the background; once it is prepared it is
+ * chained with {@link MediaPlayer#setNextMediaPlayer(MediaPlayer)} so the platform switches over
+ * without any decoder spin-up in between. On devices older than Jelly Bean, which lack that call,
+ * the prepared player is started as soon as the current one completes.
+ *
+ * Skipping to the upcoming track also uses the prepared player, so it starts immediately.
+ *
+ * The engine is driven from a single playback thread, which is also where the players deliver
+ * their events (they're created on it). Its methods are synchronized so that the getters can be
+ * called from other threads too.
+ */
+public class PlaybackEngine implements MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener,
+        MediaPlayer.OnInfoListener {
+
+    // Log tag constant.
+    private static final String LOG_TAG = PlaybackEngine.class.getSimpleName();
+
+    /**
+     * Receives the engine's playback events.
+     */
+    public interface Callback {
+
+        /**
+         * Invoked when a track that was started with {@link #play(long, int, int)} begins
+         * playback.
+         *
+         * @param position is the position of the track in the song list.
+         */
+        void onTrackStarted(int position);
+
+        /**
+         * Invoked when a track opened with {@link #prepare(long, int, int)} is ready, paused.
+         *
+         * @param position is the position of the track in the song list.
+         */
+        void onTrackPrepared(int position);
+
+        /**
+         * Invoked when playback moved on to the prepared upcoming track, either gaplessly at the
+         * end of the current one or through {@link #skipToNext()}.
+         *
+         * @param position is the position of the new track in the song list.
+         */
+        void onTrackChanged(int position);
+
+        /**
+         * Invoked when the current track completed without an upcoming track being ready.
+         */
+        void onPlaybackCompleted();
+
+        /**
+         * Invoked when the current track failed to open or play.
+         */
+        void onPlaybackError();
+    }
+
+    private final Context mContext;
+    private final TrackCache mCache;
+    private final Callback mCallback;
+
+    // Player of the current track, its prepared state, and its duration as read once prepared.
+    private MediaPlayer mPlayer;
+    private boolean mPrepared;
+    private int mDuration;
+
+    // Player of the upcoming track, its position in the song list (or -1 if none is queued),
+    // whether it's prepared, and its duration.
+    private MediaPlayer mNextPlayer;
+    private int mNextPosition = -1;
+    private long mNextSongId = -1;
+    private boolean mNextPrepared;
+    private int mNextDuration;
+
+    // Position of the current track in the song list.
+    private int mPosition = -1;
+
+    // Volume both players are set to.
+    private float mVolume = 1f;
+
+    // Whether the current track starts playing once prepared, and the offset it starts at.
+    private boolean mStartWhenPrepared;
+    private int mStartAtMs;
+
+    // Measures how long each track change stays silent.
+    private final TransitionTimer mTransitionTimer = new TransitionTimer();
+
+    /**
+     * Creates a {@link PlaybackEngine} object.
+     *
+     * @param context is a Context used for opening the tracks.
+     * @param cache is the cache tracks are opened from when possible.
+     * @param callback is the receiver of the playback events.
+     */
+    public PlaybackEngine(Context context, TrackCache cache, Callback callback) {
+        mContext = context.getApplicationContext();
+        mCache = cache;
+        mCallback = callback;
+    }
+
+    /**
+     * Plays a track straight away, discarding whatever was playing or queued.
+     *
+     * @param songId is the MediaStore id of the track.
+     * @param position is the position of the track in the song list.
+     * @param startAtMs is the offset to start at.
+     */
+    public synchronized void play(long songId, int position, int startAtMs) {
+        mTransitionTimer.cancel();
+        mTransitionTimer.markTrackEnded(System.nanoTime());
+
+        open(songId, position, startAtMs, true);
+    }
+
+    /**
+     * Opens a track paused, discarding whatever was playing or queued, so that playback starts
+     * without delay when it's resumed (e.g. a restored session).
+     *
+     * @param songId is the MediaStore id of the track.
+     * @param position is the position of the track in the song list.
+     * @param startAtMs is the offset to start at.
+     */
+    public synchronized void prepare(long songId, int position, int startAtMs) {
+        mTransitionTimer.cancel();
+
+        open(songId, position, startAtMs, false);
+    }
+
+    // Helper method that opens a track on the current player.
+    private void open(long songId, int position, int startAtMs, boolean start) {
+        clearNext();
+        if (mPlayer == null) mPlayer = createPlayer();
+
+        mPlayer.reset(); // Used also when the user plays songs progressively.
+        mPrepared = false;
+        mDuration = 0;
+        mPosition = position;
+        mStartWhenPrepared = start;
+        mStartAtMs = startAtMs;
+
+        // Tries setting up the cached track or the URI as the data source for the MediaPlayer.
+        // A player without one can't be prepared, so a track that fails to open (e.g. deleted)
+        // is reported rather than prepared.
+        try {
+            setDataSource(mPlayer, songId);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Error setting data source.", e);
+            mPlayer.reset();
+            mCallback.onPlaybackError();
+            return;
+        }
+
+        mPlayer.prepareAsync(); // Prepares its asynchronous task.
+    }
+
+    /**
+     * Prepares the upcoming track in the background, replacing any previously queued one.
+     *
+     * @param songId is the MediaStore id of the track.
+     * @param position is the position of the track in the song list.
+     */
+    public synchronized void setNext(long songId, int position) {
+        // The same track at another position (e.g. the list changed around it) stays prepared.
+        if (mNextPlayer != null && songId == mNextSongId) {
+            mNextPosition = position;
+            return;
+        }
+
+        clearNext();
+        mNextPlayer = createPlayer();
+        mNextPosition = position;
+        mNextSongId = songId;
+
+        try {
+            setDataSource(mNextPlayer, songId);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Error setting next data source.", e);
+            clearNext();
+            return;
+        }
+
+        mNextPlayer.prepareAsync();
+    }
+
+    /**
+     * Switches to the upcoming track if it's already prepared.
+     *
+     * @return whether the switch happened; if not, the caller should play the track cold.
+     */
+    public synchronized boolean skipToNext() {
+        if (mNextPlayer == null || !mNextPrepared) return false;
+
+        mTransitionTimer.cancel();
+        mTransitionTimer.markTrackEnded(System.nanoTime());
+
+        // Unchains the players before stopping the outgoing one.
+        if (mPlayer != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                mPlayer.setNextMediaPlayer(null);
+            }
+            mPlayer.release();
+        }
+
+        mNextPlayer.start();
+        mTransitionTimer.markTrackStarted(System.nanoTime());
+        promoteNext();
+        return true;
+    }
+
+    /**
+     * Returns the position of the upcoming track, or -1 if none is queued.
+     */
+    public synchronized int getNextPosition() {
+        return mNextPosition;
+    }
+
+    /**
+     * Returns the timer measuring track changes, from the previous track going silent (or the
+     * user asking for another one) until the new one is audible.
+     */
+    public TransitionTimer getTransitionTimer() {
+        return mTransitionTimer;
+    }
+
+    // The following methods apply to the current track.
+    public synchronized int getPosition() {
+        return mPrepared ? mPlayer.getCurrentPosition() : 0;
+    }
+
+    public synchronized int getDuration() {
+        return mPrepared ? mDuration : 0;
+    }
+
+    public synchronized boolean isPlaying() {
+        return mPrepared && mPlayer.isPlaying();
+    }
+
+    // Calls made while the track is still being prepared decide whether it starts once ready.
+    public synchronized void pause() {
+        if (mPrepared) {
+            mPlayer.pause();
+        } else {
+            mStartWhenPrepared = false;
+        }
+    }
+
+    public synchronized void start() {
+        if (mPrepared) {
+            mPlayer.start();
+        } else {
+            mStartWhenPrepared = true;
+        }
+    }
+
+    public synchronized void seekTo(int position) {
+        if (mPrepared) mPlayer.seekTo(position);
+    }
+
+    /**
+     * Sets the volume of the current and upcoming tracks, and of those opened afterwards.
+     *
+     * @param volume is the volume, from 0 to 1.
+     */
+    public synchronized void setVolume(float volume) {
+        mVolume = volume;
+        if (mPlayer != null) mPlayer.setVolume(volume, volume);
+        if (mNextPlayer != null) mNextPlayer.setVolume(volume, volume);
+    }
+
+    /**
+     * Releases both players. The engine can still be used afterwards; players are recreated on
+     * demand.
+     */
+    public synchronized void release() {
+        clearNext();
+
+        if (mPlayer != null) {
+            if (mPrepared) mPlayer.stop();
+            mPlayer.release();
+            mPlayer = null;
+        }
+        mPrepared = false;
+    }
+
+    @Override
+    public synchronized void onPrepared(MediaPlayer mediaPlayer) {
+        if (mediaPlayer == mPlayer) {
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "onPrepared()");
+
+            mPrepared = true;
+            mDuration = mediaPlayer.getDuration();
+            if (mStartAtMs > 0 && mStartAtMs < mDuration) mediaPlayer.seekTo(mStartAtMs);
+
+            // Chains an upcoming track that got prepared first.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && mNextPrepared) {
+                mPlayer.setNextMediaPlayer(mNextPlayer);
+            }
+
+            if (mStartWhenPrepared) {
+                mediaPlayer.start(); // Begins playback
+                mTransitionTimer.markTrackStarted(System.nanoTime());
+                mCallback.onTrackStarted(mPosition);
+            } else {
+                mCallback.onTrackPrepared(mPosition);
+            }
+        } else if (mediaPlayer == mNextPlayer) {
+            if (Metrics.LOGGING) Log.d(LOG_TAG, "onPrepared(): Next track ready");
+
+            mNextPrepared = true;
+            mNextDuration = mediaPlayer.getDuration();
+
+            // Chains the players so the platform switches over on its own.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && mPrepared) {
+                mPlayer.setNextMediaPlayer(mNextPlayer);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean onInfo(MediaPlayer mediaPlayer, int what, int extra) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                && what == MediaPlayer.MEDIA_INFO_STARTED_AS_NEXT) {
+            mTransitionTimer.markTrackStarted(System.nanoTime());
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+        if (Metrics.LOGGING) Log.d(LOG_TAG, "onError()");
+
+        // A broken upcoming track is simply dropped; it will be played cold instead.
+        if (mediaPlayer == mNextPlayer) {
+            clearNext();
+            return true;
+        }
+
+        mPrepared = false;
+        mediaPlayer.reset();
+        if (mediaPlayer == mPlayer) mCallback.onPlaybackError();
+
+        return false;
+    }
+
+    // Invoked when a song is complete.
+    @Override
+    public synchronized void onCompletion(MediaPlayer mediaPlayer) {
+        if (mediaPlayer != mPlayer) return;
+
+        // Completion following an error, when nothing played.
+        if (!mPrepared) return;
+
+        mTransitionTimer.markTrackEnded(System.nanoTime());
+
+        if (mNextPlayer != null && mNextPrepared) {
+
+            // On Jelly Bean and above, the next player has already been started by the platform.
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+                mNextPlayer.start();
+                mTransitionTimer.markTrackStarted(System.nanoTime());
+            }
+
+            mPlayer.release();
+            promoteNext();
+        } else {
+            mPlayer.reset();
+            mPrepared = false;
+            mCallback.onPlaybackCompleted();
+        }
+    }
+
+    // Helper method that makes the upcoming player the current one.
+    private void promoteNext() {
+        mPlayer = mNextPlayer;
+        mPrepared = true;
+        mDuration = mNextDuration;
+        mPosition = mNextPosition;
+
+        mNextPlayer = null;
+        mNextPosition = -1;
+        mNextSongId = -1;
+        mNextPrepared = false;
+        mNextDuration = 0;
+
+        mCallback.onTrackChanged(mPosition);
+    }
+
+    // Helper method that discards the upcoming player.
+    private void clearNext() {
+        if (mNextPlayer != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && mPrepared) {
+                mPlayer.setNextMediaPlayer(null);
+            }
+            mNextPlayer.release();
+        }
+
+        mNextPlayer = null;
+        mNextPosition = -1;
+        mNextSongId = -1;
+        mNextPrepared = false;
+        mNextDuration = 0;
+    }
+
+    // Helper method that creates a player with its stream type and listeners set.
+    private MediaPlayer createPlayer() {
+        MediaPlayer player = new MediaPlayer();
+
+        // Sets the stream type to music, at the current (possibly ducked) volume.
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        player.setVolume(mVolume, mVolume);
+
+        // Sets the following to their respective listener.
+        player.setOnPreparedListener(this); // When the MediaPlayer instance is prepared.
+        player.setOnCompletionListener(this); // When a song has completed playback.
+        player.setOnErrorListener(this); // When an error is thrown.
+        player.setOnInfoListener(this); // When the next player takes over.
+
+        return player;
+    }
+
+    // Helper method that opens a track from the cache, falling back to its content URI.
+    // Package-private so that tests can have opening fail.
+    void setDataSource(MediaPlayer player, long songId) throws IOException {
+        if (!mCache.setDataSource(player, songId)) {
+            player.setDataSource(mContext, trackUri(songId));
+        }
+    }
+
+    // Helper method that builds the content URI of a track.
+    private static Uri trackUri(long songId) {
+        return ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, songId);
+    }
+}
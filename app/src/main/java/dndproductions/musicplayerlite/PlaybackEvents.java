@@ -0,0 +1,189 @@
+package dndproductions.musicplayerlite;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carries playback events from {@link MusicService} to whoever shows them, so that the service
+ * never has to know about the UI. Events are posted from any thread without locking: they're
+ * OR-ed into a pending set, and the set is delivered to the listeners on the main thread once per
+ * frame - so a burst of changes (e.g. skipping through several songs) costs a single redraw.
+ *
+ * While playing, position ticks are posted once a second, but only while a listener wants them.
+ */
+public class PlaybackEvents {
+
+    // Event flags, combined into masks.
+    public static final int STATE = 1;
+    public static final int TRACK = 1 << 1;
+    public static final int POSITION = 1 << 2;
+    public static final int ALL = STATE | TRACK | POSITION;
+
+    // Interval position ticks are posted at while playing.
+    private static final int TICK_INTERVAL_MS = 1000;
+
+    /**
+     * Receives playback events, on the main thread.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked once per frame in which events were posted.
+         *
+         * @param events is the events posted since the last delivery, OR-ed together.
+         */
+        void onPlaybackEvents(int events);
+    }
+
+    // A listener along with the events it's interested in.
+    private static final class Subscription {
+        final Listener listener;
+        final int mask;
+
+        Subscription(Listener listener, int mask) {
+            this.listener = listener;
+            this.mask = mask;
+        }
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Copied on write, so that listeners can come and go while events are being delivered.
+    private final List<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+
+    // Events posted but not delivered yet; a delivery is scheduled whenever it becomes non-zero.
+    private final AtomicInteger mPending = new AtomicInteger();
+
+    // Whether position ticks are posted, changed on the main thread only.
+    private boolean mTicking;
+
+    // Frame callback delivering the events, on devices with a Choreographer.
+    private Object mFrameCallback;
+
+    /**
+     * Subscribes a listener. It's invoked on the main thread.
+     *
+     * @param listener is the listener.
+     * @param mask is the events it's interested in.
+     */
+    public void subscribe(Listener listener, int mask) {
+        unsubscribe(listener);
+        mSubscriptions.add(new Subscription(listener, mask));
+        mMainHandler.post(mUpdateTicking);
+    }
+
+    /**
+     * Unsubscribes a listener subscribed with {@link #subscribe}.
+     *
+     * @param listener is the listener.
+     */
+    public void unsubscribe(Listener listener) {
+        for (Subscription subscription : mSubscriptions) {
+            if (subscription.listener == listener) mSubscriptions.remove(subscription);
+        }
+        mMainHandler.post(mUpdateTicking);
+    }
+
+    /**
+     * Posts events, from any thread. They're delivered with the next frame.
+     *
+     * @param events is the events, OR-ed together.
+     */
+    public void post(int events) {
+        int previous;
+        do {
+            previous = mPending.get();
+            if ((previous & events) == events) return; // Already on its way.
+        } while (!mPending.compareAndSet(previous, previous | events));
+
+        if (previous == 0) mMainHandler.post(mScheduleDelivery);
+    }
+
+    /**
+     * Turns the position ticks on while playing, and off otherwise. Can be called from any
+     * thread.
+     *
+     * @param playing is whether a song is playing.
+     */
+    public void setPlaying(final boolean playing) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mTicking = playing;
+                mUpdateTicking.run();
+            }
+        });
+    }
+
+    // Helper method that returns whether any listener wants position ticks.
+    private boolean wantsTicks() {
+        for (Subscription subscription : mSubscriptions) {
+            if ((subscription.mask & POSITION) != 0) return true;
+        }
+        return false;
+    }
+
+    // Starts or stops the position ticks, on the main thread.
+    private final Runnable mUpdateTicking = new Runnable() {
+        @Override
+        public void run() {
+            mMainHandler.removeCallbacks(mTick);
+            if (mTicking && wantsTicks()) mMainHandler.postDelayed(mTick, TICK_INTERVAL_MS);
+        }
+    };
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            post(POSITION);
+            mMainHandler.postDelayed(this, TICK_INTERVAL_MS);
+        }
+    };
+
+    // Schedules the delivery for the next frame, on the main thread. Choreographer arrived in
+    // Jelly Bean; older devices get the events delivered straight away.
+    private final Runnable mScheduleDelivery = new Runnable() {
+        @Override
+        public void run() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                postFrameCallback();
+            } else {
+                deliver();
+            }
+        }
+    };
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    deliver();
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    // Helper method that hands the pending events to the listeners interested in them, on the
+    // main thread.
+    private void deliver() {
+        int events = mPending.getAndSet(0);
+        if (events == 0) return;
+
+        Metrics.increment(Metrics.EVENT_DELIVERIES);
+
+        for (Subscription subscription : mSubscriptions) {
+            int wanted = events & subscription.mask;
+            if (wanted != 0) subscription.listener.onPlaybackEvents(wanted);
+        }
+    }
+}
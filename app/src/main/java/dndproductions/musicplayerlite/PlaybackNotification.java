@@ -0,0 +1,81 @@
+package dndproductions.musicplayerlite;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v7.app.NotificationCompat;
+import android.view.KeyEvent;
+
+/**
+ * Builds the notification {@link MusicService} runs in the foreground with: the current song,
+ * with previous, play/pause and next buttons, shown on the lock screen too. The buttons send
+ * media button events to the service, which hands them to its media session - so they're handled
+ * like a headset's, without the Activity being involved.
+ */
+final class PlaybackNotification {
+
+    // Id of the notification.
+    static final int ID = 1;
+
+    private PlaybackNotification() {
+    }
+
+    /**
+     * Builds the notification.
+     *
+     * @param context is the service.
+     * @param session is the service's media session.
+     * @param title is the title of the current song.
+     * @param artist is the artist of the current song.
+     * @param playing is whether the song is playing, rather than paused.
+     */
+    static Notification build(Context context, MediaSessionCompat session, String title,
+                              String artist, boolean playing) {
+
+        // Brings the app's task back to the front, rather than starting another Activity.
+        Intent launch = new Intent(Intent.ACTION_MAIN)
+                .addCategory(Intent.CATEGORY_LAUNCHER)
+                .setClass(context, MainActivity.class);
+        PendingIntent contentIntent = PendingIntent.getActivity(context, 0, launch, 0);
+        PendingIntent stopIntent = mediaButton(context, KeyEvent.KEYCODE_MEDIA_STOP);
+
+        NotificationCompat.MediaStyle style = new NotificationCompat.MediaStyle()
+                .setMediaSession(session.getSessionToken())
+                .setShowActionsInCompactView(0, 1, 2)
+                .setShowCancelButton(true)
+                .setCancelButtonIntent(stopIntent);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context);
+        builder.setSmallIcon(playing ? android.R.drawable.ic_media_play
+                        : android.R.drawable.ic_media_pause)
+                .setContentTitle(title)
+                .setContentText(artist)
+                .setContentIntent(contentIntent)
+                .setDeleteIntent(stopIntent)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setShowWhen(false)
+                .addAction(android.R.drawable.ic_media_previous,
+                        context.getString(R.string.action_previous),
+                        mediaButton(context, KeyEvent.KEYCODE_MEDIA_PREVIOUS))
+                .addAction(playing ? android.R.drawable.ic_media_pause
+                                : android.R.drawable.ic_media_play,
+                        context.getString(playing ? R.string.action_pause : R.string.action_play),
+                        mediaButton(context, playing ? KeyEvent.KEYCODE_MEDIA_PAUSE
+                                : KeyEvent.KEYCODE_MEDIA_PLAY))
+                .addAction(android.R.drawable.ic_media_next,
+                        context.getString(R.string.action_next),
+                        mediaButton(context, KeyEvent.KEYCODE_MEDIA_NEXT))
+                .setStyle(style);
+        return builder.build();
+    }
+
+    // Helper method that builds an intent delivering a media button press to the service.
+    private static PendingIntent mediaButton(Context context, int keyCode) {
+        Intent intent = new Intent(Intent.ACTION_MEDIA_BUTTON)
+                .setClass(context, MusicService.class)
+                .putExtra(Intent.EXTRA_KEY_EVENT, new KeyEvent(KeyEvent.ACTION_DOWN, keyCode));
+        return PendingIntent.getService(context, keyCode, intent, 0);
+    }
+}
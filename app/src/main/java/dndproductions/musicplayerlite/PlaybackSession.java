@@ -0,0 +1,256 @@
+package dndproductions.musicplayerlite;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Snapshot of a playback session - the queue, the shuffle order, the current song and the
+ * position within it - so that it can be picked up again after the service is restarted.
+ *
+ * The snapshot is saved to a small binary file. Song ids are written as variable-length deltas
+ * from the previous id, and shuffle slots as variable-length ints, which keeps a large library's
+ * queue to a few bytes per song.
+ */
+public final class PlaybackSession {
+
+    // Name of the session file, in the app's files directory.
+    static final String FILE_NAME = "session.bin";
+
+    // Header of the file, bumped whenever the layout changes.
+    private static final int MAGIC = 0x4d504c53; // "MPLS"
+    private static final int FORMAT_VERSION = 1;
+
+    private final long[] mSongIds;
+    private final int mIndex;
+    private final int mPositionMs;
+    private final boolean mShuffle;
+    private final int[] mShuffleOrder;
+    private final int mShuffleGenerated;
+    private final int mShuffleCursor;
+
+    /**
+     * Creates a {@link PlaybackSession} object.
+     *
+     * @param songIds is the MediaStore ids of the queue, in order.
+     * @param index is the index of the current song in the queue.
+     * @param positionMs is the position within the current song.
+     * @param shuffle is whether shuffle is on.
+     * @param shuffleOrder is the {@link ShuffleQueue}'s order, or an empty array if shuffle is off.
+     * @param shuffleGenerated is the {@link ShuffleQueue}'s number of fixed slots.
+     * @param shuffleCursor is the {@link ShuffleQueue}'s slot of the current song.
+     */
+    public PlaybackSession(long[] songIds, int index, int positionMs, boolean shuffle,
+                           int[] shuffleOrder, int shuffleGenerated, int shuffleCursor) {
+        mSongIds = songIds;
+        mIndex = index;
+        mPositionMs = positionMs;
+        mShuffle = shuffle;
+        mShuffleOrder = shuffleOrder;
+        mShuffleGenerated = shuffleGenerated;
+        mShuffleCursor = shuffleCursor;
+    }
+
+    // Getter methods.
+    public long[] getSongIds() {
+        return mSongIds;
+    }
+
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public int getPositionMs() {
+        return mPositionMs;
+    }
+
+    public boolean isShuffle() {
+        return mShuffle;
+    }
+
+    public int[] getShuffleOrder() {
+        return mShuffleOrder;
+    }
+
+    public int getShuffleGenerated() {
+        return mShuffleGenerated;
+    }
+
+    public int getShuffleCursor() {
+        return mShuffleCursor;
+    }
+
+    /**
+     * Returns the MediaStore id of the current song, or -1 if the queue is empty.
+     */
+    public long getSongId() {
+        return mIndex >= 0 && mIndex < mSongIds.length ? mSongIds[mIndex] : -1;
+    }
+
+    /**
+     * Returns whether a list holds the same songs as the queue, in the same order, so that the
+     * queue's positions (and so its shuffle order) mean the same songs in it.
+     *
+     * @param songList is the list.
+     */
+    public boolean matches(SongList songList) {
+        if (songList.size() != mSongIds.length) return false;
+
+        SongStore store = songList.getStore();
+        for (int i = 0; i < mSongIds.length; i++) {
+            if (store.getId(songList.getRow(i)) != mSongIds[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a session file.
+     *
+     * @param file is the session file.
+     * @return the session, or null if there's none.
+     * @throws IOException if the file can't be read or isn't a valid session.
+     */
+    public static PlaybackSession read(File file) throws IOException {
+        if (!file.exists()) return null;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unrecognised session format");
+            }
+
+            int count = readCount(in);
+            long[] songIds = new long[count];
+            long id = 0;
+            for (int i = 0; i < count; i++) {
+                id += zigZagDecode(readVarLong(in));
+                songIds[i] = id;
+            }
+
+            int index = (int) readVarLong(in);
+            int positionMs = (int) readVarLong(in);
+            boolean shuffle = in.readBoolean();
+
+            int[] order = new int[readCount(in)];
+            for (int i = 0; i < order.length; i++) order[i] = (int) readVarLong(in);
+            int generated = (int) readVarLong(in);
+            int cursor = (int) zigZagDecode(readVarLong(in));
+
+            if (index >= count || (shuffle && order.length != count)) {
+                throw new IOException("Inconsistent session");
+            }
+            return new PlaybackSession(songIds, index, positionMs, shuffle, order, generated,
+                    cursor);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the session to a file. The data is written to a temporary file first and then
+     * renamed over the old one, so a crash midway never leaves a half-written session behind.
+     *
+     * @param file is the session file.
+     * @throws IOException if the file can't be written.
+     */
+    public void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+
+            writeVarLong(out, mSongIds.length);
+            long previous = 0;
+            for (long id : mSongIds) {
+                writeVarLong(out, zigZagEncode(id - previous));
+                previous = id;
+            }
+
+            writeVarLong(out, mIndex);
+            writeVarLong(out, mPositionMs);
+            out.writeBoolean(mShuffle);
+
+            writeVarLong(out, mShuffleOrder.length);
+            for (int position : mShuffleOrder) writeVarLong(out, position);
+            writeVarLong(out, mShuffleGenerated);
+            writeVarLong(out, zigZagEncode(mShuffleCursor));
+
+            out.close();
+            out = null;
+        } finally {
+            if (out != null) {
+                out.close();
+                temp.delete();
+            }
+        }
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can't rename " + temp);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PlaybackSession)) return false;
+
+        PlaybackSession other = (PlaybackSession) o;
+        return mIndex == other.mIndex && mPositionMs == other.mPositionMs
+                && mShuffle == other.mShuffle && mShuffleGenerated == other.mShuffleGenerated
+                && mShuffleCursor == other.mShuffleCursor
+                && Arrays.equals(mSongIds, other.mSongIds)
+                && Arrays.equals(mShuffleOrder, other.mShuffleOrder);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mSongIds) + mIndex;
+    }
+
+    // Helper methods for variable-length numbers: 7 bits per byte, the high bit flagging that
+    // more bytes follow. Signed values are zig-zag encoded first so that small negative ones
+    // stay short too.
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed number");
+    }
+
+    // Helper method that reads an array length, rejecting values no valid file could hold.
+    private static int readCount(DataInputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > Integer.MAX_VALUE / 8) throw new EOFException("Bad length");
+        return (int) count;
+    }
+
+    private static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,49 @@
+package dndproductions.musicplayerlite;
+
+/**
+ * States of playback, as tracked by {@link PlaybackStateMachine}.
+ */
+public enum PlaybackState {
+
+    // Nothing loaded (e.g. before the first song, or after the players were released).
+    IDLE,
+
+    // A song is being opened and prepared; it starts playing once ready, or is left paused
+    // (e.g. when a saved session is restored).
+    PREPARING,
+
+    PLAYING,
+    PAUSED,
+
+    // The current song failed to open or play.
+    ERROR;
+
+    /**
+     * Returns whether playback may move from this state to another one.
+     *
+     * @param next is the other state.
+     */
+    public boolean canMoveTo(PlaybackState next) {
+        switch (this) {
+            case IDLE:
+                return next == PREPARING;
+            case PREPARING:
+                return next == PLAYING || next == PAUSED || next == ERROR || next == IDLE;
+            case PLAYING:
+                return next == PAUSED || next == PREPARING || next == ERROR || next == IDLE;
+            case PAUSED:
+                return next == PLAYING || next == PREPARING || next == ERROR || next == IDLE;
+            case ERROR:
+                return next == PREPARING || next == IDLE;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns whether a song is loaded, so that its position and duration are meaningful.
+     */
+    public boolean hasTrack() {
+        return this == PLAYING || this == PAUSED;
+    }
+}
@@ -0,0 +1,68 @@
+package dndproductions.musicplayerlite;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the current {@link PlaybackState}, only letting it change along the transitions the
+ * states allow, and reports every change to its listeners.
+ *
+ * The state is changed from the playback thread only, but can be read from any thread.
+ */
+public class PlaybackStateMachine {
+
+    /**
+     * Receives state changes, on the thread that made them.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked after the state changed.
+         *
+         * @param previous is the state before the change.
+         * @param state is the new state.
+         */
+        void onStateChanged(PlaybackState previous, PlaybackState state);
+    }
+
+    private volatile PlaybackState mState = PlaybackState.IDLE;
+
+    // Copied on write, so that listeners can be added from any thread while a change is being
+    // reported.
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returns the current state.
+     */
+    public PlaybackState getState() {
+        return mState;
+    }
+
+    /**
+     * Moves to a new state, should the transition be allowed. Moving to the current state is a
+     * no-op.
+     *
+     * @param state is the new state.
+     * @return whether the state is now the new one.
+     */
+    public boolean moveTo(PlaybackState state) {
+        PlaybackState previous = mState;
+        if (previous == state) return true;
+        if (!previous.canMoveTo(state)) return false;
+
+        mState = state;
+        for (Listener listener : mListeners) {
+            listener.onStateChanged(previous, state);
+        }
+        return true;
+    }
+
+    // Methods for registering and unregistering listeners.
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
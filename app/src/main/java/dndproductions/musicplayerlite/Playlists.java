@@ -0,0 +1,209 @@
+package dndproductions.musicplayerlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_DATE_ADDED;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_ID;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_NAME;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_PLAYLIST_ID;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_POSITION;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_SONG_ID;
+import static dndproductions.musicplayerlite.MusicDatabase.TABLE_PLAYLISTS;
+import static dndproductions.musicplayerlite.MusicDatabase.TABLE_PLAYLIST_SONGS;
+
+/**
+ * The user's playlists, kept in the {@link MusicDatabase}. A playlist's songs keep the contiguous
+ * positions [0, size), and are read in windows of positions rather than all at once.
+ *
+ * Every edit is a single transaction, so that adding thousands of songs is one write to disk
+ * rather than thousands. The database should be used off the main thread.
+ */
+public class Playlists {
+
+    private final SQLiteDatabase mDb;
+
+    /**
+     * Creates a {@link Playlists} object.
+     *
+     * @param database is the database the playlists are kept in.
+     */
+    public Playlists(MusicDatabase database) {
+        mDb = database.getWritableDatabase();
+    }
+
+    /**
+     * Returns the playlists, by name, with the columns _id and name.
+     */
+    public Cursor query() {
+        return mDb.query(TABLE_PLAYLISTS, new String[] {COLUMN_ID, COLUMN_NAME}, null, null,
+                null, null, COLUMN_NAME);
+    }
+
+    /**
+     * Creates an empty playlist.
+     *
+     * @param name is the name of the playlist.
+     * @return the id of the playlist, or -1 if there's one by that name already.
+     */
+    public long create(String name) {
+        ContentValues values = new ContentValues(2);
+        values.put(COLUMN_NAME, name);
+        values.put(COLUMN_DATE_ADDED, System.currentTimeMillis());
+        return mDb.insert(TABLE_PLAYLISTS, null, values);
+    }
+
+    /**
+     * Renames a playlist.
+     *
+     * @param playlistId is the id of the playlist.
+     * @param name is the new name.
+     * @return whether the playlist was renamed, rather than the name being taken.
+     */
+    public boolean rename(long playlistId, String name) {
+        ContentValues values = new ContentValues(1);
+        values.put(COLUMN_NAME, name);
+        return mDb.updateWithOnConflict(TABLE_PLAYLISTS, values, COLUMN_ID + " = ?",
+                new String[] {Long.toString(playlistId)}, SQLiteDatabase.CONFLICT_IGNORE) > 0;
+    }
+
+    /**
+     * Deletes a playlist, along with its songs.
+     *
+     * @param playlistId is the id of the playlist.
+     */
+    public void delete(long playlistId) {
+        mDb.delete(TABLE_PLAYLISTS, COLUMN_ID + " = ?", new String[] {Long.toString(playlistId)});
+    }
+
+    /**
+     * Returns the number of songs in a playlist.
+     *
+     * @param playlistId is the id of the playlist.
+     */
+    public int size(long playlistId) {
+        return (int) DatabaseUtils.queryNumEntries(mDb, TABLE_PLAYLIST_SONGS,
+                COLUMN_PLAYLIST_ID + " = ?", new String[] {Long.toString(playlistId)});
+    }
+
+    /**
+     * Reads a window of a playlist's songs, as a range of the primary key.
+     *
+     * @param playlistId is the id of the playlist.
+     * @param start is the index of the first song of the window.
+     * @param songIds is filled with the MediaStore ids of the songs.
+     * @return the number of songs read, which is less than the array's length at the end of the
+     * playlist.
+     */
+    public int read(long playlistId, int start, long[] songIds) {
+        Cursor cursor = mDb.rawQuery("SELECT " + COLUMN_SONG_ID + " FROM " + TABLE_PLAYLIST_SONGS
+                + " WHERE " + COLUMN_PLAYLIST_ID + " = ? AND " + COLUMN_POSITION + " >= ?"
+                + " ORDER BY " + COLUMN_POSITION + " LIMIT " + songIds.length,
+                new String[] {Long.toString(playlistId), Integer.toString(start)});
+        try {
+            int count = 0;
+            while (cursor.moveToNext()) songIds[count++] = cursor.getLong(0);
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Adds songs to the end of a playlist, with a single prepared statement in one transaction.
+     *
+     * @param playlistId is the id of the playlist.
+     * @param songIds is the MediaStore ids of the songs.
+     */
+    public void addAll(long playlistId, long[] songIds) {
+        if (songIds.length == 0) return;
+
+        mDb.beginTransaction();
+        try {
+            long position = size(playlistId);
+            SQLiteStatement insert = mDb.compileStatement("INSERT INTO " + TABLE_PLAYLIST_SONGS
+                    + " (" + COLUMN_PLAYLIST_ID + ", " + COLUMN_POSITION + ", " + COLUMN_SONG_ID
+                    + ") VALUES (?, ?, ?)");
+            try {
+                insert.bindLong(1, playlistId);
+                for (long songId : songIds) {
+                    insert.bindLong(2, position++);
+                    insert.bindLong(3, songId);
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Moves a song within a playlist.
+     *
+     * @param playlistId is the id of the playlist.
+     * @param from is the index of the song.
+     * @param to is the index it moves to.
+     */
+    public void move(long playlistId, int from, int to) {
+        if (from == to) return;
+        int size = size(playlistId);
+        if (from < 0 || from >= size || to < 0 || to >= size) {
+            throw new IndexOutOfBoundsException("from " + from + ", to " + to);
+        }
+
+        String scope = COLUMN_PLAYLIST_ID + " = " + playlistId;
+        mDb.beginTransaction();
+        try {
+            // The song is parked aside (below where the shift parks positions), and the songs in
+            // between close up behind it.
+            SQLiteStatement park = mDb.compileStatement("UPDATE " + TABLE_PLAYLIST_SONGS
+                    + " SET " + COLUMN_POSITION + " = ? WHERE " + COLUMN_POSITION + " = ? AND "
+                    + scope);
+            park.bindLong(1, Long.MIN_VALUE);
+            park.bindLong(2, from);
+            park.executeUpdateDelete();
+
+            if (from < to) {
+                MusicDatabase.shiftPositions(mDb, TABLE_PLAYLIST_SONGS, scope, from + 1, to, -1);
+            } else {
+                MusicDatabase.shiftPositions(mDb, TABLE_PLAYLIST_SONGS, scope, to, from - 1, 1);
+            }
+
+            park.bindLong(1, to);
+            park.bindLong(2, Long.MIN_VALUE);
+            park.executeUpdateDelete();
+            park.close();
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Removes a song from a playlist.
+     *
+     * @param playlistId is the id of the playlist.
+     * @param index is the index of the song.
+     */
+    public void remove(long playlistId, int index) {
+        int size = size(playlistId);
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index);
+
+        mDb.beginTransaction();
+        try {
+            mDb.delete(TABLE_PLAYLIST_SONGS, COLUMN_PLAYLIST_ID + " = ? AND " + COLUMN_POSITION
+                    + " = ?", new String[] {Long.toString(playlistId), Integer.toString(index)});
+            MusicDatabase.shiftPositions(mDb, TABLE_PLAYLIST_SONGS,
+                    COLUMN_PLAYLIST_ID + " = " + playlistId, index + 1, size - 1, -1);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+}
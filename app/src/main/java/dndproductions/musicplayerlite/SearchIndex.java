@@ -0,0 +1,321 @@
+package dndproductions.musicplayerlite;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Word-prefix search over the titles and artists of a {@link SongStore}, built once when the
+ * library is loaded.
+ *
+ * Titles and artists are folded (accents stripped, lower-cased, punctuation treated as spaces) and
+ * split into words. The distinct words are kept sorted, which makes the index a flattened prefix
+ * trie: the words starting with a given prefix are one contiguous range of word ids, found with a
+ * binary search. Each row lists the ids of its words, so checking whether a row matches a query
+ * term is a scan of a handful of ints for one within the term's range, without touching any
+ * string. Most rows don't even get that far: a 64-bit mask of the initials of each row's words
+ * rules them out with a single read.
+ *
+ * A {@link Filter} answers each keystroke from the result of the previous one whenever the query
+ * only got more specific, which is the usual case while typing.
+ */
+public final class SearchIndex {
+
+    private final SongStore mStore;
+
+    // Sorted distinct words, packed like the store's titles: word i spans
+    // mWordChars[mWordOffsets[i]] up to mWordChars[mWordOffsets[i + 1]].
+    private final char[] mWordChars;
+    private final int[] mWordOffsets;
+    private final int mWordCount;
+
+    // Word ids of row i are mRowWords[mRowWordOffsets[i]] up to mRowWords[mRowWordOffsets[i + 1]].
+    private final int[] mRowWordOffsets;
+    private final int[] mRowWords;
+
+    // Bit initialBit(c) of row i is set if a word of the row starts with c.
+    private final long[] mRowInitials;
+
+    private SearchIndex(SongStore store, char[] wordChars, int[] wordOffsets, int wordCount,
+                        int[] rowWordOffsets, int[] rowWords, long[] rowInitials) {
+        mStore = store;
+        mWordChars = wordChars;
+        mWordOffsets = wordOffsets;
+        mWordCount = wordCount;
+        mRowWordOffsets = rowWordOffsets;
+        mRowWords = rowWords;
+        mRowInitials = rowInitials;
+    }
+
+    /**
+     * Builds the index of a store.
+     *
+     * @param store is the store of songs.
+     */
+    public static SearchIndex build(SongStore store) {
+        int size = store.size();
+        Map<String, Integer> lookup = new HashMap<>();
+        List<String> words = new ArrayList<>();
+        List<String> scratch = new ArrayList<>();
+
+        // Artists are shared by many rows, so each one is only folded once.
+        int[][] artistWords = new int[store.getArtistCount()][];
+
+        int[] rowWordOffsets = new int[size + 1];
+        int[] rowWords = new int[Math.max(16, size * 4)];
+        long[] rowInitials = new long[size];
+        int count = 0;
+
+        for (int row = 0; row < size; row++) {
+            scratch.clear();
+            foldWords(store.getTitle(row), scratch);
+
+            int artistId = store.getArtistId(row);
+            if (artistWords[artistId] == null) {
+                List<String> artist = new ArrayList<>();
+                foldWords(store.getArtistName(artistId), artist);
+                artistWords[artistId] = wordIds(artist, lookup, words);
+            }
+            int[] artist = artistWords[artistId];
+
+            if (count + scratch.size() + artist.length > rowWords.length) {
+                rowWords = Arrays.copyOf(rowWords,
+                        Math.max(rowWords.length * 2, count + scratch.size() + artist.length));
+            }
+            for (int id : wordIds(scratch, lookup, words)) rowWords[count++] = id;
+            for (int id : artist) rowWords[count++] = id;
+            rowWordOffsets[row + 1] = count;
+
+            for (int i = rowWordOffsets[row]; i < count; i++) {
+                rowInitials[row] |= initialBit(words.get(rowWords[i]).charAt(0));
+            }
+        }
+
+        // Sorts the words, and renumbers them by their sorted position. String order is char
+        // order, which is what the lookups compare by.
+        String[] sorted = words.toArray(new String[words.size()]);
+        Arrays.sort(sorted);
+
+        int[] rank = new int[sorted.length];
+        int[] wordOffsets = new int[sorted.length + 1];
+        int length = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            rank[lookup.get(sorted[i])] = i;
+            length += sorted[i].length();
+            wordOffsets[i + 1] = length;
+        }
+
+        char[] wordChars = new char[length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i].getChars(0, sorted[i].length(), wordChars, wordOffsets[i]);
+        }
+
+        for (int i = 0; i < count; i++) rowWords[i] = rank[rowWords[i]];
+
+        return new SearchIndex(store, wordChars, wordOffsets, sorted.length, rowWordOffsets,
+                Arrays.copyOf(rowWords, count), rowInitials);
+    }
+
+    /**
+     * Returns the store the index was built over.
+     */
+    public SongStore getStore() {
+        return mStore;
+    }
+
+    /**
+     * Creates a filter over a list of this index's songs.
+     *
+     * @param base is the list to filter, in display order.
+     * @throws IllegalArgumentException if the list belongs to another store.
+     */
+    public Filter newFilter(SongList base) {
+        if (base.getStore() != mStore) {
+            throw new IllegalArgumentException("List of another store");
+        }
+        return new Filter(base);
+    }
+
+    /**
+     * Narrows a list of songs down to those matching a query. Every word of the query has to be
+     * the start of a word of the song's title or artist, regardless of case and accents. The
+     * results keep the order of the list.
+     */
+    public final class Filter {
+        private final SongList mBase;
+
+        // Terms of the last query, and its result.
+        private String[] mTerms = new String[0];
+        private SongList mResult;
+
+        private Filter(SongList base) {
+            mBase = base;
+            mResult = base;
+        }
+
+        /**
+         * Applies a query.
+         *
+         * @param query is the text typed by the user.
+         * @return a view of the matching songs; the whole list if the query is blank.
+         */
+        public SongList setQuery(String query) {
+            List<String> termList = new ArrayList<>();
+            foldWords(query == null ? "" : query, termList);
+            String[] terms = termList.toArray(new String[termList.size()]);
+
+            if (Arrays.equals(terms, mTerms)) return mResult;
+
+            // A query that only got more specific can only match fewer songs, so the previous
+            // result is filtered instead of the whole list.
+            SongList candidates = refines(terms, mTerms) ? mResult : mBase;
+            mTerms = terms;
+
+            if (terms.length == 0) {
+                mResult = mBase;
+                return mResult;
+            }
+
+            // Finds the range of word ids each term is a prefix of, and the initials the row
+            // must have.
+            int[] from = new int[terms.length];
+            int[] to = new int[terms.length];
+            long initials = 0;
+            for (int t = 0; t < terms.length; t++) {
+                initials |= initialBit(terms[t].charAt(0));
+                from[t] = lowerBound(terms[t], false);
+                to[t] = lowerBound(terms[t], true);
+
+                if (from[t] == to[t]) {
+                    mResult = new IndexedSongList(mStore, new int[0], 0);
+                    return mResult;
+                }
+            }
+
+            int[] rows = new int[candidates.size()];
+            int count = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                int row = candidates.getRow(i);
+                if ((mRowInitials[row] & initials) == initials && matches(row, from, to)) {
+                    rows[count++] = row;
+                }
+            }
+
+            mResult = new IndexedSongList(mStore, rows, count);
+            return mResult;
+        }
+    }
+
+    // Helper method that checks whether every term has a word of the row in its id range.
+    private boolean matches(int row, int[] from, int[] to) {
+        int start = mRowWordOffsets[row];
+        int end = mRowWordOffsets[row + 1];
+
+        for (int t = 0; t < from.length; t++) {
+            boolean found = false;
+            for (int i = start; i < end && !found; i++) {
+                int word = mRowWords[i];
+                found = word >= from[t] && word < to[t];
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    // Helper method that returns the first word id not ordered before the prefix - or, with
+    // pastPrefix, the first one after every word starting with it.
+    private int lowerBound(String prefix, boolean pastPrefix) {
+        int low = 0;
+        int high = mWordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = comparePrefix(middle, prefix);
+            if (comparison < 0 || (pastPrefix && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Helper method that compares a word with a prefix, a word starting with it counting as
+    // equal.
+    private int comparePrefix(int word, String prefix) {
+        int start = mWordOffsets[word];
+        int length = mWordOffsets[word + 1] - start;
+        int common = Math.min(length, prefix.length());
+
+        for (int i = 0; i < common; i++) {
+            char c = mWordChars[start + i];
+            char p = prefix.charAt(i);
+            if (c != p) return c - p;
+        }
+        return length >= prefix.length() ? 0 : -1;
+    }
+
+    // Helper method that maps a word's first character to a bit of the initials masks. Letters
+    // and digits outside of ASCII share bits, so a set bit only means the row may match.
+    private static long initialBit(char c) {
+        return 1L << (c % 64);
+    }
+
+    // Helper method that checks whether a query only narrows down the previous one: it has at
+    // least as many terms, and each previous term is a prefix of the respective new one.
+    private static boolean refines(String[] terms, String[] previous) {
+        if (previous.length == 0 || terms.length < previous.length) return false;
+
+        for (int i = 0; i < previous.length; i++) {
+            if (!terms[i].startsWith(previous[i])) return false;
+        }
+        return true;
+    }
+
+    // Helper method that maps words to ids, assigning new ids in order of first appearance.
+    private static int[] wordIds(List<String> text, Map<String, Integer> lookup,
+                                 List<String> words) {
+        int[] ids = new int[text.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Integer id = lookup.get(text.get(i));
+            if (id == null) {
+                id = words.size();
+                lookup.put(text.get(i), id);
+                words.add(text.get(i));
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Folds a text and splits it into words: accents are stripped, letters lower-cased, and
+     * anything but letters and digits separates words.
+     *
+     * @param text is the text.
+     * @param words is the list the words are added to.
+     */
+    static void foldWords(String text, List<String> words) {
+
+        // Only text with non-ASCII characters can carry accents worth decomposing.
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) ascii = text.charAt(i) < 0x80;
+        String decomposed = ascii ? text : Normalizer.normalize(text, Normalizer.Form.NFD);
+
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) words.add(word.toString());
+    }
+}
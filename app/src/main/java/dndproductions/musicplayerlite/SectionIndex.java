@@ -0,0 +1,154 @@
+package dndproductions.musicplayerlite;
+
+import android.widget.SectionIndexer;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Jump table of a sorted {@link SongList}: the list is split into sections of songs sharing an
+ * initial (of the title, artist or album, whichever it's sorted by; "#" for anything but a
+ * letter) or, when sorted by date added, a year. It's built in a single pass over the list, and
+ * kept as the sections' labels plus an {@code int[]} of the position each section starts at, so
+ * jumping to a section is an array read and the list can be scrolled straight there without
+ * binding anything in between.
+ */
+public final class SectionIndex implements SectionIndexer {
+
+    private final SongStore mStore;
+    private final int mSize;
+    private final String[] mLabels;
+    private final int[] mStarts;
+
+    private SectionIndex(SongStore store, int size, String[] labels, int[] starts) {
+        mStore = store;
+        mSize = size;
+        mLabels = labels;
+        mStarts = starts;
+    }
+
+    /**
+     * Builds the sections of a list.
+     *
+     * @param songList is the list, sorted in the given order.
+     * @param order is the order of the list.
+     */
+    public static SectionIndex build(SongList songList, SortOrder order) {
+        SongStore store = songList.getStore();
+        Calendar calendar = order == SortOrder.DATE_ADDED ? Calendar.getInstance() : null;
+
+        String[] labels = new String[32];
+        int[] starts = new int[32];
+        int count = 0;
+        int previous = -1;
+
+        for (int i = 0; i < songList.size(); i++) {
+            int key = key(store, songList.getRow(i), order, calendar);
+            if (key == previous) continue;
+
+            if (count == labels.length) {
+                labels = Arrays.copyOf(labels, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            labels[count] = order == SortOrder.DATE_ADDED ? String.valueOf(key)
+                    : String.valueOf((char) key);
+            starts[count] = i;
+            count++;
+            previous = key;
+        }
+
+        return new SectionIndex(store, songList.size(), Arrays.copyOf(labels, count),
+                Arrays.copyOf(starts, count));
+    }
+
+    /**
+     * Builds the sections of every precomputed order of a library.
+     *
+     * @param library is the library, which must be sorted.
+     * @return the sections of each order, indexed by {@link SortOrder#ordinal()}.
+     */
+    public static SectionIndex[] buildAll(LibraryIndex library) {
+        SectionIndex[] sections = new SectionIndex[SortOrder.values().length];
+        for (SortOrder order : SortOrder.values()) {
+            sections[order.ordinal()] = build(library.getSongList(order), order);
+        }
+        return sections;
+    }
+
+    /**
+     * Returns whether these sections were built over a list of the given store and size - for a
+     * library's full list in a given order, that means they're the sections of that very list.
+     *
+     * @param songList is the list.
+     */
+    public boolean covers(SongList songList) {
+        return songList.getStore() == mStore && songList.size() == mSize;
+    }
+
+    /**
+     * Returns the number of sections.
+     */
+    public int size() {
+        return mLabels.length;
+    }
+
+    /**
+     * Returns the label of a section (e.g. "A", or a year).
+     *
+     * @param section is the section.
+     */
+    public String getLabel(int section) {
+        return mLabels[section];
+    }
+
+    // SectionIndexer interface methods.
+    @Override
+    public Object[] getSections() {
+        return mLabels;
+    }
+
+    @Override
+    public int getPositionForSection(int section) {
+        if (mLabels.length == 0) return 0;
+
+        return mStarts[Math.max(0, Math.min(section, mStarts.length - 1))];
+    }
+
+    /**
+     * Returns the section a position falls in, by a binary search over the (few) section starts.
+     */
+    @Override
+    public int getSectionForPosition(int position) {
+        int index = Arrays.binarySearch(mStarts, position);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    // Helper method that returns the key songs are grouped by: the folded initial, or the year.
+    private static int key(SongStore store, int row, SortOrder order, Calendar calendar) {
+        switch (order) {
+            case ARTIST:
+                return initial(store.getArtist(row));
+            case ALBUM:
+                return initial(store.getAlbum(row));
+            case DATE_ADDED:
+                calendar.setTimeInMillis(store.getDateAdded(row) * 1000);
+                return calendar.get(Calendar.YEAR);
+            default:
+                return store.getTitleLength(row) == 0 ? '#'
+                        : initial(store.getTitleChars()[store.getTitleOffset(row)]);
+        }
+    }
+
+    private static char initial(String name) {
+        return name.isEmpty() ? '#' : initial(name.charAt(0));
+    }
+
+    // Helper method that folds an initial to an upper-case letter without accents, or '#'.
+    private static char initial(char c) {
+        if (c >= 0x80) {
+            c = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+        }
+        return Character.isLetter(c) ? Character.toUpperCase(c) : '#';
+    }
+}
@@ -0,0 +1,186 @@
+package dndproductions.musicplayerlite;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Non-repeating shuffle order over the positions of a song list. The order is a Fisher-Yates
+ * permutation stored in an {@code int[]}, generated lazily one slot at a time as playback reaches
+ * it, so every song plays once before any repeats and each step costs O(1). The slots already
+ * played double as the history that {@link #previous()} walks back through.
+ *
+ * Once every song has played, a new cycle is shuffled (never starting with the song that just
+ * ended).
+ */
+public class ShuffleQueue {
+
+    private final Random mRandom;
+
+    // Permutation of the positions; slots [0, mGenerated) are fixed, and the rest is the pool
+    // of positions not reached yet.
+    private int[] mOrder = new int[0];
+    private int mSize;
+    private int mGenerated;
+
+    // Slot of the current song, or -1 before the first one.
+    private int mCursor = -1;
+
+    // Slot of the song the next cycle starts with, once picked (or -1), so that peeking at it
+    // doesn't start the cycle.
+    private int mNextCycleSlot = -1;
+
+    /**
+     * Creates a {@link ShuffleQueue} object.
+     *
+     * @param seed is the seed of the shuffle, so that an order can be reproduced.
+     */
+    public ShuffleQueue(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Starts a new shuffle over a list.
+     *
+     * @param size is the number of songs in the list.
+     * @param first is the position to start at (e.g. the song the user picked), or -1 to start
+     *              with a random one.
+     */
+    public void reset(int size, int first) {
+        if (mOrder.length < size) mOrder = new int[size];
+        for (int i = 0; i < size; i++) mOrder[i] = i;
+
+        mSize = size;
+        mGenerated = 0;
+        mCursor = -1;
+        mNextCycleSlot = -1;
+
+        if (first >= 0 && first < size) {
+            swap(0, first);
+            mGenerated = 1;
+            mCursor = 0;
+        }
+    }
+
+    /**
+     * Adds songs appended to the end of the list to the pool of songs still to come, without
+     * disturbing the order so far.
+     *
+     * @param size is the new number of songs in the list.
+     */
+    public void grow(int size) {
+        if (size <= mSize) return;
+
+        if (mOrder.length < size) {
+            mOrder = Arrays.copyOf(mOrder, Math.max(size, mOrder.length * 2));
+        }
+        for (int i = mSize; i < size; i++) mOrder[i] = i;
+        mSize = size;
+        mNextCycleSlot = -1;
+    }
+
+    /**
+     * Returns the position of the current song, or -1 if there is none.
+     */
+    public int current() {
+        return mCursor < 0 ? -1 : mOrder[mCursor];
+    }
+
+    /**
+     * Returns the position of the song that {@link #next()} will move to, without moving - the
+     * current song and the history stay as they are, even at the end of a cycle.
+     */
+    public int peekNext() {
+        if (mSize == 0) return -1;
+
+        // Once every song has been played, the next cycle's first song is picked ahead.
+        if (mCursor + 1 >= mSize) return mOrder[pickNextCycleSlot()];
+
+        if (mCursor + 1 == mGenerated) generate();
+        return mOrder[mCursor + 1];
+    }
+
+    /**
+     * Moves on to the next song.
+     *
+     * @return its position, or -1 if the list is empty.
+     */
+    public int next() {
+        if (mSize == 0) return -1;
+
+        // Starts a new cycle once every song has been played.
+        if (mCursor + 1 >= mSize) newCycle();
+
+        int next = peekNext();
+        mCursor++;
+        return next;
+    }
+
+    /**
+     * Moves back to the song played before the current one in this shuffle.
+     *
+     * @return its position, or -1 if there is no earlier song.
+     */
+    public int previous() {
+        if (mCursor <= 0) return -1;
+
+        return mOrder[--mCursor];
+    }
+
+    // Getter methods for the state, for saving it.
+    public int[] getOrder() {
+        return Arrays.copyOf(mOrder, mSize);
+    }
+
+    public int getGenerated() {
+        return mGenerated;
+    }
+
+    public int getCursor() {
+        return mCursor;
+    }
+
+    /**
+     * Restores a state previously read with the getter methods.
+     *
+     * @param order is the permutation of positions.
+     * @param generated is the number of fixed slots.
+     * @param cursor is the slot of the current song.
+     */
+    public void restore(int[] order, int generated, int cursor) {
+        mOrder = Arrays.copyOf(order, order.length);
+        mSize = order.length;
+        mGenerated = Math.min(generated, mSize);
+        mCursor = Math.min(cursor, mGenerated - 1);
+        mNextCycleSlot = -1;
+    }
+
+    // Helper method that fixes the next slot with a random pick from the pool.
+    private void generate() {
+        int slot = mGenerated;
+        swap(slot, slot + mRandom.nextInt(mSize - slot));
+        mGenerated++;
+    }
+
+    // Helper method that picks the slot of the next cycle's first song, once per cycle. The song
+    // that just played sits in the last slot, so it's kept out of the pick.
+    private int pickNextCycleSlot() {
+        if (mNextCycleSlot < 0) mNextCycleSlot = mSize > 1 ? mRandom.nextInt(mSize - 1) : 0;
+        return mNextCycleSlot;
+    }
+
+    // Helper method that starts a new cycle from the previous, fully played one, with the first
+    // song picked for it.
+    private void newCycle() {
+        swap(0, pickNextCycleSlot());
+        mNextCycleSlot = -1;
+
+        mGenerated = 1;
+        mCursor = -1;
+    }
+
+    private void swap(int i, int j) {
+        int value = mOrder[i];
+        mOrder[i] = mOrder[j];
+        mOrder[j] = value;
+    }
+}
@@ -1,26 +1,77 @@
 package dndproductions.musicplayerlite;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Class used to model the data for a single audio file.
+ *
+ * A song is immutable and identified by its MediaStore id alone, so it can be used as a key in
+ * sets and maps. Songs are obtained through {@link #of}, which hands back the instance already in
+ * use for an id (as long as its data hasn't changed), so that scanning the library again doesn't
+ * duplicate them.
  */
-public class Song {
+public final class Song {
+
+    // Instances in use, by id. Entries are weak, and cleared ones are purged as new songs come in.
+    private static final Map<Long, SongReference> sPool = new HashMap<>();
+    private static final ReferenceQueue<Song> sCleared = new ReferenceQueue<>();
 
     // Fields used as data for storing for each track.
-    private long id;
-    private String title;
-    private String artist;
+    private final long id;
+    private final String title;
+    private final String artist;
+    private final int hash;
+
+    // Weak reference to a pooled song, remembering its id for purging.
+    private static final class SongReference extends WeakReference<Song> {
+        final long id;
+
+        SongReference(Song song) {
+            super(song, sCleared);
+            id = song.id;
+        }
+    }
+
+    // Creates a Song object; see of().
+    private Song(long songID, String songTitle, String songArtist) {
+        id = songID;
+        title = songTitle;
+        artist = songArtist;
+        hash = (int) (songID ^ (songID >>> 32));
+    }
 
     /**
-     * Creates a {@link Song} object.
+     * Returns the {@link Song} object for a song, reusing the one in use if it has the same data.
      *
      * @param songID is the ID of the song.
      * @param songTitle is the title of the song.
      * @param songArtist is the artist of the song.
      */
-    public Song(long songID, String songTitle, String songArtist) {
-        id = songID;
-        title = songTitle;
-        artist = songArtist;
+    public static Song of(long songID, String songTitle, String songArtist) {
+        synchronized (sPool) {
+            purge();
+
+            SongReference reference = sPool.get(songID);
+            Song song = reference != null ? reference.get() : null;
+            if (song != null && equal(song.title, songTitle) && equal(song.artist, songArtist)) {
+                return song;
+            }
+
+            song = new Song(songID, songTitle, songArtist);
+            sPool.put(songID, new SongReference(song));
+            return song;
+        }
+    }
+
+    // Empties the pool, so that the songs obtained next are new instances. Package-private so
+    // that benchmarks can compare distinct instances of the same songs.
+    static void clearPool() {
+        synchronized (sPool) {
+            sPool.clear();
+        }
     }
 
     // Getter methods.
@@ -49,7 +100,7 @@ public class Song {
     }
 
     /**
-     * Compares two objects - one of them being a {@link Song} object.
+     * Compares two objects - one of them being a {@link Song} object - by their ids.
      *
      * @param o is the other object being compared with.
      */
@@ -58,11 +109,24 @@ public class Song {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
 
-        Song song = (Song) o;
+        return id == ((Song) o).id;
+    }
 
-        if (id != song.id) return false;
-        if (title != null ? !title.equals(song.title) : song.title != null) return false;
-        return artist != null ? artist.equals(song.artist) : song.artist == null;
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    // Helper method that removes the pool's cleared entries, unless already replaced.
+    private static void purge() {
+        SongReference cleared;
+        while ((cleared = (SongReference) sCleared.poll()) != null) {
+            if (sPool.get(cleared.id) == cleared) sPool.remove(cleared.id);
+        }
+    }
 
+    // Helper method that compares two possibly null strings.
+    private static boolean equal(String a, String b) {
+        return a != null ? a.equals(b) : b == null;
     }
 }
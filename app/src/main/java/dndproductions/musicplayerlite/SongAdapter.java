@@ -1,78 +1,221 @@
 package dndproductions.musicplayerlite;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
-import java.util.List;
 
 import android.content.Context;
 import android.view.LayoutInflater;
+import android.widget.ImageView;
 import android.widget.TextView;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
- * Adapter that's used for displaying the songs to the ListView via MainActivity.
+ * Adapter that's used for displaying the songs to the RecyclerView via MainActivity. Rows are
+ * bound straight from the columns of the {@link SongStore}, so binding doesn't allocate, and
+ * songs are identified by their MediaStore id.
+ *
+ * When the library is updated, the new list is diffed against the displayed one on a background
+ * thread, and only the rows that changed are rebound; the rest keep their views and the scroll
+ * position is kept.
  */
-public class SongAdapter extends ArrayAdapter<Song> {
+public class SongAdapter extends RecyclerView.Adapter<SongAdapter.ViewHolder> {
 
     /**
-     * Provides a view for an AdapterView (ListView, GridView, and etc.).
+     * Receives the adapter's events on the main thread.
+     */
+    public interface Callbacks {
+
+        /**
+         * Invoked when a song is clicked.
+         *
+         * @param position is the position of the song in the displayed list.
+         */
+        void onSongClick(int position);
+
+        /**
+         * Invoked when a song is long-clicked.
+         *
+         * @param position is the position of the song in the displayed list.
+         */
+        void onSongLongClick(int position);
+
+        /**
+         * Invoked when the displayed list was replaced, as positions are now relative to it.
+         *
+         * @param songList is the displayed list.
+         * @param updated is whether it's an updated version of the songs shown before (from
+         *                {@link #updateSongList(SongList)}), rather than other songs.
+         */
+        void onSongListChanged(SongList songList, boolean updated);
+    }
+
+    // Thread the diffs are computed on, shared by every adapter.
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newSingleThreadExecutor(
+            new BackgroundThreadFactory("SongDiff"));
+
+    private final LayoutInflater mInflater;
+    private final Callbacks mCallbacks;
+    private final AlbumArtLoader mArtLoader;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private SongList mSongList;
+
+    // Incremented whenever the list is replaced, so that a diff that finishes after a newer
+    // replacement is dropped.
+    private int mGeneration;
+
+    /**
+     * Creates a {@link SongAdapter} object.
      *
      * @param context is an Activity context.
      * @param songList is a song list.
+     * @param callbacks is the receiver of the adapter's events.
+     * @param artLoader is the loader of the rows' album art.
+     */
+    public SongAdapter(Context context, SongList songList, Callbacks callbacks,
+                       AlbumArtLoader artLoader){
+        mInflater = LayoutInflater.from(context);
+        mSongList = songList;
+        mCallbacks = callbacks;
+        mArtLoader = artLoader;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Returns the displayed list.
+     */
+    public SongList getSongList() {
+        return mSongList;
+    }
+
+    /**
+     * Replaces the displayed songs straight away, rebinding every visible row (e.g. for another
+     * sort order, where every row changes anyway).
+     *
+     * @param songList is the new song list.
+     */
+    public void setSongList(SongList songList) {
+        mGeneration++;
+        apply(songList, null);
+    }
+
+    /**
+     * Replaces the displayed songs with an updated version of them once the differences have
+     * been worked out in the background. Only the rows that changed are then rebound.
+     *
+     * @param songList is the new song list.
      */
-    public SongAdapter(Context context, List<Song> songList){
-        super(context, 0, songList);
+    public void updateSongList(final SongList songList) {
+        final int generation = ++mGeneration;
+        final SongList oldList = mSongList;
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = SongListDiff.calculate(oldList, songList);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) apply(songList, result);
+                    }
+                });
+            }
+        });
+    }
+
+    // Helper method that swaps the list in, and refreshes the rows that changed - all of them
+    // without a diff.
+    private void apply(SongList songList, DiffUtil.DiffResult result) {
+        mSongList = songList;
+        if (result == null) {
+            notifyDataSetChanged();
+        } else {
+            result.dispatchUpdatesTo(this);
+        }
+        mCallbacks.onSongListChanged(songList, result != null);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mSongList.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mSongList.getStore().getId(mSongList.getRow(position));
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        return new ViewHolder(mInflater.inflate(R.layout.list_item, parent, false));
     }
 
     /**
-     * Provides a view for an AdapterView (ListView, GridView, and etc.).
+     * Binds the song at a position to a row.
      *
+     * @param holder is the holder of the row's views.
      * @param position is the position in the list of data that should be displayed in the
      *                 list item view.
-     * @param convertView is the recycled view to populate.
-     * @param parent is the parent ViewGroup that is used for inflation.
      */
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
+    public void onBindViewHolder(ViewHolder holder, int position) {
 
-        // Initializes the following to hold child views later on.
-        ViewHolder holder;
+        // Retrieves each song's row in the store with the position/index parameter.
+        SongStore store = mSongList.getStore();
+        int row = mSongList.getRow(position);
 
-        // Checks if the existing view is being reused, otherwise inflates the view.
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(R.layout.list_item, parent,
-                    false);
+        // Sets the song's details as texts, accordingly - the title straight from the packed
+        // buffer, and the artist from the dictionary.
+        holder.song.setText(store.getTitleChars(), store.getTitleOffset(row),
+                store.getTitleLength(row));
+        holder.artist.setText(store.getArtist(row));
+        mArtLoader.load(store.getAlbumMediaId(row), holder.art);
+    }
 
-            // Initializes the rest of the child views for the sake of not looking them up
-            // repeatedly.
-            holder = new ViewHolder();
-            holder.song = (TextView) listItemView.findViewById(R.id.song_title);
-            holder.artist = (TextView) listItemView.findViewById(R.id.song_artist);
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        mArtLoader.cancel(holder.art);
+    }
 
-            // Associates the holder with the view for later lookup.
-            listItemView.setTag(holder);
-        } else {
+    /**
+     * ViewHolder class used to hold the set of views.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener,
+            View.OnLongClickListener {
+        final TextView song;
+        final TextView artist;
+        final ImageView art;
 
-            // Otherwise, the view already exists so retrieve it.
-            holder = (ViewHolder) listItemView.getTag();
-        }
+        ViewHolder(View itemView) {
+            super(itemView);
 
-        // Retrieves each song in the array with the position/index parameter.
-        Song currentSong = getItem(position);
+            // Initializes the child views for the sake of not looking them up repeatedly.
+            song = (TextView) itemView.findViewById(R.id.song_title);
+            artist = (TextView) itemView.findViewById(R.id.song_artist);
+            art = (ImageView) itemView.findViewById(R.id.album_art);
+            itemView.setOnClickListener(this);
+            itemView.setOnLongClickListener(this);
+        }
 
-        // Sets the song's details as texts, accordingly.
-        if (currentSong != null) {
-            holder.song.setText(currentSong.getTitle());
-            holder.artist.setText(currentSong.getArtist());
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) mCallbacks.onSongClick(position);
         }
 
-        return listItemView;
-    }
+        @Override
+        public boolean onLongClick(View view) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) return false;
 
-    // ViewHolder class used to hold the set of views.
-    private static class ViewHolder {
-        TextView song;
-        TextView artist;
+            mCallbacks.onSongLongClick(position);
+            return true;
+        }
     }
 }
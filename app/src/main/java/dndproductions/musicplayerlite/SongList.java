@@ -0,0 +1,26 @@
+package dndproductions.musicplayerlite;
+
+/**
+ * Read-only, position-indexed view over songs held in a {@link SongStore}. Positions are what the
+ * UI and the Service deal with, and each maps to a row of the store whose columns can then be read
+ * without allocating.
+ */
+public interface SongList {
+
+    /**
+     * Returns the number of songs in the view.
+     */
+    int size();
+
+    /**
+     * Maps a position in the view to a row of the backing store.
+     *
+     * @param position is the position/index within the view.
+     */
+    int getRow(int position);
+
+    /**
+     * Returns the store holding the songs' data.
+     */
+    SongStore getStore();
+}
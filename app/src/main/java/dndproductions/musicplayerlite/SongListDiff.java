@@ -0,0 +1,147 @@
+package dndproductions.musicplayerlite;
+
+import android.support.v7.util.DiffUtil;
+
+/**
+ * Works out how a displayed {@link SongList} changed into a new one, so that only the rows that
+ * changed get rebound. Songs are matched by their MediaStore id.
+ *
+ * {@link DiffUtil} takes time proportional to the list sizes times the number of edits, so a
+ * change that reshuffles or replaces much of a large library isn't diffed at all; the caller
+ * should refresh the whole list instead.
+ */
+final class SongListDiff {
+
+    // Number of edits above which a diff isn't worth computing.
+    static final int MAX_EDITS = 500;
+
+    private SongListDiff() {
+    }
+
+    /**
+     * Computes the updates turning one list into another. Should be called off the main thread.
+     *
+     * @param oldList is the displayed list.
+     * @param newList is the list replacing it.
+     * @return the updates, or null if the lists differ too much to be worth diffing.
+     */
+    static DiffUtil.DiffResult calculate(SongList oldList, SongList newList) {
+        if (estimateEdits(oldList, newList) > MAX_EDITS) return null;
+
+        return DiffUtil.calculateDiff(new Callback(oldList, newList), false);
+    }
+
+    /**
+     * Cheaply estimates the number of edits between two lists, in a single pass: songs added,
+     * songs removed, and songs that moved back relative to those before them.
+     *
+     * @param oldList is the displayed list.
+     * @param newList is the list replacing it.
+     */
+    static int estimateEdits(SongList oldList, SongList newList) {
+        SongStore oldStore = oldList.getStore();
+        SongStore newStore = newList.getStore();
+
+        LongIntMap oldPositions = new LongIntMap(oldList.size());
+        for (int i = 0; i < oldList.size(); i++) {
+            oldPositions.put(oldStore.getId(oldList.getRow(i)), i);
+        }
+
+        int edits = 0;
+        int common = 0;
+        int lastPosition = -1;
+        for (int i = 0; i < newList.size(); i++) {
+            int position = oldPositions.get(newStore.getId(newList.getRow(i)));
+            if (position == LongIntMap.MISSING) {
+                edits++;
+            } else {
+                common++;
+                if (position < lastPosition) {
+                    edits++;
+                } else {
+                    lastPosition = position;
+                }
+            }
+        }
+        return edits + oldList.size() - common;
+    }
+
+    /**
+     * Returns whether a list only has songs appended to another, i.e. whether the old list's
+     * songs start the new one in the same order. Songs are compared by id.
+     *
+     * @param oldList is the list before.
+     * @param newList is the list after.
+     */
+    static boolean isAppended(SongList oldList, SongList newList) {
+        if (oldList == newList) return true;
+        if (newList.size() < oldList.size()) return false;
+
+        SongStore oldStore = oldList.getStore();
+        SongStore newStore = newList.getStore();
+        for (int i = 0; i < oldList.size(); i++) {
+            if (oldStore.getId(oldList.getRow(i)) != newStore.getId(newList.getRow(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares two lists' songs by id, and their displayed details by value.
+     */
+    private static class Callback extends DiffUtil.Callback {
+        private final SongList mOldList;
+        private final SongList mNewList;
+
+        Callback(SongList oldList, SongList newList) {
+            mOldList = oldList;
+            mNewList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return mOldList.getStore().getId(mOldList.getRow(oldPosition))
+                    == mNewList.getStore().getId(mNewList.getRow(newPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            SongStore oldStore = mOldList.getStore();
+            SongStore newStore = mNewList.getStore();
+            int oldRow = mOldList.getRow(oldPosition);
+            int newRow = mNewList.getRow(newPosition);
+
+            // Rows of one store never change.
+            if (oldStore == newStore && oldRow == newRow) return true;
+
+            return oldStore.getArtist(oldRow).equals(newStore.getArtist(newRow))
+                    && sameTitle(oldStore, oldRow, newStore, newRow);
+        }
+
+        // Helper method that compares two titles in their packed buffers.
+        private static boolean sameTitle(SongStore a, int rowA, SongStore b, int rowB) {
+            int length = a.getTitleLength(rowA);
+            if (length != b.getTitleLength(rowB)) return false;
+
+            char[] charsA = a.getTitleChars();
+            char[] charsB = b.getTitleChars();
+            int offsetA = a.getTitleOffset(rowA);
+            int offsetB = b.getTitleOffset(rowB);
+            for (int i = 0; i < length; i++) {
+                if (charsA[offsetA + i] != charsB[offsetB + i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package dndproductions.musicplayerlite;
+
+/**
+ * Computes and maintains the {@link SortOrder}s of a {@link SongStore} as {@code int[]}s of rows.
+ * Songs are compared by the collation keys the store computed when they were added, so sorting
+ * never touches the strings themselves, and an order can be brought up to date after a library
+ * change without sorting the unchanged rows again.
+ */
+final class SongSorter {
+
+    private SongSorter() {
+    }
+
+    /**
+     * Sorts every row of a store in every order.
+     *
+     * @param store is the store to sort.
+     * @return the rows in each order, indexed by {@link SortOrder#ordinal()}.
+     */
+    static int[][] sortAll(SongStore store) {
+        SortOrder[] orders = SortOrder.values();
+        int[][] sorted = new int[orders.length][];
+        for (SortOrder order : orders) {
+            sorted[order.ordinal()] = sort(store, 0, store.size(), order);
+        }
+        return sorted;
+    }
+
+    /**
+     * Sorts a range of a store's rows.
+     *
+     * @param store is the store to sort.
+     * @param from is the first row to sort.
+     * @param to is the row after the last one to sort.
+     * @param order is the order to sort in.
+     * @return the sorted rows.
+     */
+    static int[] sort(SongStore store, int from, int to, SortOrder order) {
+        int[] rows = new int[to - from];
+        for (int i = 0; i < rows.length; i++) rows[i] = from + i;
+
+        mergeSort(store, order, rows, rows.clone(), 0, rows.length);
+        return rows;
+    }
+
+    /**
+     * Brings an order up to date after the store was rebuilt from the rows that didn't change,
+     * followed by the rows that were added or modified. Only the new rows are sorted; they are
+     * then merged with the surviving part of the previous order in a single pass.
+     *
+     * @param previous is the order of the previous store.
+     * @param rowMap maps each row of the previous store to its row in the new one, or -1 if it
+     *               was dropped.
+     * @param store is the new store.
+     * @param firstNewRow is the first row of the new store that wasn't in the previous one.
+     * @param order is the order being updated.
+     * @return the order of the new store.
+     */
+    static int[] update(int[] previous, int[] rowMap, SongStore store, int firstNewRow,
+                        SortOrder order) {
+        int[] added = sort(store, firstNewRow, store.size(), order);
+        int[] merged = new int[store.size()];
+
+        int p = 0;
+        int a = 0;
+        int m = 0;
+        while (m < merged.length) {
+
+            // Skips the previous rows that were dropped.
+            while (p < previous.length && rowMap[previous[p]] < 0) p++;
+
+            if (a == added.length || (p < previous.length
+                    && compare(store, rowMap[previous[p]], added[a], order) <= 0)) {
+                merged[m++] = rowMap[previous[p++]];
+            } else {
+                merged[m++] = added[a++];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Compares two rows of a store in a given order. Ties are broken by the following keys, and
+     * ultimately by id, so that every order is total and stable across rebuilds.
+     */
+    static int compare(SongStore store, int rowA, int rowB, SortOrder order) {
+        int result = 0;
+        switch (order) {
+            case ARTIST:
+                result = SongStore.compareArtists(store, rowA, store, rowB);
+                if (result == 0) result = SongStore.compareAlbums(store, rowA, store, rowB);
+                break;
+            case ALBUM:
+                result = SongStore.compareAlbums(store, rowA, store, rowB);
+                break;
+            case DATE_ADDED:
+
+                // Newest first.
+                result = compareLongs(store.getDateAdded(rowB), store.getDateAdded(rowA));
+                break;
+        }
+
+        if (result == 0) result = SongStore.compareTitles(store, rowA, store, rowB);
+        if (result == 0) result = compareLongs(store.getId(rowA), store.getId(rowB));
+        return result;
+    }
+
+    // Helper method that compares two longs (Long.compare() requires API 19).
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    // Helper method that stably sorts rows[from, to) using scratch as a buffer of the same content.
+    private static void mergeSort(SongStore store, SortOrder order, int[] rows, int[] scratch,
+                                  int from, int to) {
+        if (to - from < 2) return;
+
+        int middle = (from + to) >>> 1;
+        mergeSort(store, order, scratch, rows, from, middle);
+        mergeSort(store, order, scratch, rows, middle, to);
+
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle
+                    && compare(store, scratch[left], scratch[right], order) <= 0)) {
+                rows[i] = scratch[left++];
+            } else {
+                rows[i] = scratch[right++];
+            }
+        }
+    }
+}
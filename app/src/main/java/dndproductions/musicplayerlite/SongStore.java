@@ -0,0 +1,633 @@
+package dndproductions.musicplayerlite;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar, primitive-backed storage for the music library. Rather than one {@link Song} object
+ * and two strings per track, the songs are held in a handful of arrays:
+ *
+ * <ul>
+ * <li>{@code long[]}s of MediaStore ids, album ids, file modification dates and dates added,</li>
+ * <li>{@code int[]}s of durations and track numbers,</li>
+ * <li>every title packed back to back into a single {@code char[]}, with an offset per row,</li>
+ * <li>artists, albums and genres dictionary-encoded as {@code int[]}s of ids into tables of
+ * distinct names,</li>
+ * <li>a collation key per title, artist and album, computed once when the song is added.</li>
+ * </ul>
+ *
+ * A store is immutable once built. As a {@link SongList} it presents its rows in storage order.
+ */
+public final class SongStore implements SongList {
+
+    // Shared instance for when there are no songs (yet).
+    public static final SongStore EMPTY = new Builder(0).build();
+
+    private final int mSize;
+    private final long[] mIds;
+    private final long[] mAlbumMediaIds;
+    private final long[] mDateModified;
+    private final long[] mDateAdded;
+    private final int[] mDurations;
+    private final int[] mTrackNumbers;
+
+    // Title of row i spans mTitleChars[mTitleOffsets[i]] up to mTitleChars[mTitleOffsets[i + 1]],
+    // and its collation key likewise within mTitleKeys.
+    private final int[] mTitleOffsets;
+    private final char[] mTitleChars;
+    private final int[] mTitleKeyOffsets;
+    private final byte[] mTitleKeys;
+
+    // Artist of row i is mArtists[mArtistIds[i]], and album likewise.
+    private final int[] mArtistIds;
+    private final String[] mArtists;
+    private final byte[][] mArtistKeys;
+    private final int mArtistCount;
+    private final int[] mAlbumIds;
+    private final String[] mAlbums;
+    private final byte[][] mAlbumKeys;
+    private final int mAlbumCount;
+
+    // Genre of row i is mGenres[mGenreIds[i]], without collation keys as genres aren't sorted on.
+    private final int[] mGenreIds;
+    private final String[] mGenres;
+    private final int mGenreCount;
+
+    // Row of each id, built on first lookup. Any thread may build it; all build the same map.
+    private volatile LongIntMap mRowsById;
+
+    /**
+     * Creates a {@link SongStore} object over already filled columns. Only the first
+     * {@code columns.size} rows (and as many dictionary entries as counted) are considered, so the
+     * arrays may be larger. The array references are copied, so the columns object may go on
+     * growing afterwards.
+     */
+    SongStore(Columns columns) {
+        mSize = columns.size;
+        mIds = columns.ids;
+        mAlbumMediaIds = columns.albumMediaIds;
+        mDateModified = columns.dateModified;
+        mDateAdded = columns.dateAdded;
+        mDurations = columns.durations;
+        mTrackNumbers = columns.trackNumbers;
+        mTitleOffsets = columns.titleOffsets;
+        mTitleChars = columns.titleChars;
+        mTitleKeyOffsets = columns.titleKeyOffsets;
+        mTitleKeys = columns.titleKeys;
+        mArtistIds = columns.artistIds;
+        mArtists = columns.artists;
+        mArtistKeys = columns.artistKeys;
+        mArtistCount = columns.artistCount;
+        mAlbumIds = columns.albumIds;
+        mAlbums = columns.albums;
+        mAlbumKeys = columns.albumKeys;
+        mAlbumCount = columns.albumCount;
+        mGenreIds = columns.genreIds;
+        mGenres = columns.genres;
+        mGenreCount = columns.genreCount;
+    }
+
+    // SongList interface methods.
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public int getRow(int position) {
+        return position;
+    }
+
+    @Override
+    public SongStore getStore() {
+        return this;
+    }
+
+    // Getter methods for a single row's columns.
+    public long getId(int row) {
+        return mIds[row];
+    }
+
+    /**
+     * Returns the MediaStore id of a row's album, which its artwork is looked up by.
+     *
+     * @param row is the row of the song.
+     */
+    public long getAlbumMediaId(int row) {
+        return mAlbumMediaIds[row];
+    }
+
+    public long getDateModified(int row) {
+        return mDateModified[row];
+    }
+
+    public long getDateAdded(int row) {
+        return mDateAdded[row];
+    }
+
+    /**
+     * Returns the duration of a row's song in milliseconds, or 0 if unknown.
+     *
+     * @param row is the row of the song.
+     */
+    public int getDuration(int row) {
+        return mDurations[row];
+    }
+
+    /**
+     * Returns the track number of a row's song as MediaStore encodes it - the disc number times
+     * 1000 plus the track - or 0 if unknown.
+     *
+     * @param row is the row of the song.
+     */
+    public int getTrackNumber(int row) {
+        return mTrackNumbers[row];
+    }
+
+    public int getGenreId(int row) {
+        return mGenreIds[row];
+    }
+
+    /**
+     * Returns the genre of a row's song, or an empty string if unknown.
+     *
+     * @param row is the row of the song.
+     */
+    public String getGenre(int row) {
+        return mGenres[mGenreIds[row]];
+    }
+
+    public int getArtistId(int row) {
+        return mArtistIds[row];
+    }
+
+    public String getArtist(int row) {
+        return mArtists[mArtistIds[row]];
+    }
+
+    public int getAlbumId(int row) {
+        return mAlbumIds[row];
+    }
+
+    public String getAlbum(int row) {
+        return mAlbums[mAlbumIds[row]];
+    }
+
+    /**
+     * Returns the buffer every title is packed into; use together with {@link #getTitleOffset(int)}
+     * and {@link #getTitleLength(int)} to read a title without allocating.
+     */
+    public char[] getTitleChars() {
+        return mTitleChars;
+    }
+
+    public int getTitleOffset(int row) {
+        return mTitleOffsets[row];
+    }
+
+    public int getTitleLength(int row) {
+        return mTitleOffsets[row + 1] - mTitleOffsets[row];
+    }
+
+    /**
+     * Returns a row's title as a new String. Prefer the packed buffer on hot paths.
+     *
+     * @param row is the row of the song.
+     */
+    public String getTitle(int row) {
+        return new String(mTitleChars, mTitleOffsets[row], getTitleLength(row));
+    }
+
+    /**
+     * Returns the {@link Song} object for a row, the one already in use should there be one.
+     *
+     * @param row is the row of the song.
+     */
+    public Song getSong(int row) {
+        return Song.of(mIds[row], getTitle(row), getArtist(row));
+    }
+
+    /**
+     * Returns the row of a song, or -1 if it isn't in the store. The first lookup indexes the ids,
+     * and every one after that is a constant-time probe.
+     *
+     * @param id is the MediaStore id of the song.
+     */
+    public int getRowOf(long id) {
+        LongIntMap rowsById = mRowsById;
+        if (rowsById == null) {
+            rowsById = new LongIntMap(mSize);
+            for (int row = 0; row < mSize; row++) rowsById.put(mIds[row], row);
+            mRowsById = rowsById;
+        }
+        return rowsById.get(id);
+    }
+
+    // Getter methods for the dictionaries.
+    public int getArtistCount() {
+        return mArtistCount;
+    }
+
+    public String getArtistName(int artistId) {
+        return mArtists[artistId];
+    }
+
+    public int getAlbumCount() {
+        return mAlbumCount;
+    }
+
+    public String getAlbumName(int albumId) {
+        return mAlbums[albumId];
+    }
+
+    public int getGenreCount() {
+        return mGenreCount;
+    }
+
+    public String getGenreName(int genreId) {
+        return mGenres[genreId];
+    }
+
+    /**
+     * Returns a store with the duration, track number and genre of some rows replaced, sharing
+     * every other column with this one.
+     *
+     * @param rows is the rows to replace the metadata of; only the first {@code count} are used.
+     * @param count is the number of rows.
+     * @param durations is the duration of each of the rows, in milliseconds.
+     * @param trackNumbers is the track number of each of the rows.
+     * @param genres is the genre of each of the rows, or null where unknown.
+     */
+    SongStore withMetadata(int[] rows, int count, int[] durations, int[] trackNumbers,
+                           String[] genres) {
+        Columns c = getColumns();
+        c.durations = Arrays.copyOf(mDurations, mSize);
+        c.trackNumbers = Arrays.copyOf(mTrackNumbers, mSize);
+        c.genreIds = Arrays.copyOf(mGenreIds, mSize);
+
+        Map<String, Integer> genreLookup = new HashMap<>();
+        for (int i = 0; i < mGenreCount; i++) genreLookup.put(mGenres[i], i);
+        c.genres = Arrays.copyOf(mGenres, mGenreCount + count);
+
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            c.durations[row] = durations[i];
+            c.trackNumbers[row] = trackNumbers[i];
+
+            String genre = genres[i] == null ? "" : genres[i];
+            Integer genreId = genreLookup.get(genre);
+            if (genreId == null) {
+                genreId = c.genreCount++;
+                c.genres[genreId] = genre;
+                genreLookup.put(genre, genreId);
+            }
+            c.genreIds[row] = genreId;
+        }
+        c.genres = Arrays.copyOf(c.genres, c.genreCount);
+        return new SongStore(c);
+    }
+
+    /**
+     * Returns the raw columns, for serialisation.
+     */
+    Columns getColumns() {
+        Columns columns = new Columns();
+        columns.size = mSize;
+        columns.ids = mIds;
+        columns.albumMediaIds = mAlbumMediaIds;
+        columns.dateModified = mDateModified;
+        columns.dateAdded = mDateAdded;
+        columns.durations = mDurations;
+        columns.trackNumbers = mTrackNumbers;
+        columns.titleOffsets = mTitleOffsets;
+        columns.titleChars = mTitleChars;
+        columns.titleKeyOffsets = mTitleKeyOffsets;
+        columns.titleKeys = mTitleKeys;
+        columns.artistIds = mArtistIds;
+        columns.artists = mArtists;
+        columns.artistKeys = mArtistKeys;
+        columns.artistCount = mArtistCount;
+        columns.albumIds = mAlbumIds;
+        columns.albums = mAlbums;
+        columns.albumKeys = mAlbumKeys;
+        columns.albumCount = mAlbumCount;
+        columns.genreIds = mGenreIds;
+        columns.genres = mGenres;
+        columns.genreCount = mGenreCount;
+        return columns;
+    }
+
+    // Methods that compare two rows, possibly of different stores, by their collation keys.
+    public static int compareTitles(SongStore a, int rowA, SongStore b, int rowB) {
+        return compareKeys(a.mTitleKeys, a.mTitleKeyOffsets[rowA], a.mTitleKeyOffsets[rowA + 1],
+                b.mTitleKeys, b.mTitleKeyOffsets[rowB], b.mTitleKeyOffsets[rowB + 1]);
+    }
+
+    public static int compareArtists(SongStore a, int rowA, SongStore b, int rowB) {
+        byte[] keyA = a.mArtistKeys[a.mArtistIds[rowA]];
+        byte[] keyB = b.mArtistKeys[b.mArtistIds[rowB]];
+        return compareKeys(keyA, 0, keyA.length, keyB, 0, keyB.length);
+    }
+
+    public static int compareAlbums(SongStore a, int rowA, SongStore b, int rowB) {
+        byte[] keyA = a.mAlbumKeys[a.mAlbumIds[rowA]];
+        byte[] keyB = b.mAlbumKeys[b.mAlbumIds[rowB]];
+        return compareKeys(keyA, 0, keyA.length, keyB, 0, keyB.length);
+    }
+
+    // Helper method that compares two byte ranges as unsigned, which is how collation keys order.
+    private static int compareKeys(byte[] a, int startA, int endA, byte[] b, int startB,
+                                   int endB) {
+        int length = Math.min(endA - startA, endB - startB);
+        for (int i = 0; i < length; i++) {
+            int byteA = a[startA + i] & 0xff;
+            int byteB = b[startB + i] & 0xff;
+            if (byteA != byteB) return byteA - byteB;
+        }
+        return (endA - startA) - (endB - startB);
+    }
+
+    /**
+     * The raw arrays behind a store, as handed between the {@link Builder}, the store itself and
+     * {@link LibraryIndex}.
+     */
+    static final class Columns {
+        int size;
+        long[] ids;
+        long[] albumMediaIds;
+        long[] dateModified;
+        long[] dateAdded;
+        int[] durations;
+        int[] trackNumbers;
+        int[] titleOffsets;
+        char[] titleChars;
+        int[] titleKeyOffsets;
+        byte[] titleKeys;
+        int[] artistIds;
+        String[] artists;
+        byte[][] artistKeys;
+        int artistCount;
+        int[] albumIds;
+        String[] albums;
+        byte[][] albumKeys;
+        int albumCount;
+        int[] genreIds;
+        String[] genres;
+        int genreCount;
+    }
+
+    /**
+     * Accumulates rows into growable columns, computing each collation key once as it goes. The
+     * Builder can hand out snapshots while rows are still being added: rows are only ever
+     * appended, and arrays that outgrow their capacity are copied rather than modified, so a
+     * snapshot never sees a later write.
+     */
+    public static final class Builder {
+        private final Columns mColumns = new Columns();
+
+        // Lookups of names to dictionary ids.
+        private final Map<String, Integer> mArtistLookup = new HashMap<>();
+        private final Map<String, Integer> mAlbumLookup = new HashMap<>();
+        private final Map<String, Integer> mGenreLookup = new HashMap<>();
+
+        // Collator of the default locale, used for the sort keys. Not thread-safe, like the
+        // Builder itself.
+        private final Collator mCollator = Collator.getInstance();
+
+        /**
+         * Creates a {@link Builder} object.
+         *
+         * @param capacity is the expected number of songs.
+         */
+        public Builder(int capacity) {
+            capacity = Math.max(capacity, 16);
+            Columns c = mColumns;
+            c.ids = new long[capacity];
+            c.albumMediaIds = new long[capacity];
+            c.dateModified = new long[capacity];
+            c.dateAdded = new long[capacity];
+            c.durations = new int[capacity];
+            c.trackNumbers = new int[capacity];
+            c.titleOffsets = new int[capacity + 1];
+            c.titleChars = new char[capacity * 24];
+            c.titleKeyOffsets = new int[capacity + 1];
+            c.titleKeys = new byte[capacity * 32];
+            c.artistIds = new int[capacity];
+            c.artists = new String[16];
+            c.artistKeys = new byte[16][];
+            c.albumIds = new int[capacity];
+            c.albums = new String[16];
+            c.albumKeys = new byte[16][];
+            c.genreIds = new int[capacity];
+            c.genres = new String[16];
+        }
+
+        public int size() {
+            return mColumns.size;
+        }
+
+        /**
+         * Appends a song whose duration, track number and genre are unknown.
+         *
+         * @param id is the MediaStore id of the song.
+         * @param title is the title of the song.
+         * @param artist is the artist of the song.
+         * @param album is the album of the song.
+         * @param albumMediaId is the MediaStore id of the album.
+         * @param dateModified is the modification date of the song's file.
+         * @param dateAdded is the date the song was added to MediaStore.
+         */
+        public Builder add(long id, String title, String artist, String album, long albumMediaId,
+                           long dateModified, long dateAdded) {
+            return add(id, title, artist, album, albumMediaId, dateModified, dateAdded, 0, 0,
+                    null);
+        }
+
+        /**
+         * Appends a song.
+         *
+         * @param id is the MediaStore id of the song.
+         * @param title is the title of the song.
+         * @param artist is the artist of the song.
+         * @param album is the album of the song.
+         * @param albumMediaId is the MediaStore id of the album.
+         * @param dateModified is the modification date of the song's file.
+         * @param dateAdded is the date the song was added to MediaStore.
+         * @param duration is the duration of the song in milliseconds, or 0 if unknown.
+         * @param trackNumber is the track number of the song, or 0 if unknown.
+         * @param genre is the genre of the song, or null if unknown.
+         */
+        public Builder add(long id, String title, String artist, String album, long albumMediaId,
+                           long dateModified, long dateAdded, int duration, int trackNumber,
+                           String genre) {
+            String safeTitle = title == null ? "" : title;
+            char[] chars = safeTitle.toCharArray();
+            byte[] key = mCollator.getCollationKey(safeTitle).toByteArray();
+
+            appendRow(id, chars, 0, chars.length, key, 0, key.length, dateModified, dateAdded);
+
+            Columns c = mColumns;
+            c.albumMediaIds[c.size] = albumMediaId;
+            c.durations[c.size] = duration;
+            c.trackNumbers[c.size] = trackNumber;
+            c.artistIds[c.size] = artistId(artist == null ? "" : artist, null);
+            c.albumIds[c.size] = albumId(album == null ? "" : album, null);
+            c.genreIds[c.size] = genreId(genre == null ? "" : genre);
+            c.size++;
+            return this;
+        }
+
+        /**
+         * Appends a copy of another store's row, reusing its collation keys.
+         *
+         * @param store is the store to copy from.
+         * @param row is the row to copy.
+         */
+        public Builder add(SongStore store, int row) {
+            appendRow(store.mIds[row], store.mTitleChars, store.mTitleOffsets[row],
+                    store.getTitleLength(row), store.mTitleKeys, store.mTitleKeyOffsets[row],
+                    store.mTitleKeyOffsets[row + 1] - store.mTitleKeyOffsets[row],
+                    store.mDateModified[row], store.mDateAdded[row]);
+
+            Columns c = mColumns;
+            c.albumMediaIds[c.size] = store.mAlbumMediaIds[row];
+            c.durations[c.size] = store.mDurations[row];
+            c.trackNumbers[c.size] = store.mTrackNumbers[row];
+            c.artistIds[c.size] = artistId(store.getArtist(row),
+                    store.mArtistKeys[store.mArtistIds[row]]);
+            c.albumIds[c.size] = albumId(store.getAlbum(row),
+                    store.mAlbumKeys[store.mAlbumIds[row]]);
+            c.genreIds[c.size] = genreId(store.getGenre(row));
+            c.size++;
+            return this;
+        }
+
+        /**
+         * Returns an immutable store of the rows added so far, without copying them.
+         */
+        public SongStore snapshot() {
+            return new SongStore(mColumns);
+        }
+
+        /**
+         * Returns an immutable store of the rows added, with the columns trimmed to size.
+         */
+        public SongStore build() {
+            Columns c = mColumns;
+            Columns trimmed = new Columns();
+            trimmed.size = c.size;
+            trimmed.ids = Arrays.copyOf(c.ids, c.size);
+            trimmed.albumMediaIds = Arrays.copyOf(c.albumMediaIds, c.size);
+            trimmed.dateModified = Arrays.copyOf(c.dateModified, c.size);
+            trimmed.dateAdded = Arrays.copyOf(c.dateAdded, c.size);
+            trimmed.durations = Arrays.copyOf(c.durations, c.size);
+            trimmed.trackNumbers = Arrays.copyOf(c.trackNumbers, c.size);
+            trimmed.titleOffsets = Arrays.copyOf(c.titleOffsets, c.size + 1);
+            trimmed.titleChars = Arrays.copyOf(c.titleChars, c.titleOffsets[c.size]);
+            trimmed.titleKeyOffsets = Arrays.copyOf(c.titleKeyOffsets, c.size + 1);
+            trimmed.titleKeys = Arrays.copyOf(c.titleKeys, c.titleKeyOffsets[c.size]);
+            trimmed.artistIds = Arrays.copyOf(c.artistIds, c.size);
+            trimmed.artists = Arrays.copyOf(c.artists, c.artistCount);
+            trimmed.artistKeys = Arrays.copyOf(c.artistKeys, c.artistCount);
+            trimmed.artistCount = c.artistCount;
+            trimmed.albumIds = Arrays.copyOf(c.albumIds, c.size);
+            trimmed.albums = Arrays.copyOf(c.albums, c.albumCount);
+            trimmed.albumKeys = Arrays.copyOf(c.albumKeys, c.albumCount);
+            trimmed.albumCount = c.albumCount;
+            trimmed.genreIds = Arrays.copyOf(c.genreIds, c.size);
+            trimmed.genres = Arrays.copyOf(c.genres, c.genreCount);
+            trimmed.genreCount = c.genreCount;
+            return new SongStore(trimmed);
+        }
+
+        // Helper method that appends the per-row columns other than the dictionary ids, growing
+        // them when full.
+        private void appendRow(long id, char[] title, int titleStart, int titleLength, byte[] key,
+                               int keyStart, int keyLength, long dateModified, long dateAdded) {
+            Columns c = mColumns;
+            if (c.size == c.ids.length) {
+                int capacity = c.ids.length * 2;
+                c.ids = Arrays.copyOf(c.ids, capacity);
+                c.albumMediaIds = Arrays.copyOf(c.albumMediaIds, capacity);
+                c.dateModified = Arrays.copyOf(c.dateModified, capacity);
+                c.dateAdded = Arrays.copyOf(c.dateAdded, capacity);
+                c.durations = Arrays.copyOf(c.durations, capacity);
+                c.trackNumbers = Arrays.copyOf(c.trackNumbers, capacity);
+                c.titleOffsets = Arrays.copyOf(c.titleOffsets, capacity + 1);
+                c.titleKeyOffsets = Arrays.copyOf(c.titleKeyOffsets, capacity + 1);
+                c.artistIds = Arrays.copyOf(c.artistIds, capacity);
+                c.albumIds = Arrays.copyOf(c.albumIds, capacity);
+                c.genreIds = Arrays.copyOf(c.genreIds, capacity);
+            }
+
+            int charStart = c.titleOffsets[c.size];
+            if (charStart + titleLength > c.titleChars.length) {
+                c.titleChars = Arrays.copyOf(c.titleChars,
+                        Math.max(c.titleChars.length * 2, charStart + titleLength));
+            }
+            System.arraycopy(title, titleStart, c.titleChars, charStart, titleLength);
+
+            int byteStart = c.titleKeyOffsets[c.size];
+            if (byteStart + keyLength > c.titleKeys.length) {
+                c.titleKeys = Arrays.copyOf(c.titleKeys,
+                        Math.max(c.titleKeys.length * 2, byteStart + keyLength));
+            }
+            System.arraycopy(key, keyStart, c.titleKeys, byteStart, keyLength);
+
+            c.ids[c.size] = id;
+            c.dateModified[c.size] = dateModified;
+            c.dateAdded[c.size] = dateAdded;
+            c.titleOffsets[c.size + 1] = charStart + titleLength;
+            c.titleKeyOffsets[c.size + 1] = byteStart + keyLength;
+        }
+
+        // Helper methods that look a name up in a dictionary, adding it (and computing its key,
+        // unless one is given) if it's new.
+        private int artistId(String artist, byte[] key) {
+            Integer id = mArtistLookup.get(artist);
+            if (id != null) return id;
+
+            Columns c = mColumns;
+            if (c.artistCount == c.artists.length) {
+                c.artists = Arrays.copyOf(c.artists, c.artists.length * 2);
+                c.artistKeys = Arrays.copyOf(c.artistKeys, c.artistKeys.length * 2);
+            }
+            c.artists[c.artistCount] = artist;
+            c.artistKeys[c.artistCount] = key != null ? key
+                    : mCollator.getCollationKey(artist).toByteArray();
+            mArtistLookup.put(artist, c.artistCount);
+            return c.artistCount++;
+        }
+
+        private int albumId(String album, byte[] key) {
+            Integer id = mAlbumLookup.get(album);
+            if (id != null) return id;
+
+            Columns c = mColumns;
+            if (c.albumCount == c.albums.length) {
+                c.albums = Arrays.copyOf(c.albums, c.albums.length * 2);
+                c.albumKeys = Arrays.copyOf(c.albumKeys, c.albumKeys.length * 2);
+            }
+            c.albums[c.albumCount] = album;
+            c.albumKeys[c.albumCount] = key != null ? key
+                    : mCollator.getCollationKey(album).toByteArray();
+            mAlbumLookup.put(album, c.albumCount);
+            return c.albumCount++;
+        }
+
+        private int genreId(String genre) {
+            Integer id = mGenreLookup.get(genre);
+            if (id != null) return id;
+
+            Columns c = mColumns;
+            if (c.genreCount == c.genres.length) {
+                c.genres = Arrays.copyOf(c.genres, c.genres.length * 2);
+            }
+            c.genres[c.genreCount] = genre;
+            mGenreLookup.put(genre, c.genreCount);
+            return c.genreCount++;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package dndproductions.musicplayerlite;
+
+/**
+ * The orders the song list can be displayed in. Each one is precomputed by {@link SongSorter} when
+ * the library is loaded, so switching between them costs nothing at display time.
+ */
+public enum SortOrder {
+    TITLE,
+    ARTIST,
+    ALBUM,
+    DATE_ADDED
+}
@@ -0,0 +1,320 @@
+package dndproductions.musicplayerlite;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.media.MediaDataSource;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded LRU cache of the first few seconds of tracks, so that playback can start without
+ * waiting on slow storage. Heads of recently played and likely-next tracks are read ahead of time
+ * on a background thread; when a cached track is played, the player reads its head from memory
+ * while the rest is read from the file as playback goes on.
+ *
+ * Playing from memory requires {@link MediaDataSource} (Marshmallow and above). On older devices
+ * the read-ahead still warms the storage's page cache, which is what most of the cold-open cost
+ * is.
+ *
+ * While the screen is off, the rest of a cached track is read from its file in large windows
+ * rather than in the player's small chunks, so that storage is woken up far less often during
+ * long playback.
+ */
+public class TrackCache {
+
+    // Log tag constant.
+    private static final String LOG_TAG = TrackCache.class.getSimpleName();
+
+    // Total number of bytes kept in memory.
+    static final int MAX_BYTES = 8 * 1024 * 1024;
+
+    // Amount of playback cached per track, and the bitrate assumed when it can't be worked out.
+    static final int HEAD_SECONDS = 10;
+    private static final int FALLBACK_BYTES_PER_SECOND = 320 * 1024 / 8;
+
+    // Size of the windows tracks are read in while the screen is off.
+    static final int SCREEN_OFF_READ_AHEAD_BYTES = 1024 * 1024;
+
+    // Heads of tracks, keyed by song id.
+    private final LruCache<Long, byte[]> mHeads = new LruCache<Long, byte[]>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(Long songId, byte[] head) {
+            return head.length;
+        }
+    };
+
+    // Songs being read ahead right now.
+    private final Set<Long> mPending = Collections.synchronizedSet(new HashSet<Long>());
+
+    private final ContentResolver mResolver;
+    private final ExecutorService mExecutor;
+
+    // Counters of setDataSource() calls served from / missing the cache.
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    // Size of the windows tracks are read from their files in, or 0 to read what the player asks
+    // for directly.
+    private volatile int mReadAheadBytes;
+
+    /**
+     * Creates a {@link TrackCache} object.
+     *
+     * @param context is a Context used for opening the tracks.
+     */
+    public TrackCache(Context context) {
+        mResolver = context.getApplicationContext().getContentResolver();
+        mExecutor = Executors.newSingleThreadExecutor(new BackgroundThreadFactory("TrackCache"));
+    }
+
+    /**
+     * Reads a track's head into the cache in the background, unless it's already there.
+     *
+     * @param songId is the MediaStore id of the track.
+     */
+    public void prefetch(final long songId) {
+        if (mHeads.get(songId) != null || !mPending.add(songId)) return;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    byte[] head = readHead(songId);
+                    if (head != null) mHeads.put(songId, head);
+                } finally {
+                    mPending.remove(songId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets a track up as a player's data source, from the cache if possible.
+     *
+     * @param player is the player, in its idle state.
+     * @param songId is the MediaStore id of the track.
+     * @return whether the track was served from the cache; if not, the player's data source was
+     * left unset and the track should be opened by URI.
+     */
+    public boolean setDataSource(MediaPlayer player, long songId) {
+        byte[] head = mHeads.get(songId);
+        if (head == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            mMisses.incrementAndGet();
+            return false;
+        }
+
+        ParcelFileDescriptor descriptor = null;
+        try {
+            descriptor = mResolver.openFileDescriptor(trackUri(songId), "r");
+            if (descriptor == null) {
+                mMisses.incrementAndGet();
+                return false;
+            }
+
+            setCachedDataSource(player, head, descriptor, this);
+            mHits.incrementAndGet();
+            return true;
+        } catch (IOException | SecurityException | IllegalStateException e) {
+            Log.e(LOG_TAG, "Error opening cached track.", e);
+            closeQuietly(descriptor);
+            mMisses.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Switches to larger reads while the screen is off, and back once it's on.
+     *
+     * @param screenOff is whether the screen is off.
+     */
+    public void setScreenOff(boolean screenOff) {
+        mReadAheadBytes = screenOff ? SCREEN_OFF_READ_AHEAD_BYTES : 0;
+    }
+
+    // Getter methods for the counters.
+    public int getHitCount() {
+        return mHits.get();
+    }
+
+    public int getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * Drops the cached heads and stops the read-ahead thread.
+     */
+    public void release() {
+        mExecutor.shutdownNow();
+        mHeads.evictAll();
+    }
+
+    // Helper method kept separate so that MediaDataSource is only referenced on
+    // Marshmallow and above.
+    @TargetApi(Build.VERSION_CODES.M)
+    private static void setCachedDataSource(MediaPlayer player, byte[] head,
+                                            ParcelFileDescriptor descriptor, TrackCache cache) {
+        player.setDataSource(new HeadCachedDataSource(head, descriptor, cache));
+    }
+
+    // Helper method that reads the first HEAD_SECONDS of a track.
+    private byte[] readHead(long songId) {
+        int length = headLength(songId);
+        if (length <= 0) return null;
+
+        ParcelFileDescriptor descriptor = null;
+        try {
+            descriptor = mResolver.openFileDescriptor(trackUri(songId), "r");
+            if (descriptor == null) return null;
+
+            FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(length, channel.size()));
+            int read;
+            do {
+                read = channel.read(head, head.position());
+            } while (read > 0 && head.hasRemaining());
+
+            return head.position() == head.capacity() ? head.array()
+                    : Arrays.copyOf(head.array(), head.position());
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Error reading track head.", e);
+            return null;
+        } finally {
+            closeQuietly(descriptor);
+        }
+    }
+
+    // Helper method that works out how many bytes HEAD_SECONDS of a track take, from its size
+    // and duration in MediaStore.
+    private int headLength(long songId) {
+        Cursor cursor = mResolver.query(trackUri(songId), new String[]{
+                MediaStore.Audio.Media.SIZE, MediaStore.Audio.Media.DURATION}, null, null, null);
+        if (cursor == null) return HEAD_SECONDS * FALLBACK_BYTES_PER_SECOND;
+
+        try {
+            if (!cursor.moveToFirst()) return 0;
+
+            long size = cursor.getLong(0);
+            long durationMs = cursor.getLong(1);
+            if (size <= 0 || durationMs <= 0) return HEAD_SECONDS * FALLBACK_BYTES_PER_SECOND;
+
+            return (int) Math.min(size, size * HEAD_SECONDS * 1000 / durationMs);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Helper method that builds the content URI of a track.
+    private static Uri trackUri(long songId) {
+        return ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, songId);
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor descriptor) {
+        if (descriptor == null) return;
+
+        try {
+            descriptor.close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error closing track.", e);
+        }
+    }
+
+    /**
+     * A {@link MediaDataSource} that serves a track's head from memory and the rest from its
+     * file - through a read-ahead window, while the cache asks for one.
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private static class HeadCachedDataSource extends MediaDataSource {
+        private final byte[] mHead;
+        private final ParcelFileDescriptor mDescriptor;
+        private final FileChannel mChannel;
+        private final TrackCache mCache;
+
+        // Read-ahead window: mWindowLength bytes of the file from mWindowStart on.
+        private byte[] mWindow;
+        private long mWindowStart;
+        private int mWindowLength;
+
+        HeadCachedDataSource(byte[] head, ParcelFileDescriptor descriptor, TrackCache cache) {
+            mHead = head;
+            mDescriptor = descriptor;
+            mChannel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+            mCache = cache;
+        }
+
+        @Override
+        public synchronized int readAt(long position, byte[] buffer, int offset, int size)
+                throws IOException {
+            if (size == 0) return 0;
+
+            // Served from memory.
+            if (position < mHead.length) {
+                int length = (int) Math.min(size, mHead.length - position);
+                System.arraycopy(mHead, (int) position, buffer, offset, length);
+                return length;
+            }
+
+            int readAhead = mCache.mReadAheadBytes;
+            if (readAhead > size) return readWindowed(position, buffer, offset, size, readAhead);
+
+            // Served from the file directly; positional reads leave the channel's position alone.
+            mWindow = null;
+            return mChannel.read(ByteBuffer.wrap(buffer, offset, size), position);
+        }
+
+        // Helper method that serves a read from the window, first refilling it from the
+        // position on if it doesn't hold the position.
+        private int readWindowed(long position, byte[] buffer, int offset, int size,
+                                 int readAhead) throws IOException {
+            if (mWindow == null || position < mWindowStart
+                    || position >= mWindowStart + mWindowLength) {
+                if (mWindow == null || mWindow.length != readAhead) mWindow = new byte[readAhead];
+
+                ByteBuffer window = ByteBuffer.wrap(mWindow);
+                int read;
+                do {
+                    read = mChannel.read(window, position + window.position());
+                } while (read > 0 && window.hasRemaining());
+
+                mWindowStart = position;
+                mWindowLength = window.position();
+                if (mWindowLength == 0) return -1;
+            }
+
+            int start = (int) (position - mWindowStart);
+            int length = Math.min(size, mWindowLength - start);
+            System.arraycopy(mWindow, start, buffer, offset, length);
+            return length;
+        }
+
+        @Override
+        public long getSize() throws IOException {
+            return mChannel.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mChannel.close();
+            mDescriptor.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package dndproductions.musicplayerlite;
+
+/**
+ * Measures the latency of track transitions: the time from one track ending to the next one
+ * becoming audible. When the next track was handed over gaplessly it may start before the
+ * previous one reports its end, which counts as no latency at all.
+ */
+public class TransitionTimer {
+
+    // Marks of the transition in progress, in System.nanoTime() terms, or -1 if not reached yet.
+    private long mEndedAt = -1;
+    private long mStartedAt = -1;
+
+    // Statistics of the completed transitions.
+    private long mLastLatencyNanos = -1;
+    private long mMaxLatencyNanos;
+    private long mTotalLatencyNanos;
+    private int mCount;
+
+    /**
+     * Marks the end of the outgoing track.
+     *
+     * @param nowNanos is the current System.nanoTime().
+     */
+    public synchronized void markTrackEnded(long nowNanos) {
+        mEndedAt = nowNanos;
+        complete();
+    }
+
+    /**
+     * Marks the incoming track becoming audible.
+     *
+     * @param nowNanos is the current System.nanoTime().
+     */
+    public synchronized void markTrackStarted(long nowNanos) {
+        mStartedAt = nowNanos;
+        complete();
+    }
+
+    /**
+     * Forgets a transition in progress (e.g. when the user picks another song midway).
+     */
+    public synchronized void cancel() {
+        mEndedAt = -1;
+        mStartedAt = -1;
+    }
+
+    // Getter methods for the statistics.
+    public synchronized long getLastLatencyNanos() {
+        return mLastLatencyNanos;
+    }
+
+    public synchronized long getMaxLatencyNanos() {
+        return mMaxLatencyNanos;
+    }
+
+    public synchronized long getAverageLatencyNanos() {
+        return mCount == 0 ? 0 : mTotalLatencyNanos / mCount;
+    }
+
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    // Helper method that records the transition once both of its marks are in.
+    private void complete() {
+        if (mEndedAt < 0 || mStartedAt < 0) return;
+
+        long latency = Math.max(0, mStartedAt - mEndedAt);
+        mLastLatencyNanos = latency;
+        mMaxLatencyNanos = Math.max(mMaxLatencyNanos, latency);
+        mTotalLatencyNanos += latency;
+        mCount++;
+        Metrics.record(Metrics.TRACK_TRANSITION, latency);
+
+        mEndedAt = -1;
+        mStartedAt = -1;
+    }
+}
@@ -0,0 +1,87 @@
+package dndproductions.musicplayerlite;
+
+/**
+ * Accounts for how long a wake lock is held over a session: the total and longest hold, the
+ * number of holds, and the share of the session they add up to. Times are SystemClock
+ * elapsedRealtime() values, which keep counting while the device sleeps.
+ */
+public class WakeLockTimer {
+
+    // Start of the session, and of the hold in progress (or -1 if the lock isn't held).
+    private long mSessionStart;
+    private long mHeldSince = -1;
+
+    // Statistics of the completed holds.
+    private long mHeldMillis;
+    private long mLongestHoldMillis;
+    private int mHoldCount;
+
+    /**
+     * Creates a {@link WakeLockTimer} object.
+     *
+     * @param nowMillis is the start of the session.
+     */
+    public WakeLockTimer(long nowMillis) {
+        mSessionStart = nowMillis;
+    }
+
+    /**
+     * Marks the lock being acquired. Does nothing if it's already held.
+     *
+     * @param nowMillis is the current time.
+     */
+    public synchronized void markAcquired(long nowMillis) {
+        if (mHeldSince >= 0) return;
+
+        mHeldSince = nowMillis;
+        mHoldCount++;
+    }
+
+    /**
+     * Marks the lock being released. Does nothing if it isn't held.
+     *
+     * @param nowMillis is the current time.
+     */
+    public synchronized void markReleased(long nowMillis) {
+        if (mHeldSince < 0) return;
+
+        long hold = Math.max(0, nowMillis - mHeldSince);
+        mHeldMillis += hold;
+        mLongestHoldMillis = Math.max(mLongestHoldMillis, hold);
+        mHeldSince = -1;
+    }
+
+    // Getter methods for the statistics, including the hold in progress.
+    public synchronized long getHeldMillis(long nowMillis) {
+        return mHeldMillis + currentHold(nowMillis);
+    }
+
+    public synchronized long getLongestHoldMillis(long nowMillis) {
+        return Math.max(mLongestHoldMillis, currentHold(nowMillis));
+    }
+
+    public synchronized int getHoldCount() {
+        return mHoldCount;
+    }
+
+    public synchronized long getSessionMillis(long nowMillis) {
+        return Math.max(0, nowMillis - mSessionStart);
+    }
+
+    /**
+     * Returns a one-line summary of the session, for logging.
+     *
+     * @param nowMillis is the current time.
+     */
+    public synchronized String summarize(long nowMillis) {
+        long session = getSessionMillis(nowMillis);
+        long held = getHeldMillis(nowMillis);
+        return "Wake lock held " + held / 1000 + "s of " + session / 1000 + "s ("
+                + (session == 0 ? 0 : held * 100 / session) + "%) over " + mHoldCount
+                + " holds, longest " + getLongestHoldMillis(nowMillis) / 1000 + "s";
+    }
+
+    private long currentHold(long nowMillis) {
+        return mHeldSince < 0 ? 0 : Math.max(0, nowMillis - mHeldSince);
+    }
+}
@@ -0,0 +1,210 @@
+package dndproductions.musicplayerlite;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.widget.ImageView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link AlbumArtLoader}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25, manifest = Config.NONE)
+public class AlbumArtLoaderTest {
+
+    // Albums with art, without art, and with art that can't be read for now.
+    private static final long ALBUM = 1;
+    private static final long OTHER_ALBUM = 2;
+    private static final long ALBUM_WITHOUT_ART = 3;
+    private static final long UNREADABLE_ALBUM = 4;
+
+    private static final int SIZE = 48;
+
+    private QueuedExecutor mExecutor;
+    private AlbumArtLoader mLoader;
+
+    // Thumbnail of each album with art, and the number of times each album was decoded.
+    private final Map<Long, Bitmap> mArt = new HashMap<>();
+    private final Map<Long, Integer> mDecodes = new HashMap<>();
+
+    // Run while the next album is being decoded, if set.
+    private Runnable mDuringDecode;
+
+    @Before
+    public void setUp() throws Exception {
+        mArt.put(ALBUM, Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.RGB_565));
+        mArt.put(OTHER_ALBUM, Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.RGB_565));
+
+        mExecutor = new QueuedExecutor();
+        mLoader = new AlbumArtLoader(RuntimeEnvironment.application, SIZE, mExecutor) {
+            @Override
+            Bitmap decode(long albumId) throws IOException {
+                Integer count = mDecodes.get(albumId);
+                mDecodes.put(albumId, count == null ? 1 : count + 1);
+                if (mDuringDecode != null) {
+                    Runnable duringDecode = mDuringDecode;
+                    mDuringDecode = null;
+                    duringDecode.run();
+                }
+
+                if (albumId == UNREADABLE_ALBUM) throw new IOException("Storage busy");
+                if (albumId == ALBUM_WITHOUT_ART) return null;
+                if (!mArt.containsKey(albumId)) throw new FileNotFoundException();
+                return mArt.get(albumId);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mLoader.release();
+    }
+
+    @Test
+    public void sampleSize_keepsShorterSideAboveThumbnail() throws Exception {
+        assertEquals(1, AlbumArtLoader.sampleSize(100, 100, 96));
+        assertEquals(4, AlbumArtLoader.sampleSize(500, 500, 96));
+        assertEquals(8, AlbumArtLoader.sampleSize(1600, 800, 96));
+        assertEquals(8, AlbumArtLoader.sampleSize(800, 1600, 96));
+    }
+
+    @Test
+    public void sampleSize_neverUpsamples() throws Exception {
+        assertEquals(1, AlbumArtLoader.sampleSize(40, 40, 96));
+        assertEquals(1, AlbumArtLoader.sampleSize(1000, 0, 96));
+    }
+
+    @Test
+    public void load_showsDecodedArt() throws Exception {
+        ImageView view = newView();
+        mLoader.load(ALBUM, view);
+        mExecutor.runAll();
+
+        assertSame(mArt.get(ALBUM), shownBitmap(view));
+    }
+
+    @Test
+    public void load_viewReboundWhileDecoding_showsOnlyNewAlbum() throws Exception {
+        final ImageView view = newView();
+
+        // The row is rebound, and its new album shown, while the first one is being decoded.
+        mDuringDecode = new Runnable() {
+            @Override
+            public void run() {
+                mLoader.load(OTHER_ALBUM, view);
+                mExecutor.runAll();
+            }
+        };
+        mLoader.load(ALBUM, view);
+        mExecutor.runAll();
+
+        assertEquals(1, (int) mDecodes.get(ALBUM));
+        assertSame(mArt.get(OTHER_ALBUM), shownBitmap(view));
+    }
+
+    @Test
+    public void load_reboundBeforeDecoding_skipsOldAlbum() throws Exception {
+        ImageView view = newView();
+        mLoader.load(ALBUM, view);
+        mLoader.load(OTHER_ALBUM, view);
+        mExecutor.runAll();
+
+        assertNull(mDecodes.get(ALBUM));
+        assertSame(mArt.get(OTHER_ALBUM), shownBitmap(view));
+    }
+
+    @Test
+    public void load_albumWithoutArt_isNotDecodedAgain() throws Exception {
+        mLoader.load(ALBUM_WITHOUT_ART, newView());
+        mExecutor.runAll();
+
+        ImageView view = newView();
+        mLoader.load(ALBUM_WITHOUT_ART, view);
+        mExecutor.runAll();
+
+        assertEquals(1, (int) mDecodes.get(ALBUM_WITHOUT_ART));
+        assertNull(view.getDrawable());
+    }
+
+    @Test
+    public void load_unreadableArt_isDecodedAgain() throws Exception {
+        mLoader.load(UNREADABLE_ALBUM, newView());
+        mExecutor.runAll();
+        mLoader.load(UNREADABLE_ALBUM, newView());
+        mExecutor.runAll();
+
+        assertEquals(2, (int) mDecodes.get(UNREADABLE_ALBUM));
+    }
+
+    // Helper method that creates a row's view.
+    private static ImageView newView() {
+        return new ImageView(RuntimeEnvironment.application);
+    }
+
+    // Helper method that returns the bitmap a view shows, or null.
+    private static Bitmap shownBitmap(ImageView view) {
+        return view.getDrawable() == null ? null
+                : ((BitmapDrawable) view.getDrawable()).getBitmap();
+    }
+
+    // Executor that runs the requests on the test's thread, when told to.
+    private static class QueuedExecutor extends AbstractExecutorService {
+        private final List<Runnable> mQueue = new ArrayList<>();
+        private boolean mShutdown;
+
+        void runAll() {
+            while (!mQueue.isEmpty()) mQueue.remove(0).run();
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            mQueue.add(runnable);
+        }
+
+        @Override
+        public void shutdown() {
+            mShutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            mShutdown = true;
+            List<Runnable> pending = new ArrayList<>(mQueue);
+            mQueue.clear();
+            return pending;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return mShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return mShutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return mShutdown;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package dndproductions.musicplayerlite;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAudioManager;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Local unit tests for {@link AudioFocusController}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25, manifest = Config.NONE)
+public class AudioFocusControllerTest {
+
+    private ShadowAudioManager mAudioManager;
+    private AudioFocusController mController;
+
+    // Number of times playback was paused, and resumed, for focus.
+    private int mPauses;
+    private int mResumes;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        mAudioManager = shadowOf((AudioManager) context.getSystemService(Context.AUDIO_SERVICE));
+        PlaybackEngine engine = new PlaybackEngine(context, new TrackCache(context), null);
+        mController = new AudioFocusController(context, engine,
+                new Handler(Looper.getMainLooper()), new AudioFocusController.Callback() {
+                    @Override
+                    public boolean onFocusLost(boolean temporary) {
+                        mPauses++;
+                        return true;
+                    }
+
+                    @Override
+                    public void onFocusRegained() {
+                        mResumes++;
+                    }
+                });
+    }
+
+    @Test
+    public void request_whileHeld_doesNotAskAgain() throws Exception {
+        assertTrue(mController.request());
+        mAudioManager.setNextFocusRequestResponse(AudioManager.AUDIOFOCUS_REQUEST_FAILED);
+
+        assertTrue(mController.request());
+    }
+
+    @Test
+    public void request_afterTransientLoss_asksAgain() throws Exception {
+        assertTrue(mController.request());
+        mController.onAudioFocusChange(AudioManager.AUDIOFOCUS_LOSS_TRANSIENT);
+        assertEquals(1, mPauses);
+        assertTrue(mController.isPausedTransiently());
+
+        // Another app (e.g. a call) still holds focus.
+        mAudioManager.setNextFocusRequestResponse(AudioManager.AUDIOFOCUS_REQUEST_FAILED);
+        assertFalse(mController.request());
+
+        mAudioManager.setNextFocusRequestResponse(AudioManager.AUDIOFOCUS_REQUEST_GRANTED);
+        assertTrue(mController.request());
+    }
+
+    @Test
+    public void focusGain_afterTransientLoss_resumes() throws Exception {
+        assertTrue(mController.request());
+        mController.onAudioFocusChange(AudioManager.AUDIOFOCUS_LOSS_TRANSIENT);
+        mController.onAudioFocusChange(AudioManager.AUDIOFOCUS_GAIN);
+
+        assertEquals(1, mResumes);
+        assertFalse(mController.isPausedTransiently());
+        assertEquals(1, mController.getResumeCount());
+    }
+
+    @Test
+    public void abandon_afterTransientLoss_dropsRequest() throws Exception {
+        assertTrue(mController.request());
+        mController.onAudioFocusChange(AudioManager.AUDIOFOCUS_LOSS_TRANSIENT);
+        mController.abandon();
+
+        assertNotNull(mAudioManager.getLastAbandonedAudioFocusListener());
+    }
+}
@@ -0,0 +1,189 @@
+package dndproductions.musicplayerlite;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal JMH-style harness for the JVM benchmarks: an operation is run until the JIT has settled,
+ * then timed one invocation at a time, reporting throughput, latency percentiles and the bytes
+ * allocated per operation.
+ *
+ * Results are saved as a tab-separated file, and compared against a baseline file from an earlier
+ * run should there be one - copy latest.tsv over baseline.tsv to accept a run as the new baseline.
+ */
+final class Benchmark {
+
+    // Time spent warming up and measuring each benchmark, and the bounds on the invocations.
+    private static final long WARMUP_NANOS = 500000000L;
+    private static final long MEASURE_NANOS = 1000000000L;
+    private static final int MIN_INVOCATIONS = 5;
+    private static final int MAX_INVOCATIONS = 10000;
+
+    // Difference in median latency from the baseline that gets flagged.
+    private static final double REGRESSION_THRESHOLD = 0.10;
+
+    // Consumes the operations' results.
+    private static volatile int sSink;
+
+    private Benchmark() {
+    }
+
+    /**
+     * A benchmarked operation. Its result is consumed, so that the JIT can't elide the work.
+     */
+    interface Operation {
+        Object run();
+    }
+
+    /**
+     * Measurements of a benchmark.
+     */
+    static final class Result {
+        final String name;
+        final long[] latencies;
+        final long bytesPerOp;
+
+        Result(String name, long[] latencies, long bytesPerOp) {
+            this.name = name;
+            this.latencies = latencies;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        // Latency percentile, in nanoseconds.
+        long percentile(double p) {
+            int index = (int) Math.ceil(p / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+        }
+
+        double opsPerSecond() {
+            long total = 0;
+            for (long latency : latencies) total += latency;
+            return latencies.length * 1e9 / total;
+        }
+
+        // Allocation rate, in megabytes per second.
+        double allocationRate() {
+            return bytesPerOp < 0 ? -1 : bytesPerOp * opsPerSecond() / (1 << 20);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%-28s %10.1f ops/s  p50 %9.3f ms  p90 %9.3f ms  p99 %9.3f ms  %8.1f MB/s",
+                    name, opsPerSecond(), percentile(50) / 1e6, percentile(90) / 1e6,
+                    percentile(99) / 1e6, allocationRate());
+        }
+    }
+
+    /**
+     * Runs a benchmark.
+     *
+     * @param name is the name it's reported under.
+     * @param operation is the operation.
+     */
+    static Result run(String name, Operation operation) {
+
+        // Warms up, for the JIT to compile the paths involved.
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < WARMUP_NANOS) {
+            sSink += System.identityHashCode(operation.run());
+        }
+
+        long[] latencies = new long[MAX_INVOCATIONS];
+        int count = 0;
+        long allocatedBefore = allocatedBytes();
+        start = System.nanoTime();
+        while (count < MIN_INVOCATIONS
+                || (count < MAX_INVOCATIONS && System.nanoTime() - start < MEASURE_NANOS)) {
+            long before = System.nanoTime();
+            Object result = operation.run();
+            latencies[count++] = System.nanoTime() - before;
+            sSink += System.identityHashCode(result);
+        }
+        long allocatedAfter = allocatedBytes();
+
+        latencies = Arrays.copyOf(latencies, count);
+        Arrays.sort(latencies);
+        long bytesPerOp = allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / count;
+
+        Result result = new Result(name, latencies, bytesPerOp);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Saves results as latest.tsv in a directory, and prints how they compare to baseline.tsv
+     * should it exist.
+     *
+     * @param results is the results.
+     * @param directory is the directory.
+     */
+    static void save(List<Result> results, File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+
+        PrintWriter out = new PrintWriter(new FileWriter(new File(directory, "latest.tsv")));
+        try {
+            out.println("name\tops_per_s\tp50_ns\tp90_ns\tp99_ns\tbytes_per_op");
+            for (Result result : results) {
+                out.println(result.name + '\t' + (long) result.opsPerSecond() + '\t'
+                        + result.percentile(50) + '\t' + result.percentile(90) + '\t'
+                        + result.percentile(99) + '\t' + result.bytesPerOp);
+            }
+        } finally {
+            out.close();
+        }
+
+        File baselineFile = new File(directory, "baseline.tsv");
+        if (!baselineFile.exists()) return;
+
+        Map<String, Long> baseline = readMedians(baselineFile);
+        for (Result result : results) {
+            Long median = baseline.get(result.name);
+            if (median == null) continue;
+
+            double change = (double) (result.percentile(50) - median) / median;
+            System.out.println(String.format(Locale.US, "%-28s p50 %+6.1f%% vs baseline%s",
+                    result.name, change * 100,
+                    change > REGRESSION_THRESHOLD ? "  <-- REGRESSION" : ""));
+        }
+    }
+
+    // Helper method that reads the median latencies of a results file.
+    private static Map<String, Long> readMedians(File file) throws IOException {
+        Map<String, Long> medians = new HashMap<>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            in.readLine(); // Header.
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] fields = line.split("\t");
+                if (fields.length > 2) medians.put(fields[0], Long.parseLong(fields[2]));
+            }
+        } finally {
+            in.close();
+        }
+        return medians;
+    }
+
+    // Helper method that returns the bytes allocated by the current thread so far, or -1 if the
+    // JVM can't tell.
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+}
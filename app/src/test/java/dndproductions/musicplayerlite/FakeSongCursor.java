@@ -0,0 +1,302 @@
+package dndproductions.musicplayerlite;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Cursor standing in for MediaStore's audio query: a synthetic library of {@link
+ * LibraryLoader#PROJECTION} rows, generated up front from a seed so that every run reads the same
+ * songs. Titles, artists and albums are drawn from small vocabularies, so that they repeat like
+ * in a real library.
+ */
+class FakeSongCursor implements Cursor {
+
+    private static final String[] WORDS = {"love", "night", "Song", "blue", "Élan", "heart",
+            "dream", "fire", "rain", "Road", "home", "time", "light", "world", "dance", "über"};
+
+    private final String[] mColumns = LibraryLoader.PROJECTION;
+    private final long[] mIds;
+    private final String[] mTitles;
+    private final String[] mArtists;
+    private final String[] mAlbums;
+    private final long[] mAlbumIds;
+    private final long[] mDates;
+    private final int[] mDurations;
+    private final int[] mTracks;
+    private int mPosition = -1;
+
+    /**
+     * Creates a {@link FakeSongCursor} object.
+     *
+     * @param count is the number of songs.
+     * @param seed is the seed the songs are generated from.
+     */
+    FakeSongCursor(int count, long seed) {
+        Random random = new Random(seed);
+        mIds = new long[count];
+        mTitles = new String[count];
+        mArtists = new String[count];
+        mAlbums = new String[count];
+        mAlbumIds = new long[count];
+        mDates = new long[count];
+        mDurations = new int[count];
+        mTracks = new int[count];
+
+        int artists = Math.max(1, count / 20);
+        for (int i = 0; i < count; i++) {
+            mIds[i] = i * 3 + random.nextInt(3) + 1;
+            mTitles[i] = words(random, 1 + random.nextInt(4));
+            int artist = random.nextInt(artists);
+            mArtists[i] = "Artist " + artist;
+            mAlbumIds[i] = artist * 4 + random.nextInt(4);
+            mAlbums[i] = WORDS[(int) (mAlbumIds[i] % WORDS.length)] + " " + mAlbumIds[i];
+            mDates[i] = 1400000000L + random.nextInt(100000000);
+            mDurations[i] = 60000 + random.nextInt(360000);
+            mTracks[i] = 1 + random.nextInt(12);
+        }
+    }
+
+    // Helper method that makes up a title of a number of words.
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) text.append(' ');
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    @Override
+    public int getCount() {
+        return mIds.length;
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(mPosition + offset);
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        mPosition = Math.max(-1, Math.min(position, mIds.length));
+        return mPosition >= 0 && mPosition < mIds.length;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(mIds.length - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(mPosition - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mPosition == 0 && mIds.length > 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return mPosition == mIds.length - 1 && mIds.length > 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return mPosition < 0;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return mPosition >= mIds.length;
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        return Arrays.asList(mColumns).indexOf(columnName);
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) throw new IllegalArgumentException(columnName);
+        return index;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex) {
+        return mColumns[columnIndex];
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumns.clone();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return mColumns.length;
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        switch (columnIndex) {
+            case 1:
+                return mTitles[mPosition];
+            case 2:
+                return mArtists[mPosition];
+            case 3:
+                return mAlbums[mPosition];
+            default:
+                return Long.toString(getLong(columnIndex));
+        }
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        switch (columnIndex) {
+            case 0:
+                return mIds[mPosition];
+            case 4:
+                return mAlbumIds[mPosition];
+            case 5:
+            case 6:
+                return mDates[mPosition];
+            case 7:
+                return mDurations[mPosition];
+            case 8:
+                return mTracks[mPosition];
+            default:
+                throw new IllegalArgumentException("Not a number column: " + columnIndex);
+        }
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return (int) getLong(columnIndex);
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        return (short) getLong(columnIndex);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        return getLong(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        return getLong(columnIndex);
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        return columnIndex >= 1 && columnIndex <= 3 ? FIELD_TYPE_STRING : FIELD_TYPE_INTEGER;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return false;
+    }
+
+    // The rest of the interface isn't used when reading rows.
+    @Override
+    @Deprecated
+    public void deactivate() {
+    }
+
+    @Override
+    @Deprecated
+    public boolean requery() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {
+    }
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {
+    }
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+    }
+
+    @Override
+    public void setNotificationUri(ContentResolver resolver, Uri uri) {
+    }
+
+    @Override
+    public Uri getNotificationUri() {
+        return null;
+    }
+
+    @Override
+    public boolean getWantsAllOnMoveCalls() {
+        return false;
+    }
+
+    @Override
+    public void setExtras(Bundle extras) {
+    }
+
+    @Override
+    public Bundle getExtras() {
+        return null;
+    }
+
+    @Override
+    public Bundle respond(Bundle extras) {
+        return null;
+    }
+}
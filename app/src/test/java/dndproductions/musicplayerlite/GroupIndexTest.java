@@ -0,0 +1,80 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GroupIndex}.
+ */
+public class GroupIndexTest {
+
+    private static LibraryIndex library() {
+        SongStore store = new SongStore.Builder(5)
+                .add(1, "Yesterday", "The Beatles", "Help!", 10, 0, 0, 0, 13, null)
+                .add(2, "Billie Jean", "Michael Jackson", "Thriller", 20, 0, 0, 0, 6, null)
+                .add(3, "Help!", "The Beatles", "Help!", 10, 0, 0, 0, 1, null)
+                .add(4, "Beat It", "Michael Jackson", "Thriller", 20, 0, 0, 0, 5, null)
+                .add(5, "Bonus", "The Beatles", "Help!", 10, 0, 0, 0, 0, null)
+                .build();
+        return new LibraryIndex(store, SongSorter.sortAll(store), 0, "", "");
+    }
+
+    @Test
+    public void groups_areInNameOrder() throws Exception {
+        GroupIndex artists = GroupIndex.buildArtists(library());
+
+        assertEquals(2, artists.size());
+        assertEquals("Michael Jackson", artists.getName(0));
+        assertEquals("The Beatles", artists.getName(1));
+        assertEquals(3, artists.getSize(1));
+    }
+
+    @Test
+    public void artistGroup_listsItsSongsByTitle() throws Exception {
+        GroupIndex artists = GroupIndex.buildArtists(library());
+        SongList songs = artists.getSongList(artists.findArtist("Michael Jackson"));
+
+        assertEquals(2, songs.size());
+        assertEquals(4, songs.getStore().getId(songs.getRow(0)));
+        assertEquals(2, songs.getStore().getId(songs.getRow(1)));
+    }
+
+    @Test
+    public void albumGroup_listsItsSongsByTrack() throws Exception {
+        GroupIndex albums = GroupIndex.buildAlbums(library());
+        SongList songs = albums.getSongList(albums.findAlbum(10));
+
+        // Track 1, track 13, then the song without a track number.
+        assertEquals(3, songs.getStore().getId(songs.getRow(0)));
+        assertEquals(1, songs.getStore().getId(songs.getRow(1)));
+        assertEquals(5, songs.getStore().getId(songs.getRow(2)));
+    }
+
+    @Test
+    public void albumsSharingName_areSeparateGroups() throws Exception {
+        SongStore store = new SongStore.Builder(3)
+                .add(1, "Intro", "Artist A", "Greatest Hits", 10, 0, 0, 0, 1, null)
+                .add(2, "Intro", "Artist B", "Greatest Hits", 20, 0, 0, 0, 1, null)
+                .add(3, "Outro", "Artist A", "Greatest Hits", 10, 0, 0, 0, 2, null)
+                .build();
+        GroupIndex albums = GroupIndex.buildAlbums(
+                new LibraryIndex(store, SongSorter.sortAll(store), 0, "", ""));
+
+        assertEquals(2, albums.size());
+        assertEquals("Greatest Hits", albums.getName(0));
+        assertEquals("Greatest Hits", albums.getName(1));
+
+        SongList songs = albums.getSongList(albums.findAlbum(10));
+        assertEquals(2, songs.size());
+        assertEquals(1, songs.getStore().getId(songs.getRow(0)));
+        assertEquals(3, songs.getStore().getId(songs.getRow(1)));
+        assertEquals(1, albums.getSize(albums.findAlbum(20)));
+    }
+
+    @Test
+    public void missingGroup_isNotFound() throws Exception {
+        assertEquals(-1, GroupIndex.buildAlbums(library()).findAlbum(30));
+        assertEquals(-1, GroupIndex.buildArtists(library()).findArtist("ABBA"));
+    }
+}
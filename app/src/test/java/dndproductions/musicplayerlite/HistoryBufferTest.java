@@ -0,0 +1,53 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link HistoryBuffer}.
+ */
+public class HistoryBufferTest {
+
+    @Test
+    public void events_areDrainedOldestFirst() throws Exception {
+        HistoryBuffer buffer = new HistoryBuffer(4);
+        assertEquals(1, buffer.add(0, 10, 100));
+        assertEquals(2, buffer.add(2, 11, 200));
+
+        int[] types = new int[4];
+        long[] songIds = new long[4];
+        long[] times = new long[4];
+        assertEquals(2, buffer.drain(types, songIds, times));
+
+        assertEquals(10, songIds[0]);
+        assertEquals(2, types[1]);
+        assertEquals(200, times[1]);
+        assertEquals(0, buffer.drain(types, songIds, times));
+    }
+
+    @Test
+    public void fullBuffer_overwritesTheOldest() throws Exception {
+        HistoryBuffer buffer = new HistoryBuffer(3);
+        for (int i = 0; i < 5; i++) buffer.add(0, i, i);
+
+        long[] songIds = new long[3];
+        assertEquals(3, buffer.drain(new int[3], songIds, new long[3]));
+        assertArrayEquals(new long[] {2, 3, 4}, songIds);
+        assertEquals(2, buffer.getDropped());
+    }
+
+    @Test
+    public void buffer_isReusedAfterADrain() throws Exception {
+        HistoryBuffer buffer = new HistoryBuffer(2);
+        buffer.add(0, 1, 1);
+        buffer.add(0, 2, 2);
+        buffer.drain(new int[2], new long[2], new long[2]);
+
+        buffer.add(1, 3, 3);
+        long[] songIds = new long[2];
+        assertEquals(1, buffer.drain(new int[2], songIds, new long[2]));
+        assertEquals(3, songIds[0]);
+        assertEquals(0, buffer.getDropped());
+    }
+}
@@ -0,0 +1,52 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram_reportsZero() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void percentiles_boundTheLatencies() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) histogram.record(3000000); // 3ms
+        for (int i = 0; i < 10; i++) histogram.record(100000000); // 100ms
+
+        // Within a factor of two of the real values.
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue(p50 >= 3000000 && p50 <= 6000000);
+        long p99 = histogram.getPercentileNanos(99);
+        assertTrue(p99 >= 100000000 && p99 <= 200000000);
+        assertEquals(100000000, histogram.getMaxNanos());
+        assertEquals(12700000, histogram.getMeanNanos());
+    }
+
+    @Test
+    public void percentile_neverExceedsTheMax() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1500000);
+
+        assertEquals(1500000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void negativeLatency_countsAsZero() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+}
@@ -0,0 +1,207 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmarks of the library's hot paths, on synthetic libraries of 1k, 10k and 100k songs: reading
+ * MediaStore rows, sorting, comparing songs, reading rows for binding, diffing lists for the
+ * adapter, searching and building sections. They take a while, so they're skipped unless run with
+ * -Pbenchmark (the "benchmark" system property); the results go to app/build/benchmarks.
+ */
+public class LibraryBenchmarkTest {
+
+    private static final int[] SIZES = {1000, 10000, 100000};
+
+    private static final List<Benchmark.Result> sResults = new ArrayList<>();
+
+    @Before
+    public void onlyWhenAsked() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @AfterClass
+    public static void saveResults() throws Exception {
+        if (sResults.isEmpty()) return;
+
+        Benchmark.save(sResults, new File(System.getProperty("benchmark.dir",
+                "build/benchmarks")));
+    }
+
+    @Test
+    public void readRows() throws Exception {
+        for (int size : SIZES) {
+            final FakeSongCursor cursor = new FakeSongCursor(size, size);
+            final int count = size;
+            run("readRows", size, new Benchmark.Operation() {
+                @Override
+                public Object run() {
+                    SongStore.Builder builder = new SongStore.Builder(count);
+                    LibraryLoader.RowReader reader = new LibraryLoader.RowReader(cursor);
+                    cursor.moveToPosition(-1);
+                    while (cursor.moveToNext()) reader.addTo(builder);
+                    return builder.build();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void sortAll() throws Exception {
+        for (int size : SIZES) {
+            final SongStore store = store(size);
+            run("sortAll", size, new Benchmark.Operation() {
+                @Override
+                public Object run() {
+                    return SongSorter.sortAll(store);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void compareTitles() throws Exception {
+        for (int size : SIZES) {
+            final SongStore store = store(size);
+            run("compareTitles", size, new Benchmark.Operation() {
+                @Override
+                public Object run() {
+                    int sum = 0;
+                    for (int row = 1; row < store.size(); row++) {
+                        sum += SongSorter.compare(store, row - 1, row, SortOrder.TITLE);
+                    }
+                    return sum;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void songEquals() throws Exception {
+        for (int size : SIZES) {
+
+            // Distinct instances of the same songs, as from two scans, so that equals() can't
+            // stop at the identity check.
+            final Song[] songs = songs(store(size));
+            Song.clearPool();
+            final Song[] copies = songs(store(size));
+            run("songEquals", size, new Benchmark.Operation() {
+                @Override
+                public Object run() {
+                    int equal = 0;
+                    for (int i = 0; i < songs.length; i++) {
+                        if (songs[i].equals(copies[i])) equal++;
+                    }
+                    return equal;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void bindRows() throws Exception {
+        for (int size : SIZES) {
+            SongStore store = store(size);
+            final SongList sorted = new IndexedSongList(store,
+                    SongSorter.sort(store, 0, store.size(), SortOrder.ARTIST), store.size());
+            run("bindRows", size, new Benchmark.Operation() {
+                @Override
+                public Object run() {
+
+                    // What SongAdapter reads to bind each row, short of the views themselves.
+                    SongStore store = sorted.getStore();
+                    long sum = 0;
+                    for (int position = 0; position < sorted.size(); position++) {
+                        int row = sorted.getRow(position);
+                        char[] title = store.getTitleChars();
+                        int length = store.getTitleLength(row);
+                        if (length > 0) sum += title[store.getTitleOffset(row)];
+                        sum += store.getArtist(row).length() + store.getAlbumMediaId(row);
+                    }
+                    return sum;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void diffForAdapter() throws Exception {
+        for (int size : SIZES) {
+            final SongStore store = store(size);
+
+            // The same library resorted, as when the user picks another order.
+            final SongList sorted = new IndexedSongList(store,
+                    SongSorter.sort(store, 0, store.size(), SortOrder.ARTIST), store.size());
+            run("diffForAdapter", size, new Benchmark.Operation() {
+                @Override
+                public Object run() {
+                    return SongListDiff.estimateEdits(store, sorted);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void search() throws Exception {
+        for (int size : SIZES) {
+            final SongStore store = store(size);
+            final SearchIndex index = SearchIndex.build(store);
+            run("search", size, new Benchmark.Operation() {
+                @Override
+                public Object run() {
+
+                    // Typing a query a letter at a time.
+                    SearchIndex.Filter filter = index.newFilter(store);
+                    int matches = 0;
+                    for (String query : new String[] {"l", "lo", "lov", "love", "love n"}) {
+                        matches += filter.setQuery(query).size();
+                    }
+                    return matches;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void buildSections() throws Exception {
+        for (int size : SIZES) {
+            SongStore store = store(size);
+            final SongList sorted = new IndexedSongList(store,
+                    SongSorter.sort(store, 0, store.size(), SortOrder.TITLE), store.size());
+            run("buildSections", size, new Benchmark.Operation() {
+                @Override
+                public Object run() {
+                    return SectionIndex.build(sorted, SortOrder.TITLE);
+                }
+            });
+        }
+    }
+
+    // Helper method that runs a benchmark, recording its result.
+    private static void run(String name, int size, Benchmark.Operation operation) {
+        sResults.add(Benchmark.run(name + "/" + size, operation));
+    }
+
+    // Helper method that returns the songs of a store, in row order.
+    private static Song[] songs(SongStore store) {
+        Song[] songs = new Song[store.size()];
+        for (int row = 0; row < songs.length; row++) songs[row] = store.getSong(row);
+        return songs;
+    }
+
+    // Helper method that reads a synthetic library into a store.
+    private static SongStore store(int size) {
+        FakeSongCursor cursor = new FakeSongCursor(size, size);
+        SongStore.Builder builder = new SongStore.Builder(size);
+        LibraryLoader.RowReader reader = new LibraryLoader.RowReader(cursor);
+        while (cursor.moveToNext()) reader.addTo(builder);
+        return builder.build();
+    }
+}
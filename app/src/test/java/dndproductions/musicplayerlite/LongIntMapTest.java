@@ -0,0 +1,49 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LongIntMap}.
+ */
+public class LongIntMapTest {
+
+    @Test
+    public void missingKey_returnsMissing() throws Exception {
+        LongIntMap map = new LongIntMap(4);
+        map.put(7, 1);
+
+        assertEquals(LongIntMap.MISSING, map.get(8));
+        assertFalse(map.containsKey(8));
+    }
+
+    @Test
+    public void put_replacesTheValue() throws Exception {
+        LongIntMap map = new LongIntMap(4);
+        map.put(7, 1);
+        map.put(7, 2);
+
+        assertEquals(1, map.size());
+        assertEquals(2, map.get(7));
+    }
+
+    @Test
+    public void map_growsPastItsCapacity() throws Exception {
+        LongIntMap map = new LongIntMap(4);
+        for (int i = 0; i < 1000; i++) map.put(i * 1024L, i);
+
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) assertEquals(i, map.get(i * 1024L));
+    }
+
+    @Test
+    public void clear_removesEveryKey() throws Exception {
+        LongIntMap map = new LongIntMap(4);
+        map.put(-3, 0);
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertEquals(LongIntMap.MISSING, map.get(-3));
+    }
+}
@@ -0,0 +1,31 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MetadataEnricher}.
+ */
+public class MetadataEnricherTest {
+
+    @Test
+    public void trackNumber_isEncodedLikeMediaStore() throws Exception {
+        assertEquals(7, MetadataEnricher.parseTrackNumber(null, "7"));
+        assertEquals(2003, MetadataEnricher.parseTrackNumber("2/2", "3/12"));
+    }
+
+    @Test
+    public void missingOrOddTrackNumber_isUnknown() throws Exception {
+        assertEquals(0, MetadataEnricher.parseTrackNumber("1", null));
+        assertEquals(0, MetadataEnricher.parseTrackNumber(null, "A1"));
+        assertEquals(0, MetadataEnricher.parseTrackNumber(null, "1001"));
+    }
+
+    @Test
+    public void number_isReadUpToTheFirstNonDigit() throws Exception {
+        assertEquals(215000, MetadataEnricher.parseNumber(" 215000"));
+        assertEquals(4, MetadataEnricher.parseNumber("4/9"));
+        assertEquals(0, MetadataEnricher.parseNumber(""));
+    }
+}
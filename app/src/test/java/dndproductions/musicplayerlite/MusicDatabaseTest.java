@@ -0,0 +1,93 @@
+package dndproductions.musicplayerlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_POSITION;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_SONG_ID;
+import static dndproductions.musicplayerlite.MusicDatabase.TABLE_QUEUE;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MusicDatabase}, against an in-memory database.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25, manifest = Config.NONE)
+public class MusicDatabaseTest {
+
+    private MusicDatabase mDatabase;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new MusicDatabase(RuntimeEnvironment.application, null);
+        mDb = mDatabase.getWritableDatabase();
+
+        // Songs 100 to 104 at positions 0 to 4.
+        for (int position = 0; position < 5; position++) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_POSITION, position);
+            values.put(COLUMN_SONG_ID, 100 + position);
+            mDb.insert(TABLE_QUEUE, null, values);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.close();
+    }
+
+    @Test
+    public void shiftPositions_forwardOverlappingRange_keepsOrder() throws Exception {
+        MusicDatabase.shiftPositions(mDb, TABLE_QUEUE, null, 1, 4, 2);
+
+        assertQueue(new long[] {0, 3, 4, 5, 6}, new long[] {100, 101, 102, 103, 104});
+    }
+
+    @Test
+    public void shiftPositions_backwardIntoGap_keepsOrder() throws Exception {
+        mDb.delete(TABLE_QUEUE, COLUMN_POSITION + " = 1", null);
+        MusicDatabase.shiftPositions(mDb, TABLE_QUEUE, null, 2, 4, -1);
+
+        assertQueue(new long[] {0, 1, 2, 3}, new long[] {100, 102, 103, 104});
+    }
+
+    @Test
+    public void shiftPositions_leavesPositionsOutsideRange() throws Exception {
+        MusicDatabase.shiftPositions(mDb, TABLE_QUEUE, null, 4, 4, 10);
+
+        assertQueue(new long[] {0, 1, 2, 3, 14}, new long[] {100, 101, 102, 103, 104});
+    }
+
+    @Test
+    public void shiftPositions_emptyRangeOrNoOffset_changesNothing() throws Exception {
+        MusicDatabase.shiftPositions(mDb, TABLE_QUEUE, null, 3, 2, 5);
+        MusicDatabase.shiftPositions(mDb, TABLE_QUEUE, null, 0, 4, 0);
+
+        assertQueue(new long[] {0, 1, 2, 3, 4}, new long[] {100, 101, 102, 103, 104});
+    }
+
+    // Helper method that checks the positions and songs of the queue table, in position order.
+    private void assertQueue(long[] positions, long[] songIds) {
+        Cursor cursor = mDb.rawQuery("SELECT " + COLUMN_POSITION + ", " + COLUMN_SONG_ID
+                + " FROM " + TABLE_QUEUE + " ORDER BY " + COLUMN_POSITION, null);
+        try {
+            assertEquals(positions.length, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals(positions[i], cursor.getLong(0));
+                assertEquals(songIds[i], cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package dndproductions.musicplayerlite;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_COMPLETIONS;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_ID;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_LAST_PLAYED;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_PLAYS;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_SKIPS;
+import static dndproductions.musicplayerlite.MusicDatabase.COLUMN_SONG_ID;
+import static dndproductions.musicplayerlite.MusicDatabase.TABLE_HISTORY;
+import static dndproductions.musicplayerlite.MusicDatabase.TABLE_PLAY_COUNTS;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PlayHistory}, against an in-memory database.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25, manifest = Config.NONE)
+public class PlayHistoryTest {
+
+    private MusicDatabase mDatabase;
+    private PlayHistory mHistory;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new MusicDatabase(RuntimeEnvironment.application, null);
+        mHistory = new PlayHistory(mDatabase, new DirectExecutor());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mHistory.close();
+        mDatabase.close();
+    }
+
+    @Test
+    public void write_addsUpTotalsPerSong() throws Exception {
+        mHistory.record(PlayHistory.START, 1, 100);
+        mHistory.record(PlayHistory.COMPLETE, 1, 200);
+        mHistory.record(PlayHistory.START, 2, 300);
+        mHistory.record(PlayHistory.SKIP, 2, 310);
+        mHistory.record(PlayHistory.START, 1, 400);
+        mHistory.flush();
+
+        assertTotals(1, 2, 1, 0, 400);
+        assertTotals(2, 1, 0, 1, 300);
+        assertEquals(5, DatabaseUtils.queryNumEntries(mDatabase.getReadableDatabase(),
+                TABLE_HISTORY));
+    }
+
+    @Test
+    public void write_acrossBatches_keepsCountingAndLatestStart() throws Exception {
+        mHistory.record(PlayHistory.START, 1, 500);
+        mHistory.flush();
+
+        // A later batch carrying an older start (e.g. a clock change) doesn't move it back.
+        mHistory.record(PlayHistory.START, 1, 200);
+        mHistory.record(PlayHistory.SKIP, 1, 210);
+        mHistory.flush();
+
+        assertTotals(1, 2, 0, 1, 500);
+
+        mHistory.record(PlayHistory.START, 1, 900);
+        mHistory.flush();
+
+        assertTotals(1, 3, 0, 1, 900);
+    }
+
+    @Test
+    public void write_withoutStart_leavesLastPlayed() throws Exception {
+        mHistory.record(PlayHistory.START, 1, 100);
+        mHistory.record(PlayHistory.COMPLETE, 1, 900);
+        mHistory.flush();
+
+        assertTotals(1, 1, 1, 0, 100);
+    }
+
+    @Test
+    public void write_trimsLogToMostRecentEvents() throws Exception {
+        int count = PlayHistory.MAX_LOG_SIZE + 50;
+        for (int i = 0; i < count; i++) mHistory.record(PlayHistory.START, 1, i);
+        mHistory.flush();
+
+        assertEquals(PlayHistory.MAX_LOG_SIZE, DatabaseUtils.queryNumEntries(
+                mDatabase.getReadableDatabase(), TABLE_HISTORY));
+
+        // The oldest events went, while the totals kept counting them.
+        Cursor cursor = mDatabase.getReadableDatabase().rawQuery("SELECT MIN(" + COLUMN_ID
+                + ") FROM " + TABLE_HISTORY, null);
+        try {
+            cursor.moveToFirst();
+            assertEquals(count - PlayHistory.MAX_LOG_SIZE + 1, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+        assertTotals(1, count, 0, 0, count - 1);
+    }
+
+    // Helper method that checks the totals of a song.
+    private void assertTotals(long songId, long plays, long completions, long skips,
+                              long lastPlayed) {
+        Cursor cursor = mDatabase.getReadableDatabase().query(TABLE_PLAY_COUNTS,
+                new String[] {COLUMN_PLAYS, COLUMN_COMPLETIONS, COLUMN_SKIPS, COLUMN_LAST_PLAYED},
+                COLUMN_SONG_ID + " = ?", new String[] {Long.toString(songId)}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(plays, cursor.getLong(0));
+            assertEquals(completions, cursor.getLong(1));
+            assertEquals(skips, cursor.getLong(2));
+            assertEquals(lastPlayed, cursor.getLong(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Executor running each task straight away, so that batches are written by the time
+     * {@link PlayHistory#flush()} returns.
+     */
+    private static class DirectExecutor extends AbstractExecutorService {
+        private boolean mShutdown;
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public void shutdown() {
+            mShutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            mShutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return mShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return mShutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return mShutdown;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PlayQueue}, against an in-memory database.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25, manifest = Config.NONE)
+public class PlayQueueTest {
+
+    private MusicDatabase mDatabase;
+    private PlayQueue mQueue;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new MusicDatabase(RuntimeEnvironment.application, null);
+        mQueue = new PlayQueue(mDatabase);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.close();
+    }
+
+    @Test
+    public void getSongId_acrossWindows_readsEachSong() throws Exception {
+        long[] songIds = range(1000, PlayQueue.WINDOW_SIZE * 2 + 10);
+        mQueue.addAll(songIds);
+
+        assertEquals(songIds.length, mQueue.size());
+
+        // Forwards, backwards and jumping between windows.
+        for (int i = 0; i < songIds.length; i++) assertEquals(songIds[i], mQueue.getSongId(i));
+        for (int i = songIds.length - 1; i >= 0; i--) {
+            assertEquals(songIds[i], mQueue.getSongId(i));
+        }
+        assertEquals(songIds[3], mQueue.getSongId(3));
+        assertEquals(songIds[songIds.length - 1], mQueue.getSongId(songIds.length - 1));
+    }
+
+    @Test
+    public void addNext_withoutRoomBefore_shiftsQueueBack() throws Exception {
+        mQueue.addAll(new long[] {1, 2, 3});
+        mQueue.getSongId(0);
+        mQueue.addNext(new long[] {10, 11});
+
+        assertQueue(10, 11, 1, 2, 3);
+    }
+
+    @Test
+    public void addNext_afterPolls_usesRoomBefore() throws Exception {
+        mQueue.addAll(new long[] {1, 2, 3, 4});
+        assertEquals(1, mQueue.poll());
+        assertEquals(2, mQueue.poll());
+        mQueue.addNext(new long[] {10, 11});
+
+        assertQueue(10, 11, 3, 4);
+    }
+
+    @Test
+    public void addNext_withLittleRoomBefore_shiftsQueueBack() throws Exception {
+        mQueue.addAll(new long[] {1, 2, 3});
+        mQueue.poll();
+        mQueue.addNext(new long[] {10, 11, 12});
+
+        assertQueue(10, 11, 12, 2, 3);
+    }
+
+    @Test
+    public void poll_takesSongsInOrder() throws Exception {
+        long[] songIds = range(1, PlayQueue.WINDOW_SIZE + 3);
+        mQueue.addAll(songIds);
+
+        for (long songId : songIds) assertEquals(songId, mQueue.poll());
+        assertEquals(0, mQueue.size());
+        assertEquals(-1, mQueue.poll());
+    }
+
+    @Test
+    public void newQueue_readsStoredQueue() throws Exception {
+        mQueue.addAll(new long[] {1, 2, 3});
+        mQueue.poll();
+        mQueue.addNext(new long[] {10});
+
+        mQueue = new PlayQueue(mDatabase);
+        assertQueue(10, 2, 3);
+    }
+
+    @Test
+    public void move_forward_closesUpBehind() throws Exception {
+        mQueue.addAll(new long[] {1, 2, 3, 4, 5});
+        mQueue.move(1, 3);
+
+        assertQueue(1, 3, 4, 2, 5);
+    }
+
+    @Test
+    public void move_backward_makesRoomAhead() throws Exception {
+        mQueue.addAll(new long[] {1, 2, 3, 4, 5});
+        mQueue.poll();
+        mQueue.move(3, 0);
+
+        assertQueue(5, 2, 3, 4);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void move_outOfQueue_throws() throws Exception {
+        mQueue.addAll(new long[] {1, 2, 3});
+        mQueue.move(0, 3);
+    }
+
+    @Test
+    public void remove_closesGap() throws Exception {
+        mQueue.addAll(new long[] {1, 2, 3, 4});
+        mQueue.remove(2);
+        mQueue.remove(0);
+
+        assertQueue(2, 4);
+
+        // The gap is gone from the database too.
+        mQueue = new PlayQueue(mDatabase);
+        mQueue.addNext(new long[] {10});
+        assertQueue(10, 2, 4);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void remove_outOfQueue_throws() throws Exception {
+        mQueue.addAll(new long[] {1});
+        mQueue.remove(-1);
+    }
+
+    @Test
+    public void clear_emptiesQueue() throws Exception {
+        mQueue.addAll(new long[] {1, 2, 3});
+        mQueue.clear();
+        mQueue.addAll(new long[] {4});
+
+        assertQueue(4);
+    }
+
+    // Helper method that checks the songs of the queue, in order.
+    private void assertQueue(long... songIds) {
+        assertEquals(songIds.length, mQueue.size());
+        for (int i = 0; i < songIds.length; i++) assertEquals(songIds[i], mQueue.getSongId(i));
+    }
+
+    // Helper method that returns consecutive song ids.
+    private static long[] range(long first, int count) {
+        long[] songIds = new long[count];
+        for (int i = 0; i < count; i++) songIds[i] = first + i;
+        return songIds;
+    }
+}
@@ -0,0 +1,64 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PlaybackClock}.
+ */
+public class PlaybackClockTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void running_extrapolatesFromTheAnchor() throws Exception {
+        PlaybackClock clock = new PlaybackClock();
+
+        clock.start(180000, 0, 1000 * MS);
+
+        assertEquals(180000, clock.getDuration());
+        assertEquals(0, clock.getPosition(1000 * MS));
+        assertEquals(2500, clock.getPosition(3500 * MS));
+    }
+
+    @Test
+    public void paused_holdsThePosition() throws Exception {
+        PlaybackClock clock = new PlaybackClock();
+
+        clock.start(180000, 0, 0);
+        clock.sync(4000, false, 4000 * MS);
+
+        assertEquals(4000, clock.getPosition(60000 * MS));
+    }
+
+    @Test
+    public void seek_reanchors() throws Exception {
+        PlaybackClock clock = new PlaybackClock();
+
+        clock.start(180000, 0, 0);
+        clock.sync(90000, true, 1000 * MS);
+
+        assertEquals(91000, clock.getPosition(2000 * MS));
+    }
+
+    @Test
+    public void position_isCappedAtTheDuration() throws Exception {
+        PlaybackClock clock = new PlaybackClock();
+
+        clock.start(3000, 0, 0);
+
+        assertEquals(3000, clock.getPosition(10000 * MS));
+    }
+
+    @Test
+    public void reset_forgetsTheSong() throws Exception {
+        PlaybackClock clock = new PlaybackClock();
+
+        clock.start(3000, 1000, 0);
+        clock.reset();
+
+        assertEquals(0, clock.getDuration());
+        assertEquals(0, clock.getPosition(5000 * MS));
+    }
+}
@@ -0,0 +1,115 @@
+package dndproductions.musicplayerlite;
+
+import android.media.MediaPlayer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowMediaPlayer;
+import org.robolectric.shadows.util.DataSource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PlaybackEngine}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25, manifest = Config.NONE)
+public class PlaybackEngineTest {
+
+    // Song whose track can't be opened, e.g. deleted since it was queued.
+    private static final long MISSING_SONG_ID = 13;
+
+    private RecordingCallback mCallback;
+    private PlaybackEngine mEngine;
+
+    // Number of tracks the engine opened.
+    private int mOpened;
+
+    @Before
+    public void setUp() throws Exception {
+        mCallback = new RecordingCallback();
+        mEngine = new PlaybackEngine(RuntimeEnvironment.application,
+                new TrackCache(RuntimeEnvironment.application), mCallback) {
+            @Override
+            void setDataSource(MediaPlayer player, long songId) throws IOException {
+                if (songId == MISSING_SONG_ID) throw new FileNotFoundException("Deleted");
+
+                String path = "song" + songId;
+                ShadowMediaPlayer.addMediaInfo(DataSource.toDataSource(path),
+                        new ShadowMediaPlayer.MediaInfo(180000, 0));
+                player.setDataSource(path);
+                mOpened++;
+            }
+        };
+    }
+
+    @Test
+    public void play_reportsTrackThatFailsToOpen() throws Exception {
+        mEngine.play(MISSING_SONG_ID, 2, 0);
+
+        assertEquals(1, mCallback.errors);
+        assertFalse(mEngine.isPlaying());
+        assertEquals(0, mEngine.getDuration());
+    }
+
+    @Test
+    public void prepare_reportsTrackThatFailsToOpen() throws Exception {
+        mEngine.prepare(MISSING_SONG_ID, 0, 5000);
+
+        assertEquals(1, mCallback.errors);
+        assertEquals(0, mEngine.getPosition());
+    }
+
+    @Test
+    public void setNext_sameSongAtOtherPosition_keepsPreparedPlayer() throws Exception {
+        mEngine.play(20, 0, 0);
+        mEngine.setNext(21, 1);
+        mEngine.setNext(21, 4);
+
+        assertEquals(2, mOpened);
+        assertEquals(4, mEngine.getNextPosition());
+    }
+
+    @Test
+    public void setNext_otherSong_opensIt() throws Exception {
+        mEngine.play(20, 0, 0);
+        mEngine.setNext(21, 1);
+        mEngine.setNext(22, 1);
+
+        assertEquals(3, mOpened);
+        assertEquals(1, mEngine.getNextPosition());
+    }
+
+    // Counts the engine's errors.
+    private static class RecordingCallback implements PlaybackEngine.Callback {
+        int errors;
+
+        @Override
+        public void onTrackStarted(int position) {
+        }
+
+        @Override
+        public void onTrackPrepared(int position) {
+        }
+
+        @Override
+        public void onTrackChanged(int position) {
+        }
+
+        @Override
+        public void onPlaybackCompleted() {
+        }
+
+        @Override
+        public void onPlaybackError() {
+            errors++;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PlaybackSession}.
+ */
+public class PlaybackSessionTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void writtenSession_readsBackEqual() throws Exception {
+        ShuffleQueue queue = new ShuffleQueue(7);
+        queue.reset(5, 2);
+        queue.next();
+        queue.next();
+        PlaybackSession session = new PlaybackSession(new long[] {40, 12, 9000000000L, 13, 1}, 3,
+                61234, true, queue.getOrder(), queue.getGenerated(), queue.getCursor());
+
+        File file = mFolder.newFile("session.bin");
+        session.write(file);
+        PlaybackSession read = PlaybackSession.read(file);
+
+        assertEquals(session, read);
+        assertEquals(13, read.getSongId());
+
+        // The restored shuffle carries on where the saved one was.
+        ShuffleQueue restored = new ShuffleQueue(1);
+        restored.restore(read.getShuffleOrder(), read.getShuffleGenerated(),
+                read.getShuffleCursor());
+        assertEquals(queue.current(), restored.current());
+        assertEquals(queue.previous(), restored.previous());
+    }
+
+    @Test
+    public void emptyShuffle_keepsCursorBeforeFirstSong() throws Exception {
+        PlaybackSession session = new PlaybackSession(new long[] {3}, 0, 0, false, new int[0], 0,
+                -1);
+
+        File file = mFolder.newFile("session.bin");
+        session.write(file);
+
+        assertEquals(-1, PlaybackSession.read(file).getShuffleCursor());
+    }
+
+    @Test
+    public void largeQueue_takesAFewBytesPerSong() throws Exception {
+        Random random = new Random(3);
+        long[] ids = new long[10000];
+        for (int i = 0; i < ids.length; i++) ids[i] = 20000 + random.nextInt(20000);
+
+        File file = mFolder.newFile("session.bin");
+        new PlaybackSession(ids, 0, 0, false, new int[0], 0, -1).write(file);
+
+        assertTrue(file.length() < ids.length * 4);
+        assertArrayEquals(ids, PlaybackSession.read(file).getSongIds());
+    }
+
+    @Test
+    public void matches_requiresSameIdsInOrder() throws Exception {
+        SongStore store = new SongStore.Builder(3)
+                .add(5, "A", "X", "Y", 0, 0, 0)
+                .add(6, "B", "X", "Y", 0, 0, 0)
+                .add(7, "C", "X", "Y", 0, 0, 0)
+                .build();
+
+        assertTrue(new PlaybackSession(new long[] {5, 6, 7}, 0, 0, false, new int[0], 0, -1)
+                .matches(store));
+        assertFalse(new PlaybackSession(new long[] {5, 7, 6}, 0, 0, false, new int[0], 0, -1)
+                .matches(store));
+        assertFalse(new PlaybackSession(new long[] {5, 6}, 0, 0, false, new int[0], 0, -1)
+                .matches(store));
+    }
+
+    @Test
+    public void missingFile_readsAsNoSession() throws Exception {
+        assertNull(PlaybackSession.read(new File(mFolder.getRoot(), "none.bin")));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptFile_isRejected() throws Exception {
+        File file = mFolder.newFile("session.bin");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        out.close();
+
+        PlaybackSession.read(file);
+    }
+}
@@ -0,0 +1,75 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PlaybackStateMachine}.
+ */
+public class PlaybackStateMachineTest {
+
+    @Test
+    public void allowedTransitions_areReported() throws Exception {
+        PlaybackStateMachine machine = new PlaybackStateMachine();
+        final List<String> changes = new ArrayList<>();
+        machine.addListener(new PlaybackStateMachine.Listener() {
+            @Override
+            public void onStateChanged(PlaybackState previous, PlaybackState state) {
+                changes.add(previous + ">" + state);
+            }
+        });
+
+        assertTrue(machine.moveTo(PlaybackState.PREPARING));
+        assertTrue(machine.moveTo(PlaybackState.PLAYING));
+        assertTrue(machine.moveTo(PlaybackState.PAUSED));
+
+        assertEquals(PlaybackState.PAUSED, machine.getState());
+        assertEquals(3, changes.size());
+        assertEquals("PLAYING>PAUSED", changes.get(2));
+    }
+
+    @Test
+    public void preparedSong_canBeLeftPaused() throws Exception {
+        PlaybackStateMachine machine = new PlaybackStateMachine();
+
+        machine.moveTo(PlaybackState.PREPARING);
+        assertTrue(machine.moveTo(PlaybackState.PAUSED));
+        assertTrue(machine.getState().hasTrack());
+    }
+
+    @Test
+    public void disallowedTransition_leavesTheStateAlone() throws Exception {
+        PlaybackStateMachine machine = new PlaybackStateMachine();
+
+        // Nothing can be paused or played before a song was prepared.
+        assertFalse(machine.moveTo(PlaybackState.PAUSED));
+        assertFalse(machine.moveTo(PlaybackState.PLAYING));
+        assertEquals(PlaybackState.IDLE, machine.getState());
+
+        // A failed song can't be paused either.
+        machine.moveTo(PlaybackState.PREPARING);
+        machine.moveTo(PlaybackState.ERROR);
+        assertFalse(machine.moveTo(PlaybackState.PAUSED));
+        assertEquals(PlaybackState.ERROR, machine.getState());
+    }
+
+    @Test
+    public void movingToTheCurrentState_isSilent() throws Exception {
+        PlaybackStateMachine machine = new PlaybackStateMachine();
+        final int[] count = new int[1];
+        machine.addListener(new PlaybackStateMachine.Listener() {
+            @Override
+            public void onStateChanged(PlaybackState previous, PlaybackState state) {
+                count[0]++;
+            }
+        });
+
+        machine.moveTo(PlaybackState.PREPARING);
+        assertTrue(machine.moveTo(PlaybackState.PREPARING));
+        assertEquals(1, count[0]);
+    }
+}
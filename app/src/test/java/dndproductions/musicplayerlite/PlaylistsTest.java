@@ -0,0 +1,152 @@
+package dndproductions.musicplayerlite;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link Playlists}, against an in-memory database.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25, manifest = Config.NONE)
+public class PlaylistsTest {
+
+    private MusicDatabase mDatabase;
+    private Playlists mPlaylists;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new MusicDatabase(RuntimeEnvironment.application, null);
+        mPlaylists = new Playlists(mDatabase);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.close();
+    }
+
+    @Test
+    public void create_takenName_returnsMinusOne() throws Exception {
+        assertTrue(mPlaylists.create("Road Trip") >= 0);
+        assertEquals(-1, mPlaylists.create("road trip"));
+    }
+
+    @Test
+    public void query_listsPlaylistsByName() throws Exception {
+        mPlaylists.create("b");
+        mPlaylists.create("a");
+
+        Cursor cursor = mPlaylists.query();
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("a", cursor.getString(cursor.getColumnIndexOrThrow("name")));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void rename_takenName_keepsName() throws Exception {
+        long first = mPlaylists.create("first");
+        mPlaylists.create("second");
+
+        assertFalse(mPlaylists.rename(first, "second"));
+        assertTrue(mPlaylists.rename(first, "third"));
+        assertEquals(-1, mPlaylists.create("third"));
+    }
+
+    @Test
+    public void addAll_appendsInOrder() throws Exception {
+        long playlist = mPlaylists.create("p");
+        mPlaylists.addAll(playlist, new long[] {1, 2, 3});
+        mPlaylists.addAll(playlist, new long[] {4, 5});
+
+        assertPlaylist(playlist, 1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void read_inWindows_readsEachSong() throws Exception {
+        long playlist = mPlaylists.create("p");
+        mPlaylists.addAll(playlist, new long[] {1, 2, 3, 4, 5});
+
+        long[] window = new long[2];
+        assertEquals(2, mPlaylists.read(playlist, 2, window));
+        assertArrayEquals(new long[] {3, 4}, window);
+        assertEquals(1, mPlaylists.read(playlist, 4, window));
+        assertEquals(5, window[0]);
+    }
+
+    @Test
+    public void move_forwardAndBackward_keepsOtherPlaylists() throws Exception {
+        long playlist = mPlaylists.create("p");
+        long other = mPlaylists.create("other");
+        mPlaylists.addAll(playlist, new long[] {1, 2, 3, 4, 5});
+        mPlaylists.addAll(other, new long[] {10, 11, 12, 13, 14});
+
+        mPlaylists.move(playlist, 1, 3);
+        assertPlaylist(playlist, 1, 3, 4, 2, 5);
+        mPlaylists.move(playlist, 4, 0);
+        assertPlaylist(playlist, 5, 1, 3, 4, 2);
+
+        assertPlaylist(other, 10, 11, 12, 13, 14);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void move_outOfPlaylist_throws() throws Exception {
+        long playlist = mPlaylists.create("p");
+        mPlaylists.addAll(playlist, new long[] {1, 2});
+        mPlaylists.move(playlist, 0, 2);
+    }
+
+    @Test
+    public void remove_closesGap() throws Exception {
+        long playlist = mPlaylists.create("p");
+        long other = mPlaylists.create("other");
+        mPlaylists.addAll(playlist, new long[] {1, 2, 3, 4});
+        mPlaylists.addAll(other, new long[] {10, 11, 12});
+
+        mPlaylists.remove(playlist, 1);
+        assertPlaylist(playlist, 1, 3, 4);
+
+        // New songs go after the closed-up ones.
+        mPlaylists.addAll(playlist, new long[] {5});
+        assertPlaylist(playlist, 1, 3, 4, 5);
+        assertPlaylist(other, 10, 11, 12);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void remove_outOfPlaylist_throws() throws Exception {
+        long playlist = mPlaylists.create("p");
+        mPlaylists.addAll(playlist, new long[] {1});
+        mPlaylists.remove(playlist, -1);
+    }
+
+    @Test
+    public void delete_deletesSongsToo() throws Exception {
+        long playlist = mPlaylists.create("p");
+        mPlaylists.addAll(playlist, new long[] {1, 2, 3});
+        mPlaylists.delete(playlist);
+
+        assertEquals(0, mPlaylists.size(playlist));
+        assertEquals(0, DatabaseUtils.queryNumEntries(
+                mDatabase.getReadableDatabase(), MusicDatabase.TABLE_PLAYLIST_SONGS));
+    }
+
+    // Helper method that checks the songs of a playlist, in order.
+    private void assertPlaylist(long playlistId, long... songIds) {
+        assertEquals(songIds.length, mPlaylists.size(playlistId));
+        long[] read = new long[songIds.length + 1];
+        assertEquals(songIds.length, mPlaylists.read(playlistId, 0, read));
+        for (int i = 0; i < songIds.length; i++) assertEquals(songIds[i], read[i]);
+    }
+}
@@ -0,0 +1,95 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SearchIndex}.
+ */
+public class SearchIndexTest {
+
+    private static SongStore store() {
+        return new SongStore.Builder(4)
+                .add(1, "Yesterday", "The Beatles", "Help!", 0, 0, 0)
+                .add(2, "Beat It", "Michael Jackson", "Thriller", 0, 0, 0)
+                .add(3, "Café del Mar", "Energy 52", "Café del Mar", 0, 0, 0)
+                .add(4, "Here Comes the Sun", "The Beatles", "Abbey Road", 0, 0, 0)
+                .build();
+    }
+
+    private static List<Long> ids(SongList songs) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < songs.size(); i++) {
+            ids.add(songs.getStore().getId(songs.getRow(i)));
+        }
+        return ids;
+    }
+
+    @Test
+    public void prefix_matchesTitleAndArtistWords() throws Exception {
+        SongStore store = store();
+        SearchIndex.Filter filter = SearchIndex.build(store).newFilter(store);
+
+        // "beat" starts a title word of song 2, and an artist word of songs 1 and 4.
+        assertEquals(asList(1, 2, 4), ids(filter.setQuery("Beat")));
+    }
+
+    @Test
+    public void allTerms_mustMatch() throws Exception {
+        SongStore store = store();
+        SearchIndex.Filter filter = SearchIndex.build(store).newFilter(store);
+
+        assertEquals(asList(4), ids(filter.setQuery("beat sun")));
+        assertEquals(asList(), ids(filter.setQuery("beat sun moon")));
+    }
+
+    @Test
+    public void accentsAndCase_areFolded() throws Exception {
+        SongStore store = store();
+        SearchIndex.Filter filter = SearchIndex.build(store).newFilter(store);
+
+        assertEquals(asList(3), ids(filter.setQuery("CAFE")));
+        assertEquals(asList(3), ids(filter.setQuery("café")));
+    }
+
+    @Test
+    public void typingAndErasing_giveTheSameResultsAsFreshQueries() throws Exception {
+        SongStore store = store();
+        SearchIndex index = SearchIndex.build(store);
+        SearchIndex.Filter typing = index.newFilter(store);
+
+        String[] keystrokes = {"t", "th", "the", "the ", "the b", "the be", "the b", "the", "th",
+                "", "h", "he", "her"};
+        for (String query : keystrokes) {
+            assertEquals(query, ids(index.newFilter(store).setQuery(query)),
+                    ids(typing.setQuery(query)));
+        }
+    }
+
+    @Test
+    public void results_keepTheListOrder() throws Exception {
+        SongStore store = store();
+        SearchIndex index = SearchIndex.build(store);
+
+        SongList reversed = new IndexedSongList(store, new int[]{3, 2, 1, 0}, 4);
+        assertEquals(asList(4, 2, 1), ids(index.newFilter(reversed).setQuery("be")));
+    }
+
+    @Test
+    public void blankQuery_returnsTheWholeList() throws Exception {
+        SongStore store = store();
+        SearchIndex.Filter filter = SearchIndex.build(store).newFilter(store);
+
+        assertSame(store, filter.setQuery("  "));
+    }
+
+    private static List<Long> asList(long... ids) {
+        List<Long> list = new ArrayList<>();
+        for (long id : ids) list.add(id);
+        return list;
+    }
+}
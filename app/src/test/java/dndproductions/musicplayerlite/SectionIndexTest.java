@@ -0,0 +1,52 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SectionIndex}.
+ */
+public class SectionIndexTest {
+
+    private static SongStore store(String... titles) {
+        SongStore.Builder builder = new SongStore.Builder(titles.length);
+        for (int i = 0; i < titles.length; i++) {
+            builder.add(i, titles[i], "Artist", "Album", 0, 0, 0);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void sections_startAtEachNewInitial() throws Exception {
+        SongStore store = store("1999", "abc", "Apple", "Éclair", "echo", "Zebra");
+        SectionIndex sections = SectionIndex.build(store, SortOrder.TITLE);
+
+        assertArrayEquals(new Object[]{"#", "A", "E", "Z"}, sections.getSections());
+        assertEquals(0, sections.getPositionForSection(0));
+        assertEquals(1, sections.getPositionForSection(1));
+        assertEquals(3, sections.getPositionForSection(2));
+        assertEquals(5, sections.getPositionForSection(3));
+    }
+
+    @Test
+    public void positions_mapBackToTheirSection() throws Exception {
+        SongStore store = store("abc", "Apple", "Éclair", "echo", "Zebra");
+        SectionIndex sections = SectionIndex.build(store, SortOrder.TITLE);
+
+        assertEquals(0, sections.getSectionForPosition(0));
+        assertEquals(0, sections.getSectionForPosition(1));
+        assertEquals(1, sections.getSectionForPosition(2));
+        assertEquals(1, sections.getSectionForPosition(3));
+        assertEquals(2, sections.getSectionForPosition(4));
+    }
+
+    @Test
+    public void emptyList_hasNoSections() throws Exception {
+        SectionIndex sections = SectionIndex.build(SongStore.EMPTY, SortOrder.TITLE);
+
+        assertEquals(0, sections.size());
+        assertEquals(0, sections.getPositionForSection(3));
+        assertEquals(0, sections.getSectionForPosition(0));
+    }
+}
@@ -0,0 +1,118 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ShuffleQueue}.
+ */
+public class ShuffleQueueTest {
+
+    @Test
+    public void cycle_playsEverySongOnce() throws Exception {
+        ShuffleQueue queue = new ShuffleQueue(42);
+        queue.reset(100, 7);
+
+        boolean[] played = new boolean[100];
+        played[7] = true;
+        for (int i = 1; i < 100; i++) {
+            int position = queue.next();
+            assertFalse("Repeated " + position, played[position]);
+            played[position] = true;
+        }
+    }
+
+    @Test
+    public void newCycle_doesNotRepeatTheLastSong() throws Exception {
+        for (long seed = 0; seed < 50; seed++) {
+            ShuffleQueue queue = new ShuffleQueue(seed);
+            queue.reset(3, 0);
+            queue.next();
+            int last = queue.next();
+
+            assertNotEquals(last, queue.next());
+        }
+    }
+
+    @Test
+    public void singleSong_repeatsWithoutSpinning() throws Exception {
+        ShuffleQueue queue = new ShuffleQueue(1);
+        queue.reset(1, 0);
+
+        assertEquals(0, queue.next());
+        assertEquals(0, queue.next());
+    }
+
+    @Test
+    public void previous_walksBackThroughHistory() throws Exception {
+        ShuffleQueue queue = new ShuffleQueue(3);
+        queue.reset(10, 4);
+        int first = queue.next();
+        int second = queue.next();
+
+        assertEquals(first, queue.previous());
+        assertEquals(4, queue.previous());
+        assertEquals(-1, queue.previous());
+
+        // Going forward again replays the same order.
+        assertEquals(first, queue.next());
+        assertEquals(second, queue.next());
+    }
+
+    @Test
+    public void peekNext_atEndOfCycle_keepsCurrentAndHistory() throws Exception {
+        ShuffleQueue queue = new ShuffleQueue(11);
+        queue.reset(4, 2);
+        int[] played = {2, queue.next(), queue.next(), queue.next()};
+
+        int peeked = queue.peekNext();
+        assertEquals(peeked, queue.peekNext());
+        assertEquals(played[3], queue.current());
+        assertEquals(3, queue.getCursor());
+
+        assertEquals(played[2], queue.previous());
+        assertEquals(played[1], queue.previous());
+    }
+
+    @Test
+    public void next_atEndOfCycle_movesToPeekedSong() throws Exception {
+        for (long seed = 0; seed < 20; seed++) {
+            ShuffleQueue queue = new ShuffleQueue(seed);
+            queue.reset(5, 0);
+            for (int i = 1; i < 5; i++) queue.next();
+
+            int peeked = queue.peekNext();
+            assertEquals(peeked, queue.next());
+            assertEquals(peeked, queue.current());
+            assertEquals(-1, queue.previous());
+        }
+    }
+
+    @Test
+    public void sameSeed_reproducesTheOrder() throws Exception {
+        ShuffleQueue a = new ShuffleQueue(99);
+        ShuffleQueue b = new ShuffleQueue(99);
+        a.reset(50, -1);
+        b.reset(50, -1);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(a.next(), b.next());
+        }
+    }
+
+    @Test
+    public void grow_addsSongsToThePool() throws Exception {
+        ShuffleQueue queue = new ShuffleQueue(5);
+        queue.reset(2, 0);
+        queue.grow(5);
+
+        boolean[] played = new boolean[5];
+        played[0] = true;
+        for (int i = 1; i < 5; i++) {
+            int position = queue.next();
+            assertFalse(played[position]);
+            played[position] = true;
+        }
+    }
+}
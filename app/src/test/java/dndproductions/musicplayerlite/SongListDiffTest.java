@@ -0,0 +1,56 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SongListDiff}.
+ */
+public class SongListDiffTest {
+
+    private static SongStore store(long... ids) {
+        SongStore.Builder builder = new SongStore.Builder(ids.length);
+        for (long id : ids) builder.add(id, "Song " + id, "Artist", "Album", 0, 0, 0);
+        return builder.build();
+    }
+
+    @Test
+    public void sameSongs_needNoEdits() throws Exception {
+        assertEquals(0, SongListDiff.estimateEdits(store(1, 2, 3), store(1, 2, 3)));
+    }
+
+    @Test
+    public void addedAndRemovedSongs_areCounted() throws Exception {
+
+        // 2 was removed, and 4 and 5 added.
+        assertEquals(3, SongListDiff.estimateEdits(store(1, 2, 3), store(1, 4, 3, 5)));
+    }
+
+    @Test
+    public void reorderedSongs_areCounted() throws Exception {
+        SongStore store = store(1, 2, 3, 4);
+        SongList reversed = new IndexedSongList(store, new int[]{3, 2, 1, 0}, 4);
+
+        assertEquals(3, SongListDiff.estimateEdits(store, reversed));
+    }
+
+    @Test
+    public void isAppended_songsAddedAtEnd_isTrue() throws Exception {
+        assertTrue(SongListDiff.isAppended(store(1, 2), store(1, 2, 3, 4)));
+        assertTrue(SongListDiff.isAppended(store(1, 2), store(1, 2)));
+    }
+
+    @Test
+    public void isAppended_reorderedOrInsertedSongs_isFalse() throws Exception {
+        SongStore store = store(1, 2, 3);
+        SongList reversed = new IndexedSongList(store, new int[]{2, 1, 0}, 3);
+
+        // Same size but a new order, as after a sort.
+        assertFalse(SongListDiff.isAppended(store, reversed));
+
+        // Larger, but not by appending.
+        assertFalse(SongListDiff.isAppended(store(1, 2, 3), store(1, 4, 2, 3)));
+        assertFalse(SongListDiff.isAppended(store(1, 2, 3), store(1, 2)));
+    }
+}
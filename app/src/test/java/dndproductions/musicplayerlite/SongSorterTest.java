@@ -0,0 +1,88 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SongSorter}.
+ */
+public class SongSorterTest {
+
+    private static final String[] WORDS = {"apple", "Banana", "cherry", "Élan", "elan",
+            "zeta", "Alpha", "beta"};
+
+    @Test
+    public void sortAll_ordersEveryRow() throws Exception {
+        SongStore store = randomStore(new Random(1), 0, 500);
+        int[][] orders = SongSorter.sortAll(store);
+
+        for (SortOrder order : SortOrder.values()) {
+            assertSorted(store, orders[order.ordinal()], order);
+        }
+    }
+
+    @Test
+    public void sort_isLocaleAware() throws Exception {
+        SongStore store = new SongStore.Builder(3)
+                .add(1, "banana", "", "", 0, 0, 0)
+                .add(2, "Apple", "", "", 0, 0, 0)
+                .add(3, "apricot", "", "", 0, 0, 0)
+                .build();
+
+        // Collation ignores case at the primary level, unlike String.compareTo().
+        int[] rows = SongSorter.sort(store, 0, store.size(), SortOrder.TITLE);
+        assertEquals("Apple", store.getTitle(rows[0]));
+        assertEquals("apricot", store.getTitle(rows[1]));
+        assertEquals("banana", store.getTitle(rows[2]));
+    }
+
+    @Test
+    public void update_matchesFullSort() throws Exception {
+        Random random = new Random(2);
+        SongStore previous = randomStore(random, 0, 400);
+        int[][] previousOrders = SongSorter.sortAll(previous);
+
+        // Drops every third row, and appends some new ones.
+        SongStore.Builder builder = new SongStore.Builder(previous.size());
+        int[] rowMap = new int[previous.size()];
+        for (int row = 0; row < previous.size(); row++) {
+            rowMap[row] = row % 3 == 0 ? -1 : builder.size();
+            if (rowMap[row] >= 0) builder.add(previous, row);
+        }
+        int firstNewRow = builder.size();
+        appendRandom(builder, random, 1000, 60);
+        SongStore store = builder.build();
+
+        for (SortOrder order : SortOrder.values()) {
+            int[] updated = SongSorter.update(previousOrders[order.ordinal()], rowMap, store,
+                    firstNewRow, order);
+            assertArrayEquals(SongSorter.sort(store, 0, store.size(), order), updated);
+        }
+    }
+
+    private static SongStore randomStore(Random random, long firstId, int count) {
+        SongStore.Builder builder = new SongStore.Builder(count);
+        appendRandom(builder, random, firstId, count);
+        return builder.build();
+    }
+
+    private static void appendRandom(SongStore.Builder builder, Random random, long firstId,
+                                     int count) {
+        for (int i = 0; i < count; i++) {
+            builder.add(firstId + i, WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(50),
+                    "Artist " + random.nextInt(20), "Album " + random.nextInt(30), 0, 0,
+                    random.nextInt(1000));
+        }
+    }
+
+    private static void assertSorted(SongStore store, int[] rows, SortOrder order) {
+        assertEquals(store.size(), rows.length);
+        for (int i = 1; i < rows.length; i++) {
+            assertTrue(order + " at " + i,
+                    SongSorter.compare(store, rows[i - 1], rows[i], order) < 0);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link Song}.
+ */
+public class SongTest {
+
+    @Test
+    public void sameData_reusesTheInstance() throws Exception {
+        Song song = Song.of(1, "Title", "Artist");
+
+        assertSame(song, Song.of(1, "Title", "Artist"));
+    }
+
+    @Test
+    public void changedData_makesANewInstanceWithTheSameIdentity() throws Exception {
+        Song song = Song.of(2, "Title", "Artist");
+        Song renamed = Song.of(2, "Other title", "Artist");
+
+        assertNotSame(song, renamed);
+        assertEquals("Other title", renamed.getTitle());
+        assertEquals(song, renamed);
+        assertEquals(song.hashCode(), renamed.hashCode());
+    }
+
+    @Test
+    public void songs_workAsSetElements() throws Exception {
+        Set<Song> songs = new HashSet<>();
+        songs.add(Song.of(3, "Title", null));
+        songs.add(Song.of(3, "Title", null));
+        songs.add(Song.of(4, "Title", null));
+
+        assertEquals(2, songs.size());
+        assertTrue(songs.contains(Song.of(4, "Title", null)));
+    }
+}
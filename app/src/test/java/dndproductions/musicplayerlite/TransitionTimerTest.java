@@ -0,0 +1,49 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TransitionTimer}.
+ */
+public class TransitionTimerTest {
+
+    @Test
+    public void coldTransition_measuresTheGap() throws Exception {
+        TransitionTimer timer = new TransitionTimer();
+
+        timer.markTrackEnded(1000);
+        timer.markTrackStarted(251000);
+
+        assertEquals(1, timer.getCount());
+        assertEquals(250000, timer.getLastLatencyNanos());
+    }
+
+    @Test
+    public void gaplessTransition_hasZeroLatency() throws Exception {
+        TransitionTimer timer = new TransitionTimer();
+
+        // The chained player reports its start before the outgoing one reports completion.
+        timer.markTrackStarted(5000);
+        timer.markTrackEnded(5200);
+
+        assertEquals(1, timer.getCount());
+        assertEquals(0, timer.getLastLatencyNanos());
+        assertEquals(0, timer.getMaxLatencyNanos());
+    }
+
+    @Test
+    public void cancel_dropsTheTransitionInProgress() throws Exception {
+        TransitionTimer timer = new TransitionTimer();
+
+        timer.markTrackEnded(1000);
+        timer.cancel();
+        timer.markTrackEnded(9000);
+        timer.markTrackStarted(10000);
+
+        assertEquals(1, timer.getCount());
+        assertEquals(1000, timer.getLastLatencyNanos());
+        assertEquals(1000, timer.getAverageLatencyNanos());
+    }
+}
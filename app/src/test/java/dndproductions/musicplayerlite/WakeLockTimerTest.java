@@ -0,0 +1,52 @@
+package dndproductions.musicplayerlite;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link WakeLockTimer}.
+ */
+public class WakeLockTimerTest {
+
+    @Test
+    public void holds_addUp() throws Exception {
+        WakeLockTimer timer = new WakeLockTimer(1000);
+
+        timer.markAcquired(2000);
+        timer.markReleased(5000);
+        timer.markAcquired(9000);
+        timer.markReleased(10000);
+
+        assertEquals(4000, timer.getHeldMillis(20000));
+        assertEquals(3000, timer.getLongestHoldMillis(20000));
+        assertEquals(2, timer.getHoldCount());
+        assertEquals(19000, timer.getSessionMillis(20000));
+    }
+
+    @Test
+    public void holdInProgress_counts() throws Exception {
+        WakeLockTimer timer = new WakeLockTimer(0);
+
+        timer.markAcquired(1000);
+
+        assertEquals(9000, timer.getHeldMillis(10000));
+        assertEquals(9000, timer.getLongestHoldMillis(10000));
+        assertEquals("Wake lock held 9s of 10s (90%) over 1 holds, longest 9s",
+                timer.summarize(10000));
+    }
+
+    @Test
+    public void repeatedMarks_areIgnored() throws Exception {
+        WakeLockTimer timer = new WakeLockTimer(0);
+
+        timer.markReleased(500);
+        timer.markAcquired(1000);
+        timer.markAcquired(2000);
+        timer.markReleased(3000);
+        timer.markReleased(4000);
+
+        assertEquals(2000, timer.getHeldMillis(5000));
+        assertEquals(1, timer.getHoldCount());
+    }
+}